@@ -0,0 +1,143 @@
+package nlp.nbc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the correct counts and total counts, overall and by state,
+ * that are used to evaluate predictions. Each thread classifying tweets
+ * keeps its own tracker, and the trackers are merged at the end. Counts are
+ * longs, so a long-running stream can't overflow them
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class AccuracyTracker {
+
+	// The state which occurred the most times in the training data
+	private final String majorityState;
+
+	private long correctCount = 0;
+	private long correctMajorityCount = 0;
+	private long totalPredictions = 0;
+	private HashMap<String, Long> correctCountByState = new HashMap<>();
+	private HashMap<String, Long> totalOccurrencesByState = new HashMap<>();
+
+	/**
+	 * Constructor which starts every label at a count of 0
+	 *
+	 * @param labels The labels that occur in the training set
+	 * @param majorityState The state which occurred the most times in the training data
+	 */
+	public AccuracyTracker(Set<String> labels, String majorityState) {
+		this.majorityState = majorityState;
+		for (String label : labels) {
+			correctCountByState.put(label, 0L);
+			totalOccurrencesByState.put(label, 0L);
+		}
+	}
+
+	/**
+	 * Track correct counts and total counts overall and by state
+	 * for accuracy evaluation
+	 * 
+	 * @param predictedLabel The label the model predicted a tweet to have
+	 * @param actualLabel The label the tweet actually had
+	 */
+	public void track(String predictedLabel, String actualLabel) {
+		if (predictedLabel.equals(actualLabel)) {
+			correctCount++;
+			correctCountByState.put(actualLabel, correctCountByState.get(actualLabel) + 1);
+		}
+
+		if (majorityState.equals(actualLabel)) {
+			correctMajorityCount++;
+		}
+
+		totalPredictions++;
+		
+		// Check for null in case test set has actual labels that model hasn't seen
+		if (totalOccurrencesByState.get(actualLabel) == null) {
+			totalOccurrencesByState.put(actualLabel, 1L);
+		} else {
+			totalOccurrencesByState.put(actualLabel, totalOccurrencesByState.get(actualLabel) + 1);
+		}
+	}
+
+	/**
+	 * Adds the counts of another tracker to this one
+	 *
+	 * @param other The tracker whose counts are added
+	 */
+	public void merge(AccuracyTracker other) {
+		correctCount += other.correctCount;
+		correctMajorityCount += other.correctMajorityCount;
+		totalPredictions += other.totalPredictions;
+		for (Map.Entry<String, Long> entry : other.correctCountByState.entrySet()) {
+			correctCountByState.merge(entry.getKey(), entry.getValue(), Long::sum);
+		}
+		for (Map.Entry<String, Long> entry : other.totalOccurrencesByState.entrySet()) {
+			totalOccurrencesByState.merge(entry.getKey(), entry.getValue(), Long::sum);
+		}
+	}
+
+	/**
+	 * @return How many predictions were correct
+	 */
+	public long getCorrectCount() {
+		return correctCount;
+	}
+
+	/**
+	 * @return How many predictions would be correct if the majority state was always predicted
+	 */
+	public long getCorrectMajorityCount() {
+		return correctMajorityCount;
+	}
+
+	/**
+	 * @return How many predictions were made
+	 */
+	public long getTotalPredictions() {
+		return totalPredictions;
+	}
+
+	/**
+	 * Averages the accuracy of each label, leaving out labels
+	 * no prediction was made for, without printing anything
+	 *
+	 * @param labels The labels to average over
+	 * @return The mean accuracy per label, 0 if none of the labels occurred
+	 */
+	public double averageLabelAccuracy(Iterable<String> labels) {
+		double sumOfAccuracies = 0.0;
+		int validLabelCount = 0;
+		for (String label : labels) {
+			if (getTotalOccurrences(label) > 0) {
+				sumOfAccuracies += (double) getCorrectCount(label) / getTotalOccurrences(label);
+				validLabelCount++;
+			}
+		}
+		return validLabelCount == 0 ? 0.0 : sumOfAccuracies / validLabelCount;
+	}
+
+	/**
+	 * @param label The actual label
+	 * @return How many predictions were correct for tweets with that label
+	 */
+	public long getCorrectCount(String label) {
+		Long count = correctCountByState.get(label);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @param label The actual label
+	 * @return How many tweets had that label
+	 */
+	public long getTotalOccurrences(String label) {
+		Long count = totalOccurrencesByState.get(label);
+		return count == null ? 0 : count;
+	}
+}
@@ -0,0 +1,140 @@
+package nlp.nbc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs work over a stream of items in batches across a pool of threads.
+ * Items are read and results are handed back on the calling thread, in the
+ * same order as the input, and only a bounded number of batches are in flight
+ * at once so memory use doesn't grow with the size of the input. A sink
+ * which is slow, such as a blocked pipe, holds up the reading the same way.
+ *
+ * A source that items trickle in on can say whether another item is ready.
+ * Batches are then cut short instead of waiting on it, and every batch read
+ * so far goes to the sink before the next wait, so no item waits on the
+ * items after it
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ * @param <T> Type of the input items
+ * @param <R> Type of the result of processing one batch
+ */
+public class BatchPipeline<T, R> {
+
+	// How many threads process batches
+	private final int numThreads;
+
+	// How many items are put in each batch
+	private final int batchSize;
+
+	/**
+	 * Constructor which sets the size of the pipeline
+	 *
+	 * @param numThreads How many threads process batches, 1 runs everything on the calling thread
+	 * @param batchSize How many items are put in each batch
+	 */
+	public BatchPipeline(int numThreads, int batchSize) {
+		this.numThreads = Math.max(1, numThreads);
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Processes every item of the source and passes the result
+	 * of each batch to the sink in input order
+	 *
+	 * @param source Items to process
+	 * @param worker Processes one batch, must be safe to call from several threads at once
+	 * @param sink Receives the result of each batch, always called on the calling thread
+	 */
+	public void run(Iterator<T> source, Function<List<T>, R> worker, Consumer<R> sink) {
+		run(source, () -> true, worker, sink);
+	}
+
+	/**
+	 * Processes every item of the source and passes the result of each batch
+	 * to the sink in input order, without waiting on the source while there
+	 * are items it has already given
+	 *
+	 * @param source Items to process
+	 * @param ready Says whether the source can give another item without waiting
+	 * @param worker Processes one batch, must be safe to call from several threads at once
+	 * @param sink Receives the result of each batch, always called on the calling thread
+	 */
+	public void run(Iterator<T> source, BooleanSupplier ready, Function<List<T>, R> worker, Consumer<R> sink) {
+		if (numThreads == 1) {
+			while (source.hasNext()) {
+				sink.accept(worker.apply(nextBatch(source, ready)));
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		ArrayDeque<Future<R>> inFlight = new ArrayDeque<>();
+		try {
+			while (source.hasNext()) {
+				List<T> batch = nextBatch(source, ready);
+				inFlight.add(pool.submit(() -> worker.apply(batch)));
+
+				// Wait on the oldest batch once enough are queued up,
+				// which keeps the reader from running ahead of the workers,
+				// and on all of them before waiting on the source
+				while (inFlight.size() >= numThreads * 2 || (!inFlight.isEmpty() && !ready.getAsBoolean())) {
+					sink.accept(await(inFlight.poll()));
+				}
+			}
+
+			while (!inFlight.isEmpty()) {
+				sink.accept(await(inFlight.poll()));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Takes up to batchSize items off the source, stopping early
+	 * if the source would have to wait for the next one
+	 *
+	 * @param source Items to process
+	 * @param ready Says whether the source can give another item without waiting
+	 * @return The next batch of items
+	 */
+	private List<T> nextBatch(Iterator<T> source, BooleanSupplier ready) {
+		List<T> batch = new ArrayList<>(batchSize);
+		while (batch.size() < batchSize && (batch.isEmpty() || ready.getAsBoolean()) && source.hasNext()) {
+			batch.add(source.next());
+		}
+		return batch;
+	}
+
+	/**
+	 * Waits for a batch to finish and rethrows anything the worker threw
+	 *
+	 * @param future The batch to wait for
+	 * @return The result of the batch
+	 */
+	private R await(Future<R> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a batch", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,603 @@
+package nlp.nbc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Times the hot paths of training and prediction so that regressions
+ * show up in local runs. Every benchmark is run for a few warmup rounds
+ * so the JIT has compiled it, then timed over several measured rounds
+ * 
+ * Uses the checked in data files plus synthetic corpora made by
+ * repeating the training tweets with shuffled words
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class Benchmark {
+
+	private static final String USERS_FILE = "data/training_set_users.txt";
+	private static final String TRAINING_FILE = "data/training_set_tweets_1k.txt";
+	private static final String TEST_FILE = "data/test_set_tweets_10k.txt";
+	private static final String STOPLIST_FILE = "data/smallStoplist";
+	private static final double LAMBDA = 0.01;
+
+	// How many untimed rounds run before the timed ones
+	private final int warmupRounds;
+
+	// How many timed rounds each result is taken from
+	private final int measuredRounds;
+
+	// Keeps results alive so the JIT can't skip the work being timed
+	private long sink = 0;
+
+	/**
+	 * A unit of work to be timed
+	 */
+	private interface Task {
+		/**
+		 * @return How many operations were done, used to work out throughput
+		 * @throws Exception If the work fails
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * Constructor which sets how many rounds each benchmark runs
+	 * 
+	 * @param warmupRounds How many untimed rounds run first
+	 * @param measuredRounds How many timed rounds each result is taken from
+	 */
+	public Benchmark(int warmupRounds, int measuredRounds) {
+		this.warmupRounds = warmupRounds;
+		this.measuredRounds = measuredRounds;
+	}
+
+	/**
+	 * Runs a task for the warmup and measured rounds and prints the
+	 * best and average time per round and the throughput of the best round
+	 * 
+	 * @param name Name of the benchmark
+	 * @param unit Name of one operation, such as "tweets"
+	 * @param task The work to time
+	 * @throws Exception If the work fails
+	 */
+	private void time(String name, String unit, Task task) throws Exception {
+		for (int round = 0; round < warmupRounds; round++) {
+			sink += task.run();
+		}
+
+		long bestNanos = Long.MAX_VALUE;
+		long totalNanos = 0;
+		long operations = 0;
+		for (int round = 0; round < measuredRounds; round++) {
+			long start = System.nanoTime();
+			operations = task.run();
+			long elapsed = System.nanoTime() - start;
+			sink += operations;
+			bestNanos = Math.min(bestNanos, elapsed);
+			totalNanos += elapsed;
+		}
+
+		double bestMillis = bestNanos / 1e6;
+		double averageMillis = totalNanos / 1e6 / measuredRounds;
+		double perSecond = operations / (bestNanos / 1e9);
+		System.out.printf("%-48s best %10.2f ms  avg %10.2f ms  %12.0f %s/sec  %10.1f ns/op%n",
+				name, bestMillis, averageMillis, perSecond, unit, (double) bestNanos / Math.max(1, operations));
+	}
+
+	/**
+	 * Times training the model from a tweets file
+	 * 
+	 * @param name Name of the benchmark
+	 * @param tweetsFileName The tweets file to train from
+	 * @param options How to train
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkTraining(String name, String tweetsFileName, TrainingOptions options) throws Exception {
+		long tweetCount = countLines(tweetsFileName);
+		time(name, "tweets", () -> {
+			ModelTrainer model = quietly(() -> new ModelTrainer(USERS_FILE, tweetsFileName, STOPLIST_FILE, options));
+			sink += model.getVocab().size();
+			return tweetCount;
+		});
+	}
+
+	/**
+	 * Times parsing a tweets file into records, both with readLine and
+	 * split plus regex checks and with TabRecordReader
+	 * 
+	 * @param name Name of the file in the benchmark names
+	 * @param tweetsFileName The tweets file to parse
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkParsing(String name, String tweetsFileName) throws Exception {
+		time("readLine + split (" + name + ")", "lines", () -> {
+			long lines = 0;
+			try (BufferedReader reader = new BufferedReader(new FileReader(tweetsFileName))) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					String[] splitLine = line.split("\t");
+					if (splitLine.length == 4 && splitLine[0].matches("[0-9]+") && splitLine[1].matches("[0-9]+")) {
+						sink += splitLine[2].length();
+					}
+					lines++;
+				}
+			}
+			return lines;
+		});
+		time("TabRecordReader (" + name + ")", "lines", () -> {
+			long lines = 0;
+			try (TabRecordReader reader = new TabRecordReader(tweetsFileName)) {
+				while (reader.next()) {
+					TweetRecord tweet = reader.getTweet();
+					if (tweet.isWellFormed()) {
+						sink += tweet.getText().length();
+					}
+					lines++;
+				}
+			}
+			return lines;
+		});
+	}
+
+	/**
+	 * Times loading the users file
+	 * 
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkPopulateIDLocations() throws Exception {
+		ModelTrainer model = new ModelTrainer();
+		long userCount = countLines(USERS_FILE);
+		time("ModelTrainer.populateIDLocations", "users", () -> {
+			quietly(() -> {
+				model.populateIDLocations(USERS_FILE);
+				return model;
+			});
+			return userCount;
+		});
+	}
+
+	/**
+	 * Times predicting the label of every tweet in the test file,
+	 * both overall and per tweet
+	 * 
+	 * @param model The trained model
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkPredictLabel(ModelTrainer model) throws Exception {
+		Classifier classifier = new Classifier(model, LAMBDA);
+		List<String[]> tweets = readTweets(TEST_FILE);
+
+		time("Classifier.predictLabel (10k test tweets)", "tweets", () -> {
+			for (String[] tweet : tweets) {
+				sink += classifier.predictLabel(tweet[2], tweet[0]).length();
+			}
+			return tweets.size();
+		});
+
+		// Latency of single predictions, after the JIT has warmed up above
+		long[] latencies = new long[tweets.size()];
+		for (int i = 0; i < latencies.length; i++) {
+			String[] tweet = tweets.get(i);
+			long start = System.nanoTime();
+			sink += classifier.predictLabel(tweet[2], tweet[0]).length();
+			latencies[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(latencies);
+		System.out.printf("%-48s p50 %8.1f us  p99 %8.1f us  max %8.1f us%n", "Classifier.predictLabel latency",
+				latencies[latencies.length / 2] / 1e3, latencies[(int) (latencies.length * 0.99)] / 1e3,
+				latencies[latencies.length - 1] / 1e3);
+
+		// Same tweets with a cache big enough for all of them, so after
+		// the warmup rounds every tweet is a hit, as for a retweet
+		PredictionCache cache = new PredictionCache(2 * tweets.size());
+		classifier.setPredictionCache(cache);
+		time("Classifier.predictLabel (cached, all duplicates)", "tweets", () -> {
+			for (String[] tweet : tweets) {
+				sink += classifier.predictLabel(tweet[2], tweet[0]).length();
+			}
+			return tweets.size();
+		});
+		System.out.printf("%-48s hits %d  misses %d  hit rate %.3f%n", "PredictionCache",
+				cache.getHits(), cache.getMisses(), cache.getHitRate());
+	}
+
+	/**
+	 * Times only the scoring of the test tweets, with their tokens already
+	 * looked up, for the old per-label HashMap path built on calculateTheta,
+	 * for each scoring kernel and for the sparse layout
+	 * 
+	 * @param model The trained model
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkScoringKernels(ModelTrainer model) throws Exception {
+		Classifier classifier = new Classifier(model, LAMBDA);
+		ScoringModel scoringModel = new ScoringModel(model, LAMBDA);
+		List<String[]> tweets = readTweets(TEST_FILE);
+
+		// Tokens of each tweet, both as in-vocab words and as word IDs
+		List<List<String>> tweetWords = new ArrayList<>();
+		List<int[]> tweetIds = new ArrayList<>();
+		for (String[] tweet : tweets) {
+			TokenIds tokenIds = new TokenIds(scoringModel);
+			model.getTokenizer().tokenize(tweet[2], tokenIds);
+			List<String> words = new ArrayList<>();
+			int[] ids = Arrays.copyOf(tokenIds.getIds(), tokenIds.size());
+			for (int id : ids) {
+				words.add(scoringModel.getWord(id));
+			}
+			tweetWords.add(words);
+			tweetIds.add(ids);
+		}
+
+		Set<String> labels = model.getTrainingSetLabels();
+		time("Scoring, HashMap per label (calculateTheta)", "tweets", () -> {
+			for (List<String> words : tweetWords) {
+				HashMap<String, Double> logProbs = new HashMap<>();
+				for (String label : labels) {
+					double logProb = Math.log10(model.getLabelProbs().get(label));
+					for (String word : words) {
+						logProb += Math.log10(classifier.calculateTheta(label, word));
+					}
+					logProbs.put(label, logProb);
+				}
+				sink += classifier.getEntryForMaxValue(logProbs).getKey().length();
+			}
+			return tweetWords.size();
+		});
+
+		for (String kernelName : new String[] {"scalar", "blocked"}) {
+			ScoringModel kernelModel = new ScoringModel(model, LAMBDA, ScoringKernel.forName(kernelName));
+			time("Scoring, " + kernelName + " kernel", "tweets", () -> {
+				for (int[] ids : tweetIds) {
+					sink += kernelModel.argmax(kernelModel.score(ids, ids.length));
+				}
+				return tweetIds.size();
+			});
+		}
+
+		ScoringModel sparseModel = new ScoringModel(model, LAMBDA, ScoringKernel.getDefault(), ScoringModel.Layout.SPARSE);
+		time("Scoring, sparse layout", "tweets", () -> {
+			for (int[] ids : tweetIds) {
+				sink += sparseModel.argmax(sparseModel.score(ids, ids.length));
+			}
+			return tweetIds.size();
+		});
+		ScoringModel denseModel = new ScoringModel(model, LAMBDA, ScoringKernel.getDefault(), ScoringModel.Layout.DENSE);
+		System.out.printf("%-48s %,d of %,d values stored (%.1f per word), %.1f MB instead of %.1f MB%n",
+				"Sparse layout", sparseModel.getStoredValueCount(), denseModel.getStoredValueCount(),
+				(double) sparseModel.getStoredValueCount() / sparseModel.getVocabSize(),
+				sparseModel.memoryBytes() / 1e6, denseModel.memoryBytes() / 1e6);
+	}
+
+	/**
+	 * Compares the quantized layouts against the dense one: how far their
+	 * log thetas are from the exact values, how often they predict a different
+	 * label for the 10k test tweets the model was trained on and for the 1k
+	 * training tweets, which it wasn't, the accuracy of each, the scoring
+	 * throughput and the size of the tables
+	 * 
+	 * @param model The trained model
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkQuantization(ModelTrainer model) throws Exception {
+		ScoringModel.Layout[] layouts = {ScoringModel.Layout.DENSE, ScoringModel.Layout.INT16,
+				ScoringModel.Layout.INT8};
+		ScoringModel[] scoringModels = new ScoringModel[layouts.length];
+		for (int i = 0; i < layouts.length; i++) {
+			scoringModels[i] = new ScoringModel(model, LAMBDA, ScoringKernel.getDefault(), layouts[i]);
+		}
+		ScoringModel exact = scoringModels[0];
+		String majorityState = new Classifier(model, LAMBDA).majorityState();
+
+		// Error of every stored value, and of the values which aren't a label's unseen value
+		for (int i = 1; i < layouts.length; i++) {
+			ScoringModel quantized = scoringModels[i];
+			double maxError = 0;
+			double seenErrorSum = 0;
+			long seenCount = 0;
+			for (int wordId = 0; wordId < exact.getVocabSize(); wordId++) {
+				for (int labelId = 0; labelId < exact.getLabelCount(); labelId++) {
+					double logTheta = exact.getLogTheta(wordId, labelId);
+					double error = Math.abs(quantized.getLogTheta(wordId, labelId) - logTheta);
+					maxError = Math.max(maxError, error);
+					if (logTheta != exact.getUnseenLogTheta(labelId)) {
+						seenErrorSum += error;
+						seenCount++;
+					}
+				}
+			}
+			System.out.printf("%-48s max log theta error %.2e, mean %.2e over %,d seen values, %.1f MB instead of %.1f MB%n",
+					"Quantized layout, " + layouts[i].name().toLowerCase(), maxError,
+					seenCount == 0 ? 0 : seenErrorSum / seenCount, seenCount,
+					quantized.memoryBytes() / 1e6, exact.memoryBytes() / 1e6);
+		}
+
+		for (String fileName : new String[] {TEST_FILE, TRAINING_FILE}) {
+			List<int[]> tweetIds = new ArrayList<>();
+			List<String> realLocations = new ArrayList<>();
+			for (String[] tweet : readTweets(fileName)) {
+				String realLocation = model.getUserLocations().get(tweet[0]);
+				if (realLocation != null) {
+					TokenIds tokenIds = new TokenIds(exact);
+					model.getTokenizer().tokenize(tweet[2], tokenIds);
+					tweetIds.add(Arrays.copyOf(tokenIds.getIds(), tokenIds.size()));
+					realLocations.add(realLocation);
+				}
+			}
+
+			int[] exactLabels = new int[tweetIds.size()];
+			double[] exactMaxLogProbs = new double[tweetIds.size()];
+			for (int i = 0; i < layouts.length; i++) {
+				ScoringModel scoringModel = scoringModels[i];
+				AccuracyTracker accuracy = new AccuracyTracker(model.getTrainingSetLabels(), majorityState);
+				int changedCount = 0;
+				double maxScoreError = 0;
+				for (int tweet = 0; tweet < tweetIds.size(); tweet++) {
+					int[] ids = tweetIds.get(tweet);
+					double[] logProbs = scoringModel.score(ids, ids.length);
+					int labelId = scoringModel.argmax(logProbs);
+					accuracy.track(scoringModel.getLabel(labelId), realLocations.get(tweet));
+					if (i == 0) {
+						exactLabels[tweet] = labelId;
+						exactMaxLogProbs[tweet] = logProbs[labelId];
+					} else {
+						changedCount += labelId == exactLabels[tweet] ? 0 : 1;
+						maxScoreError = Math.max(maxScoreError, Math.abs(logProbs[labelId] - exactMaxLogProbs[tweet]));
+					}
+				}
+				System.out.printf("%-48s accuracy %.4f, per label %.4f, %d of %d predictions changed,"
+						+ " max best score error %.2e%n",
+						"  " + layouts[i].name().toLowerCase() + ", " + new File(fileName).getName(),
+						(double) accuracy.getCorrectCount() / accuracy.getTotalPredictions(),
+						accuracy.averageLabelAccuracy(model.getTrainingSetLabels()), changedCount, tweetIds.size(),
+						maxScoreError);
+			}
+
+			if (fileName.equals(TEST_FILE)) {
+				for (int i = 0; i < layouts.length; i++) {
+					ScoringModel scoringModel = scoringModels[i];
+					time("Scoring, " + layouts[i].name().toLowerCase() + " layout", "tweets", () -> {
+						for (int[] ids : tweetIds) {
+							sink += scoringModel.argmax(scoringModel.score(ids, ids.length));
+						}
+						return tweetIds.size();
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Trains on the test file with each way of shrinking the vocab and prints the
+	 * vocab size, memory and model file size, the training time, the prediction
+	 * throughput and the accuracy on the 1k training file, which shares no tweets
+	 * with the test file
+	 * 
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkVocabReduction() throws Exception {
+		String[] names = {"full vocab", "min count 2", "min doc frequency 2",
+				"min doc frequency 3", "top 5000 words", "top 1000 words",
+				"hashed, 2^18 buckets", "hashed, 2^14 buckets", "hashed 2^14, min count 2"};
+		TrainingOptions[] settings = {new TrainingOptions(), new TrainingOptions().setMinWordCount(2),
+				new TrainingOptions().setMinDocumentFrequency(2), new TrainingOptions().setMinDocumentFrequency(3),
+				new TrainingOptions().setMaxVocabSize(5000), new TrainingOptions().setMaxVocabSize(1000),
+				new TrainingOptions().setHashBits(18), new TrainingOptions().setHashBits(14),
+				new TrainingOptions().setHashBits(14).setMinWordCount(2)};
+		List<String[]> tweets = readTweets(TRAINING_FILE);
+		File modelFile = File.createTempFile("vocab_benchmark", ".model");
+		modelFile.deleteOnExit();
+
+		for (int setting = 0; setting < settings.length; setting++) {
+			TrainingOptions options = settings[setting];
+			long start = System.nanoTime();
+			ModelTrainer model = quietly(() -> new ModelTrainer(USERS_FILE, TEST_FILE, STOPLIST_FILE, options));
+			double trainMillis = (System.nanoTime() - start) / 1e6;
+			model.saveModel(modelFile.getPath(), 0);
+
+			Classifier classifier = new Classifier(model, LAMBDA);
+			AccuracyTracker accuracy = new AccuracyTracker(model.getTrainingSetLabels(), classifier.majorityState());
+			for (String[] tweet : tweets) {
+				classifier.predictLabel(tweet[2], tweet[0], accuracy);
+			}
+			time("Classifier.predictLabel (" + names[setting] + ")", "tweets", () -> {
+				for (String[] tweet : tweets) {
+					sink += classifier.predictLabel(tweet[2], tweet[0]).length();
+				}
+				return tweets.size();
+			});
+			System.out.printf("%-48s vocab %7d  memory %6.2f MB  file %6.2f MB  train %8.1f ms  accuracy %.4f%n",
+					"  " + names[setting], model.getVocab().size(), model.memoryBytes() / 1e6,
+					modelFile.length() / 1e6, trainMillis,
+					(double) accuracy.getCorrectCount() / accuracy.getTotalPredictions());
+		}
+	}
+
+	/**
+	 * Times calculateTheta over every vocab word and label
+	 * 
+	 * @param model The trained model
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkCalculateTheta(ModelTrainer model) throws Exception {
+		Classifier classifier = new Classifier(model, LAMBDA);
+		List<String> words = new ArrayList<>(model.getVocab());
+		List<String> labels = new ArrayList<>(model.getTrainingSetLabels());
+
+		time("Classifier.calculateTheta (vocab x labels)", "calls", () -> {
+			double total = 0;
+			for (String label : labels) {
+				for (String word : words) {
+					total += classifier.calculateTheta(label, word);
+				}
+			}
+			sink += (long) total;
+			return (long) words.size() * labels.size();
+		});
+	}
+
+	/**
+	 * Times finding the most and least predictive features of one
+	 * label, and then of every label at once
+	 * 
+	 * @param model The trained model
+	 * @throws Exception If the work fails
+	 */
+	public void benchmarkTopFeatures(ModelTrainer model) throws Exception {
+		Classifier classifier = new Classifier(model, LAMBDA);
+		String label = classifier.majorityState();
+
+		time("Classifier.top10PredictiveFeatures (all words)", "labels", () -> {
+			quietly(() -> {
+				classifier.top10PredictiveFeatures(label, true);
+				return classifier;
+			});
+			return 1;
+		});
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		time("FeatureRanking.rankAll (all words, " + cores + " threads)", "labels", () -> {
+			FeatureRanking ranking = new FeatureRanking(model, LAMBDA);
+			sink += ranking.rankAll(10, true, cores).size();
+			return ranking.getLabels().size();
+		});
+	}
+
+	/**
+	 * Makes a synthetic tweets file by repeating the tweets of the
+	 * training file with their words shuffled between tweets of the
+	 * same user, so the vocab stays realistic while the corpus grows
+	 * 
+	 * @param scale How many times the training file is repeated
+	 * @return The name of the synthetic file, deleted when the JVM exits
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static String syntheticCorpus(int scale) throws IOException {
+		List<String[]> tweets = readTweets(TRAINING_FILE);
+		Random random = new Random(scale);
+		File file = File.createTempFile("synthetic_tweets_" + scale + "x_", ".txt");
+		file.deleteOnExit();
+
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			long tweetID = 0;
+			for (int copy = 0; copy < scale; copy++) {
+				for (String[] tweet : tweets) {
+					String[] words = tweets.get(random.nextInt(tweets.size()))[2].split(" ");
+					String[] otherWords = tweet[2].split(" ");
+					StringBuilder text = new StringBuilder();
+					for (int i = 0; i < otherWords.length; i++) {
+						String word = random.nextBoolean() ? otherWords[i] : words[random.nextInt(words.length)];
+						text.append(i == 0 ? "" : " ").append(word);
+					}
+					out.println(tweet[0] + "\t" + (tweetID++) + "\t" + text + "\t" + tweet[3]);
+				}
+			}
+		}
+		return file.getPath();
+	}
+
+	/**
+	 * Reads the well formed lines of a tweets file, split into their columns
+	 * 
+	 * @param fileName The tweets file
+	 * @return The user ID, tweet ID, text and time of each tweet
+	 * @throws IOException If the file can't be read
+	 */
+	private static List<String[]> readTweets(String fileName) throws IOException {
+		List<String[]> tweets = new ArrayList<>();
+		try (TabRecordReader reader = new TabRecordReader(fileName)) {
+			while (reader.next()) {
+				if (reader.isTweetLine()) {
+					tweets.add(new String[] {reader.getField(0), reader.getField(1), reader.getField(2), reader.getField(3)});
+				}
+			}
+		}
+		return tweets;
+	}
+
+	/**
+	 * @param fileName The file to count
+	 * @return How many lines the file has
+	 * @throws IOException If the file can't be read
+	 */
+	private static long countLines(String fileName) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+			return reader.lines().count();
+		}
+	}
+
+	/**
+	 * Runs work with System.out silenced, since several of the
+	 * timed methods print as they go
+	 * 
+	 * @param work The work to run
+	 * @return What the work returned
+	 * @throws Exception If the work fails
+	 */
+	private static <T> T quietly(Callable<T> work) throws Exception {
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			return work.call();
+		} finally {
+			System.setOut(stdout);
+		}
+	}
+
+	/**
+	 * Main method for running the benchmarks
+	 * 
+	 * @param args Optionally the largest synthetic corpus scale, the
+	 * number of warmup rounds and the number of measured rounds
+	 * @throws Exception If a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int maxScale = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int warmupRounds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int measuredRounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		Benchmark benchmark = new Benchmark(warmupRounds, measuredRounds);
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		benchmark.benchmarkPopulateIDLocations();
+		benchmark.benchmarkTraining("ModelTrainer (1k tweets, 1 thread)", TRAINING_FILE, new TrainingOptions());
+		for (int scale = 10; scale <= maxScale; scale *= 10) {
+			String corpus = syntheticCorpus(scale);
+			benchmark.benchmarkParsing(scale + "k synthetic", corpus);
+			benchmark.benchmarkTraining("ModelTrainer (" + scale + "k synthetic, 1 thread)", corpus,
+					new TrainingOptions());
+			benchmark.benchmarkTraining("ModelTrainer (" + scale + "k synthetic, " + cores + " threads)", corpus,
+					new TrainingOptions().setNumThreads(cores));
+			benchmark.benchmarkTraining("ModelTrainer (" + scale + "k synthetic, fast tokenizer)", corpus,
+					new TrainingOptions().setTokenizer(new FastTweetTokenizer()));
+		}
+
+		ModelTrainer model = quietly(() -> new ModelTrainer(USERS_FILE, TEST_FILE, STOPLIST_FILE));
+		benchmark.benchmarkPredictLabel(model);
+		benchmark.benchmarkScoringKernels(model);
+		benchmark.benchmarkQuantization(model);
+		benchmark.benchmarkCalculateTheta(model);
+		benchmark.benchmarkTopFeatures(model);
+		benchmark.benchmarkVocabReduction();
+
+		// Printed so the sink can't be optimized away
+		System.out.println("(checksum " + benchmark.sink + ")");
+	}
+}
@@ -0,0 +1,331 @@
+package nlp.nbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running HTTP server which loads a trained model once and
+ * predicts the location of tweets sent to it. Connections are handled by
+ * the JDK's NIO based HTTP server and requests are scored on a thread pool,
+ * so many idle connections don't each hold a thread.
+ * 
+ * Endpoints, all answering with JSON:
+ *   POST /predict?k=5        body is one tweet, returns its top k labels
+ *   POST /predict/batch?k=5  body is one tweet per line, returns the top k labels of each
+ *   GET  /stats              request count and p50/p99 latency, and cache hit rate if caching
+ *
+ * Bodies over MAX_BODY_BYTES are answered with 413, and a request which fails
+ * with an unexpected exception is answered with 500 instead of being dropped
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class ClassificationServer {
+
+	// How many labels are returned when the request doesn't say
+	private static final int DEFAULT_K = 5;
+
+	// Largest request body read, several thousand tweets for a batch
+	public static final int MAX_BODY_BYTES = 1 << 22;
+
+	// Predicts the labels, shared by all requests since scoring is read-only
+	private final Classifier classifier;
+
+	// Latency of the predict requests, measured from reading the body to sending the response
+	private final LatencyRecorder latencies = new LatencyRecorder();
+
+	private final HttpServer server;
+	private final ExecutorService workers;
+
+	/**
+	 * Constructor which binds the server to a port without starting it
+	 * 
+	 * @param classifier Classifier used to predict the labels
+	 * @param port Port to listen on, 0 picks a free port
+	 * @param numThreads How many threads score requests
+	 * @throws IOException If the port can't be bound
+	 */
+	public ClassificationServer(Classifier classifier, int port, int numThreads) throws IOException {
+		this.classifier = classifier;
+		server = HttpServer.create(new InetSocketAddress(port), 1024);
+		workers = Executors.newFixedThreadPool(numThreads);
+		server.setExecutor(workers);
+		server.createContext("/predict", answeringErrors(exchange -> handlePredict(exchange, false)));
+		server.createContext("/predict/batch", answeringErrors(exchange -> handlePredict(exchange, true)));
+		server.createContext("/stats", answeringErrors(this::handleStats));
+	}
+
+	/**
+	 * Starts answering requests in the background
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops the server, waiting up to a second for requests in progress
+	 */
+	public void stop() {
+		server.stop(1);
+		workers.shutdown();
+	}
+
+	/**
+	 * @return The port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return Latency of the predict requests answered so far
+	 */
+	public LatencyRecorder getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Wraps a handler so that an unexpected exception is answered with 500,
+	 * or closes the exchange if the response had already been started
+	 * 
+	 * @param handler The handler to wrap
+	 * @return The wrapped handler
+	 */
+	private static HttpHandler answeringErrors(HttpHandler handler) {
+		return exchange -> {
+			try {
+				handler.handle(exchange);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				if (exchange.getResponseCode() == -1) {
+					send(exchange, 500, "{\"error\":\"internal error\"}");
+				} else {
+					exchange.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Answers a single or batched predict request
+	 * 
+	 * @param exchange The request
+	 * @param batch Whether the body holds one tweet per line
+	 * @throws IOException If the request can't be read or answered
+	 */
+	private void handlePredict(HttpExchange exchange, boolean batch) throws IOException {
+		long start = System.nanoTime();
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			send(exchange, 405, "{\"error\":\"use POST\"}");
+			return;
+		}
+
+		int k;
+		try {
+			k = queryInt(exchange, "k", DEFAULT_K);
+		} catch (NumberFormatException e) {
+			send(exchange, 400, "{\"error\":\"k must be a number\"}");
+			return;
+		}
+
+		String body = readBody(exchange);
+		if (body == null) {
+			send(exchange, 413, "{\"error\":\"body is over " + MAX_BODY_BYTES + " bytes\"}");
+			return;
+		}
+		StringBuilder json = new StringBuilder();
+		if (batch) {
+			json.append("{\"results\":[");
+			String[] tweets = body.split("\r?\n");
+			for (int i = 0; i < tweets.length; i++) {
+				json.append(i == 0 ? "" : ",");
+				appendPredictions(json, classifier.predictTopLabels(tweets[i], k));
+			}
+			json.append("]}");
+		} else {
+			appendPredictions(json, classifier.predictTopLabels(body, k));
+		}
+
+		send(exchange, 200, json.toString());
+		latencies.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Answers a stats request with the request count and latency percentiles
+	 * 
+	 * @param exchange The request
+	 * @throws IOException If the request can't be answered
+	 */
+	private void handleStats(HttpExchange exchange) throws IOException {
+		StringBuilder json = new StringBuilder(String.format("{\"requests\":%d,\"p50Micros\":%.1f,\"p99Micros\":%.1f",
+				latencies.count(), latencies.percentileMicros(0.5), latencies.percentileMicros(0.99)));
+		PredictionCache cache = classifier.getPredictionCache();
+		if (cache != null) {
+			json.append(String.format(",\"cache\":{\"size\":%d,\"hits\":%d,\"misses\":%d,\"evictions\":%d,\"hitRate\":%.4f}",
+					cache.size(), cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getHitRate()));
+		}
+		json.append('}');
+		send(exchange, 200, json.toString());
+	}
+
+	/**
+	 * Writes the top labels of one tweet as a JSON object
+	 * 
+	 * @param json Where the JSON is written
+	 * @param topLabels The labels and their log-probs, highest first
+	 */
+	private static void appendPredictions(StringBuilder json, List<Map.Entry<String, Double>> topLabels) {
+		json.append("{\"predictions\":[");
+		for (int i = 0; i < topLabels.size(); i++) {
+			Map.Entry<String, Double> entry = topLabels.get(i);
+			json.append(i == 0 ? "" : ",")
+				.append("{\"label\":").append(jsonString(entry.getKey()))
+				.append(",\"logProb\":").append(entry.getValue()).append('}');
+		}
+		json.append("]}");
+	}
+
+	/**
+	 * @param value The string to write
+	 * @return The string as a quoted JSON string, with quotes, backslashes and control chars escaped
+	 */
+	private static String jsonString(String value) {
+		StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+				break;
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * @param exchange The request
+	 * @param name Name of the query parameter
+	 * @param defaultValue Value used when the parameter is missing
+	 * @return The value of the query parameter as an int
+	 */
+	private static int queryInt(HttpExchange exchange, String name, int defaultValue) {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.startsWith(name + "=")) {
+					return Integer.parseInt(parameter.substring(name.length() + 1));
+				}
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Reads the request body, stopping as soon as it is over MAX_BODY_BYTES
+	 * 
+	 * @param exchange The request
+	 * @return The request body decoded as UTF-8, or null if it is over MAX_BODY_BYTES
+	 * @throws IOException If the body can't be read
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException {
+		String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+		try {
+			if (contentLength != null && Long.parseLong(contentLength.trim()) > MAX_BODY_BYTES) {
+				return null;
+			}
+		} catch (NumberFormatException e) {
+			// Left to the stream, which the server already framed
+		}
+
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+			if (bytes.size() + read > MAX_BODY_BYTES) {
+				return null;
+			}
+			bytes.write(buffer, 0, read);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends a JSON response and closes the exchange
+	 * 
+	 * @param exchange The request
+	 * @param status HTTP status code
+	 * @param json Body of the response
+	 * @throws IOException If the response can't be sent
+	 */
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Main method which loads a saved model and serves predictions until killed,
+	 * printing the latency percentiles every minute
+	 * 
+	 * @param args The model file, and optionally the port, the lambda value, the number
+	 * of threads and how many tweet scores to cache (0, the default, turns caching off)
+	 * @throws Exception If the model can't be loaded or the port can't be bound
+	 */
+	public static void main(String[] args) throws Exception {
+		String modelFileName = args.length > 0 ? args[0] : "data/training_set_tweets_3mil.model";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		double lambda = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+		int numThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		int cacheSize = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+		Classifier classifier = new Classifier(ModelTrainer.loadModel(modelFileName), lambda);
+		if (cacheSize > 0) {
+			classifier.setPredictionCache(new PredictionCache(cacheSize));
+		}
+		ClassificationServer server = new ClassificationServer(classifier, port, numThreads);
+		server.start();
+		System.out.println("Serving predictions on port " + server.getPort());
+
+		while (true) {
+			Thread.sleep(60000);
+			LatencyRecorder latencies = server.getLatencies();
+			System.out.printf("requests %d  p50 %.1f us  p99 %.1f us%n", latencies.count(),
+					latencies.percentileMicros(0.5), latencies.percentileMicros(0.99));
+		}
+	}
+}
@@ -1,401 +1,725 @@
-package nlp.nbc;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringReader;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.Random;
-
-import edu.stanford.nlp.ling.CoreLabel;
-import edu.stanford.nlp.process.CoreLabelTokenFactory;
-import edu.stanford.nlp.process.PTBTokenizer;
-
-/**
- * Class which predicts the label (aka U.S. state) for any inputted tweet
- * 
- * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
- * CS159 - Final Project
- *
- */
-public class Classifier {
-	
-	ModelTrainer model;
-	
-	// Lambda value for smoothing
-	private double lambda = 0;
-	private int correctCount = 0;
-	private int correctMajorityCount = 0;
-	private int totalPredictions = 0;
-	private String majorityState;
-	private HashMap<String, Integer> correctCountByState = new HashMap<>();
-	private HashMap<String, Integer> totalOccurrencesByState = new HashMap<>();
-	
-	/**
-	 * Constructor which initializes data and predicts the label
-	 * for each tweet given in the test set
-	 * 
-	 * @param model The trained model which is used to predict the label
-	 * @param lambda The lambda value which is used to smooth the data
-	 * @param testSetFileName The name of the file that contains the test tweets
-	 */
-	public Classifier(ModelTrainer model, double lambda, String testSetFileName) {
-		this.model = model;
-		this.lambda = lambda;
-		majorityState = majorityState();
-		
-		for (String label : model.getTrainingSetLabels()) {
-			correctCountByState.put(label, 0);
-			totalOccurrencesByState.put(label, 0);
-		}
-		
-		try {
-			BufferedReader testDataReader = new BufferedReader(new FileReader(testSetFileName));	
-			String tweetLine = testDataReader.readLine();
-			
-			PrintWriter out = new PrintWriter(new FileWriter("results/output.txt"));
-
-			while (tweetLine != null) {
-				String[] splitLine = tweetLine.split("\t");
-				if (splitLine.length == 4 && splitLine[0].matches("[0-9]+") && splitLine[1].matches("[0-9]+")) {
-					String testTweet = splitLine[2];
-					out.println(predictLabel(testTweet, splitLine[0]));  // Pass in the tweet and the person ID
-				} else {
-					out.println("No prediction due to improper formatting");
-				}
-				tweetLine = testDataReader.readLine();
-			}
-			out.close();
-		}
-		
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-	
-	/**
-	 * Gives the theta value of a specific word and label
-	 * with lambda smoothing
-	 * 
-	 * @param label The label whose tweets are to be looked at
-	 * @param word The word whose theta we are calculating
-	 * @return The theta value for the given word and label
-	 */
-	public double calculateTheta(String label, String word) {		
-		double wordCount = 0.0;
-		if (model.getLabelWords().get(label).get(word) != null) {
-			wordCount = model.getLabelWords().get(label).get(word) + lambda;
-		} else {
-			wordCount = lambda;
-		}
-		
-		double totalWordsInLabel = model.getLabelWordCounts().get(label) + (lambda * model.getVocab().size());
-		return wordCount / totalWordsInLabel;
-	}
-	
-	/**
-	 * Calculates a "super" theta value that combines word counts and total words from
-	 * all labels except the excluded label, for the purpose of finding most predictive features
-	 * for the excluded label
-	 * 
-	 * @param excludedLabel Label whose values are not to be used
-	 * @param word The word whose theta we are calculating
-	 * @return The "theta" value for the group of states/labels and the given word
-	 */
-	public double calculateSuperTheta(String excludedLabel, String word) {
-		double wordCount = 0.0;
-		double totalWordsInLabel = 0.0;
-		
-		for (String label : model.getTrainingSetLabels()) {
-			if (!label.equals(excludedLabel)) {
-				if (model.getLabelWords().get(label).get(word) != null) {
-					wordCount += model.getLabelWords().get(label).get(word) + lambda;
-				} else {
-					wordCount += lambda;
-				}
-				
-				totalWordsInLabel += model.getLabelWordCounts().get(label) + (lambda * model.getVocab().size());
-			}
-		}
-		
-		return wordCount / totalWordsInLabel;
-	}
-	
-	/**
-	 * Prints out the predicted label and the log-prob of that
-	 * label for a given sentence
-	 * 
-	 * @param tweet Tweet to be classified
-	 * @return Prediction as a string, with label predicted and log prob
-	 */
-	public String predictLabel(String tweet, String personID) {
-			if (model.getIDLocations().get(personID) != null) {
-				String realLocation = model.getIDLocations().get(personID); // get the real location of the person
-				tweet.toLowerCase();
-				
-				StringReader tweetText = new StringReader(tweet);
-				PTBTokenizer<CoreLabel> ptbt = new PTBTokenizer<>(tweetText,
-						new CoreLabelTokenFactory(), "americanize=false,untokenizable=noneDelete");
-
-				Hashtable<String, Double> wordOccurrences = new Hashtable<>();
-
-				// Goes through each word of the tweet 
-				// and adds it to appropriate data structures
-				while (ptbt.hasNext()) {
-					CoreLabel word = ptbt.next();
-					String wordAsString = word.toString();
-					if (wordOccurrences.get(wordAsString) == null) {
-						wordOccurrences.put(wordAsString, 1.0);
-					} else {
-						wordOccurrences.put(wordAsString, wordOccurrences.get(wordAsString) + 1);
-					}
-				}
-				
-				HashMap<String, Double> logProbSums = new HashMap<>();
-				
-				// Populating based off labels that occur in the training set
-				// Prevents issues with trying to predict for labels
-				// That weren't in the training set
-				for (String label : model.getTrainingSetLabels()) {
-					logProbSums.put(label, 0.0);
-				}
-
-				// Note that a lambda value > 0 MUST be used to prevent 
-				// log of 0 operations
-				for (String word : wordOccurrences.keySet()) {
-					if (model.getVocab().contains(word)) {
-
-						// Calculate theta value for this word with every label
-						// And add it to the running log prob sum for that label
-						for (String label : logProbSums.keySet()) {
-							double thetaValue = calculateTheta(label, word);
-							double product = wordOccurrences.get(word) * Math.log10(thetaValue);
-							logProbSums.put(label, logProbSums.get(label) + product);
-						}
-					}
-				}
-
-				HashMap<String, Double> finalLogProbs = new HashMap<>();
-
-				// Calculate the final log probabilities for each label
-				for (String label : logProbSums.keySet()) {
-					double labelProb = Math.log10(model.getLabelProbs().get(label));
-					double finalLogProb = logProbSums.get(label) + labelProb;
-					finalLogProbs.put(label, finalLogProb);
-				}
-
-				// Now, take the max of the log prob. values and print it with its key
-				Map.Entry<String, Double> maxEntry = getEntryForMaxValue(finalLogProbs);
-
-				trackAccuracy(maxEntry.getKey(), realLocation);
-
-				String prediction = maxEntry.getKey() + "\t" + maxEntry.getValue();
-				return prediction;
-				
-			} else {
-				return "User ID invalid";
-			}
-	}
-	
-	/**
-	 * Finds the entry in a hashmap with the maximum value
-	 * and returns that entry
-	 * 
-	 * @param map The hashmap with the values
-	 * @return The entry with the maximum value
-	 */
-	public Map.Entry<String, Double> getEntryForMaxValue(HashMap<String, Double> map) {
-		Map.Entry<String, Double> maxEntry = null;
-
-		for (Map.Entry<String, Double> entry : map.entrySet()) {
-			if (maxEntry == null || entry.getValue().compareTo(maxEntry.getValue()) > 0) {
-				maxEntry = entry;
-			}
-		}
-		
-		return maxEntry;
-	}
-	
-	/**
-	 * Track correct counts and total counts overall and by state
-	 * for accuracy evaluation
-	 * 
-	 * @param predictedLabel The label the model predicted a tweet to have
-	 * @param actualLabel The label the tweet actually had
-	 */
-	public void trackAccuracy(String predictedLabel, String actualLabel) {
-		if (predictedLabel.equals(actualLabel)) {
-			correctCount++;
-			correctCountByState.put(actualLabel, correctCountByState.get(actualLabel) + 1);
-		}
-
-		if (majorityState.equals(actualLabel)) {
-			correctMajorityCount++;
-		}
-
-		totalPredictions++;
-		
-		// Check for null in case test set has actual labels that model hasn't seen
-		if (totalOccurrencesByState.get(actualLabel) == null) {
-			totalOccurrencesByState.put(actualLabel, 1);
-		} else {
-			totalOccurrencesByState.put(actualLabel, totalOccurrencesByState.get(actualLabel) + 1);
-		}
-	}
-	
-	/**
-	 * Finds the state which occurred the most times in the training data
-	 * 
-	 * @return The label/state that occurs the most
-	 */
-	public String majorityState() {
-		Map.Entry<String, Double> maxEntry = null;
-
-		for (Map.Entry<String, Double> entry : model.getLabelProbs().entrySet()) {
-			if (maxEntry == null || entry.getValue().compareTo(maxEntry.getValue()) > 0) {
-				maxEntry = entry;
-			}
-		}
-		
-		return maxEntry.getKey();
-	}
-	
-	/**
-	 * Calculates the accuracy of the model if it just predicted
-	 * the state that occurs the most all the time
-	 * 
-	 * @return The majority accuracy of the model as a decimal proportion
-	 */
-	public double majorityAccuracy() {
-		System.out.println("Correct majority label predictions count: " + this.correctMajorityCount);
-		return (double) correctMajorityCount / (double) totalPredictions;
-	}
-	
-	/**
-	 * Calculates the accuracy per state, then
-	 * averages these accuracies
-	 * 
-	 * @return The average of the accuracy of each state 
-	 */
-	public double microAccuracy() {
-		double sumOfAccuracies = 0.0;
-		int validLabelCount = 0;
-		for (String label : model.getTrainingSetLabels()) {
-			if (totalOccurrencesByState.get(label) > 0) {
-				double accuracy = (double) correctCountByState.get(label) / (double) totalOccurrencesByState.get(label);
-				System.out.println("Accuracy for " + label + " :" + accuracy);
-				sumOfAccuracies += accuracy;
-				validLabelCount++;
-			} else {
-				System.out.println("No occurrences of " + label + " in test data, so excluded from micro-accuracy");
-			}
-		}
-		
-		return sumOfAccuracies / (double) validLabelCount;
-	}
-	
-	/**
-	 * Gives the accuracy of the model as measured by
-	 * the amount of correct predictions over the total amount
-	 * of predictions
-	 * 
-	 * @return The accuracy as a decimal number
-	 */
-	public double macroAccuracy() {
-		System.out.println("Correct predictions count: " + this.correctCount);
-		System.out.println("Total predictions: " + this.totalPredictions);
-		return (double) correctCount/(double) totalPredictions;
-	}
-	
-	/**
-	 * Gives the top 10 most predictive features for a certain label,
-	 * comparing its theta value against the combine theta value of all other labels
-	 * 
-	 * In this version, we are assuming there is always a non-zero lambda value
-	 * 
-	 * @param label The label whose top 10 predictive features are being predicted
-	 */
-	public void top10PredictiveFeatures(String label, boolean considerAllWords) {
-		Hashtable<String, Double> features = new Hashtable<>();
-		
-		HashSet<String> wordsToUse;
-		
-		// Considers only words that occur in all 50 labels
-		if (!considerAllWords) {
-			wordsToUse = new HashSet<>();
-			for (String word : model.getVocab()) {
-				boolean occursInAll = true;
-				for (String state : model.getTrainingSetLabels()) {
-					if (model.getLabelWords().get(state).get(word) == null) {
-						occursInAll = false;
-						break;
-					}
-				}
-
-				if (occursInAll) {
-					wordsToUse.add(word);
-				}
-			}
-		} 
-		
-		// Considers ALL words which will heavily weight words
-		// that occurred even only once in a state but not in other states (so, rare words)
-		else {
-			wordsToUse = model.getVocab();
-		}
-
-		for (String word : wordsToUse) {
-			double labelTheta = calculateTheta(label, word);
-			double otherStatesTheta = calculateSuperTheta(label, word);
-			
-			double predictorValue = labelTheta/otherStatesTheta;
-			features.put(word, predictorValue);
-		}
-		
-		for (int i = 0; i < 10; i++) {
-			double bestLabelValue = Collections.max(features.values());
-			for (String word : features.keySet()) {
-				if (features.get(word) == bestLabelValue) {
-					System.out.println(i+1+ "th most predictive for " + label + ": " + word + "\t" + bestLabelValue);
-					features.remove(word);
-					break;
-				}
-			}
-		}
-		
-		for (int i = 0; i < 10; i++) {
-			double worstLabelValue = Collections.min(features.values());
-			
-			for (String word : features.keySet()) {
-				if (features.get(word) == worstLabelValue) {
-					System.out.println(i+1 + "th least predictive for " + label + ": " + word + "\t" + worstLabelValue);
-					features.remove(word);
-					break;
-				}
-			}
-		}
-	}
-	
-	/**
-	 * Main method for running code
-	 * 
-	 * @param args The training set users file, the training set for the model, the stoplist,
-	 * the lambda value, and then the file containing the test set of tweets
-	 */
-	public static void main(String[] args) {
-		ModelTrainer model = new ModelTrainer("data/training_set_users.txt", "data/training_set_tweets_3mil.txt",
-				"data/smallStoplist");
-		Classifier classifier = new Classifier(model, 0.01, "data/test_set_tweets_360k.txt");
-		classifier.top10PredictiveFeatures("CA", false);
-		System.out.println("Macro accuracy: " + classifier.macroAccuracy());
-		System.out.println("Majority accuracy: " + classifier.majorityAccuracy());
-		System.out.println("Micro accuracy: " + classifier.microAccuracy());
-		System.out.print(classifier.majorityState());
-	}
-}
+package nlp.nbc;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.management.JMException;
+
+/**
+ * Class which predicts the label (aka U.S. state) for any inputted tweet
+ * 
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class Classifier {
+	
+	ModelTrainer model;
+	
+	// Precomputed log theta tables used to score tweets
+	private volatile ScoringModel scoringModel;
+	
+	// Lambda value for smoothing
+	private double lambda = 0;
+	private volatile String majorityState;
+
+	// Correct counts and total counts of the predictions made so far
+	private AccuracyTracker accuracy;
+
+	// Scores of recently seen tweets, or null to score every tweet
+	private volatile PredictionCache predictionCache;
+
+	// Directory test files are tokenized into once with TokenCorpus, or null to tokenize every time
+	private volatile String tokenCacheDirectory;
+
+	// Where the time goes when classifying, shared by every classifier
+	private static final MetricsRegistry.Timer TOKENIZE_TIMER = MetricsRegistry.getDefault().timer("classify.tokenize");
+	private static final MetricsRegistry.Timer SCORE_TIMER = MetricsRegistry.getDefault().timer("classify.score");
+	private static final MetricsRegistry.Timer CACHED_SCORE_TIMER = MetricsRegistry.getDefault().timer("classify.cachedScore");
+	private static final MetricsRegistry.Timer WRITE_TIMER = MetricsRegistry.getDefault().timer("classify.write");
+	private static final MetricsRegistry.Counter TOKENS = MetricsRegistry.getDefault().counter("classify.tokens");
+	private static final MetricsRegistry.Counter TOKENS_IN_VOCAB = MetricsRegistry.getDefault().counter("classify.tokensInVocab");
+	private static final MetricsRegistry.Counter LINES = MetricsRegistry.getDefault().counter("classify.lines");
+	private static final MetricsRegistry.Counter LINES_REJECTED = MetricsRegistry.getDefault().counter("classify.linesRejected");
+	
+	/**
+	 * Constructor which initializes data and predicts the label
+	 * for each tweet given in the test set
+	 * 
+	 * @param model The trained model which is used to predict the label
+	 * @param lambda The lambda value which is used to smooth the data
+	 * @param testSetFileName The name of the file that contains the test tweets
+	 */
+	public Classifier(ModelTrainer model, double lambda, String testSetFileName) {
+		this(model, lambda, testSetFileName, 1);
+	}
+	
+	/**
+	 * Constructor which initializes data and predicts the label
+	 * for each tweet given in the test set using several threads
+	 * 
+	 * @param model The trained model which is used to predict the label
+	 * @param lambda The lambda value which is used to smooth the data
+	 * @param testSetFileName The name of the file that contains the test tweets
+	 * @param numThreads How many threads tokenize and score tweets
+	 */
+	public Classifier(ModelTrainer model, double lambda, String testSetFileName, int numThreads) {
+		this(model, lambda);
+		classifyFile(testSetFileName, "results/output.txt", numThreads);
+	}
+	
+	/**
+	 * Constructor which initializes data without classifying anything,
+	 * so that tweets can be passed to predictLabel directly
+	 * 
+	 * @param model The trained model which is used to predict the label
+	 * @param lambda The lambda value which is used to smooth the data
+	 */
+	public Classifier(ModelTrainer model, double lambda) {
+		this.model = model;
+		this.lambda = lambda;
+		this.scoringModel = new ScoringModel(model, lambda);
+		majorityState = majorityState();
+		accuracy = new AccuracyTracker(model.getTrainingSetLabels(), majorityState);
+	}
+
+	/**
+	 * Recompiles the scoring tables from the model after tweets have been
+	 * added to or removed from it, and does nothing if it hasn't changed.
+	 * Every log theta depends on its label's word count and the vocab size,
+	 * so a change to the counts changes nearly every entry and the tables
+	 * are compiled again in full. Predictions already running finish
+	 * with the old tables, and the accuracy counted so far is kept
+	 */
+	public void refreshModel() {
+		if (!isModelStale()) {
+			return;
+		}
+		ScoringModel refreshed = new ScoringModel(model, lambda);
+		if (refreshed.getModelVersion() != scoringModel.getModelVersion()) {
+			majorityState = majorityState();
+			scoringModel = refreshed;
+		}
+	}
+
+	/**
+	 * Turns on caching of tweet scores, so that duplicate tweets such as
+	 * retweets are only scored once. Entries are dropped when the model is refreshed
+	 * 
+	 * @param cache The cache to use, or null to turn caching off
+	 */
+	public void setPredictionCache(PredictionCache cache) {
+		predictionCache = cache;
+		if (cache != null) {
+			MetricsRegistry metrics = MetricsRegistry.getDefault();
+			metrics.gauge("cache.size", cache::size);
+			metrics.gauge("cache.hits", cache::getHits);
+			metrics.gauge("cache.misses", cache::getMisses);
+			metrics.gauge("cache.evictions", cache::getEvictions);
+			metrics.gauge("cache.invalidations", cache::getInvalidations);
+		}
+	}
+
+	/**
+	 * @return The cache of tweet scores, or null if caching is off
+	 */
+	public PredictionCache getPredictionCache() {
+		return predictionCache;
+	}
+
+	/**
+	 * Has classifyFile read test files tokenized ahead of time, tokenizing
+	 * each file into the directory the first time it is classified
+	 * 
+	 * @param tokenCacheDirectory Directory of TokenCorpus files, or null to tokenize every time
+	 */
+	public void setTokenCacheDirectory(String tokenCacheDirectory) {
+		this.tokenCacheDirectory = tokenCacheDirectory;
+	}
+
+	/**
+	 * Tokenizes and scores a tweet, going through the cache if there is one
+	 * 
+	 * @param scoringModel Tables the tweet is scored with
+	 * @param tweet Text of the tweet
+	 * @return Log probability of each label, which must not be changed
+	 */
+	double[] score(ScoringModel scoringModel, String tweet) {
+		long start = System.nanoTime();
+		PredictionCache cache = predictionCache;
+		if (cache != null) {
+			double[] logProbs = cache.score(scoringModel, tweet, model.getTokenizer());
+			CACHED_SCORE_TIMER.record(System.nanoTime() - start);
+			return logProbs;
+		}
+
+		// Goes through each word of the tweet and keeps the word IDs
+		// of the ones in the vocab, since other words don't affect the score
+		TokenIds tokenIds = new TokenIds(scoringModel);
+		model.getTokenizer().tokenize(tweet, tokenIds);
+		long tokenized = System.nanoTime();
+		double[] logProbs = scoringModel.score(tokenIds.getIds(), tokenIds.size());
+		SCORE_TIMER.record(System.nanoTime() - tokenized);
+		TOKENIZE_TIMER.record(tokenized - start);
+		TOKENS.add(tokenIds.tokenCount());
+		TOKENS_IN_VOCAB.add(tokenIds.size());
+		return logProbs;
+	}
+
+	/**
+	 * @return The scoring tables predictions are currently made with
+	 */
+	ScoringModel getScoringModel() {
+		return scoringModel;
+	}
+
+	/**
+	 * @return True if the model has changed since the scoring tables were compiled
+	 */
+	public boolean isModelStale() {
+		return model.getVersion() != scoringModel.getModelVersion();
+	}
+	
+	/**
+	 * Predicts the label for each tweet in a file and writes the predictions
+	 * to an output file, one line per input line in the same order.
+	 * Batches of lines are tokenized and scored on several threads, each
+	 * with its own accuracy counts which are merged as the batches are written
+	 * 
+	 * @param testSetFileName The name of the file that contains the test tweets
+	 * @param outputFileName The name of the file the predictions are written to
+	 * @param numThreads How many threads tokenize and score tweets
+	 */
+	public void classifyFile(String testSetFileName, String outputFileName, int numThreads) {
+		String cacheDirectory = tokenCacheDirectory;
+		if (cacheDirectory != null) {
+			classifyCorpus(cacheDirectory, testSetFileName, outputFileName, numThreads);
+			return;
+		}
+
+		try {
+			TabRecordReader testDataReader = new TabRecordReader(testSetFileName);
+			PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(outputFileName)));
+
+			BatchPipeline<TweetRecord, ClassifiedBatch> pipeline = new BatchPipeline<>(numThreads, 1000);
+			pipeline.run(testDataReader.tweets(), this::classifyLines, batch -> writeBatch(out, batch));
+			out.close();
+			testDataReader.close();
+		}
+		
+		catch (IOException | UncheckedIOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Predicts the label for each tweet read from a stream, such as stdin,
+	 * and writes the predictions to another stream, one line per input line
+	 * as classifyFile does. Each batch is written and flushed as soon as it
+	 * is done, and a batch is cut short when the next line hasn't arrived
+	 * yet, so predictions keep up with a slow feed. Only a few batches are
+	 * held at once, and while the output is blocked no more input is read,
+	 * so memory stays bounded on an endless feed. The streams aren't closed
+	 * 
+	 * @param in Stream of test tweets, decompressed if it is gzipped
+	 * @param out Stream the predictions are written to
+	 * @param numThreads How many threads tokenize and score tweets
+	 * @param batchSize Most lines put in one batch
+	 * @param afterBatch Run on the calling thread after each batch is written
+	 * and its accuracy counted, for example to report progress
+	 * @throws IOException If the input can't be read or the output can't be written
+	 */
+	public void classifyStream(InputStream in, OutputStream out, int numThreads, int batchSize, Runnable afterBatch)
+			throws IOException {
+		TabRecordReader testDataReader = new TabRecordReader(in);
+		PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+
+		BatchPipeline<TweetRecord, ClassifiedBatch> pipeline = new BatchPipeline<>(numThreads, batchSize);
+		try {
+			pipeline.run(testDataReader.tweets(), testDataReader::hasBufferedLine, this::classifyLines, batch -> {
+				writeBatch(writer, batch);
+				writer.flush();
+				// PrintWriter keeps write errors to itself, such as the reader of a pipe going away
+				if (writer.checkError()) {
+					throw new UncheckedIOException(new IOException("Couldn't write predictions"));
+				}
+				afterBatch.run();
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Classifies a test file from its token corpus, writing the same output
+	 * classifyFile does. Every word of the corpus is looked up in the scoring
+	 * tables once, so tweets are scored without touching a String. The tables
+	 * are the ones current when it starts, and the prediction cache isn't used
+	 * 
+	 * @param cacheDirectory Directory of TokenCorpus files
+	 * @param testSetFileName The name of the file that contains the test tweets
+	 * @param outputFileName The name of the file the predictions are written to
+	 * @param numThreads How many threads score tweets
+	 */
+	private void classifyCorpus(String cacheDirectory, String testSetFileName, String outputFileName, int numThreads) {
+		try (TokenCorpus corpus = TokenCorpus.open(cacheDirectory, testSetFileName, model, numThreads);
+				PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(outputFileName)))) {
+			ScoringModel scoringModel = this.scoringModel;
+			int[] wordIds = new int[corpus.getVocabSize()];
+			for (int corpusWordId = 0; corpusWordId < wordIds.length; corpusWordId++) {
+				wordIds[corpusWordId] = scoringModel.getWordId(corpus.getWord(corpusWordId));
+			}
+
+			BatchPipeline<TokenCorpus.Tweet, ClassifiedBatch> pipeline = new BatchPipeline<>(numThreads, 1000);
+			pipeline.run(corpus.tweets(), tweets -> classifyTokenized(scoringModel, wordIds, tweets),
+					batch -> writeBatch(out, batch));
+		}
+
+		catch (IOException | UncheckedIOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the predictions of a batch and adds its accuracy counts to the classifier's
+	 */
+	private void writeBatch(PrintWriter out, ClassifiedBatch batch) {
+		long start = System.nanoTime();
+		for (String prediction : batch.predictions) {
+			out.println(prediction);
+		}
+		WRITE_TIMER.record(batch.predictions.size(), System.nanoTime() - start);
+		accuracy.merge(batch.accuracy);
+	}
+
+	/**
+	 * Predicts the label for a batch of tokenized lines, as classifyLines does for text
+	 * 
+	 * @param scoringModel Tables the tweets are scored with
+	 * @param wordIds Word ID in the scoring tables of each word of the corpus, or -1 if it isn't in the vocab
+	 * @param tweets Records of the corpus
+	 * @return The prediction for each line and the accuracy counts of the batch
+	 */
+	private ClassifiedBatch classifyTokenized(ScoringModel scoringModel, int[] wordIds, List<TokenCorpus.Tweet> tweets) {
+		ClassifiedBatch batch = new ClassifiedBatch(tweets.size(),
+				new AccuracyTracker(model.getTrainingSetLabels(), majorityState));
+
+		int rejected = 0;
+		int[] tokenIds = new int[16];
+		for (TokenCorpus.Tweet tweet : tweets) {
+			if (!tweet.isWellFormed()) {
+				batch.predictions.add("No prediction due to improper formatting");
+				rejected++;
+				continue;
+			}
+			String realLocation = model.getUserLocations().get(tweet.getUserID());
+			if (realLocation == null) {
+				batch.predictions.add("User ID invalid");
+				continue;
+			}
+
+			long start = System.nanoTime();
+			int[] tokens = tweet.getTokens();
+			if (tokens.length > tokenIds.length) {
+				tokenIds = new int[tokens.length];
+			}
+			int length = 0;
+			for (int corpusWordId : tokens) {
+				int wordId = wordIds[corpusWordId];
+				if (wordId >= 0) {
+					tokenIds[length++] = wordId;
+				}
+			}
+			double[] finalLogProbs = scoringModel.score(tokenIds, length);
+			SCORE_TIMER.record(System.nanoTime() - start);
+			TOKENS.add(tokens.length);
+			TOKENS_IN_VOCAB.add(length);
+
+			int maxLabelId = scoringModel.argmax(finalLogProbs);
+			String maxLabel = scoringModel.getLabel(maxLabelId);
+			batch.accuracy.track(maxLabel, realLocation);
+			batch.predictions.add(maxLabel + "\t" + finalLogProbs[maxLabelId]);
+		}
+		LINES.add(tweets.size());
+		LINES_REJECTED.add(rejected);
+		return batch;
+	}
+	
+	/**
+	 * Predicts the label for a batch of lines from a test file
+	 * 
+	 * @param tweets Lines of the test file
+	 * @return The prediction for each line and the accuracy counts of the batch
+	 */
+	private ClassifiedBatch classifyLines(List<TweetRecord> tweets) {
+		ClassifiedBatch batch = new ClassifiedBatch(tweets.size(),
+				new AccuracyTracker(model.getTrainingSetLabels(), majorityState));
+
+		int rejected = 0;
+		for (TweetRecord tweet : tweets) {
+			if (tweet.isWellFormed()) {
+				batch.predictions.add(predictLabel(tweet.getText(), tweet.getUserID(), batch.accuracy));  // Pass in the tweet and the person ID
+			} else {
+				batch.predictions.add("No prediction due to improper formatting");
+				rejected++;
+			}
+		}
+		LINES.add(tweets.size());
+		LINES_REJECTED.add(rejected);
+		return batch;
+	}
+	
+	/**
+	 * Predictions for one batch of test lines along with their accuracy counts
+	 */
+	private static class ClassifiedBatch {
+		final List<String> predictions;
+		final AccuracyTracker accuracy;
+		
+		ClassifiedBatch(int size, AccuracyTracker accuracy) {
+			this.predictions = new ArrayList<>(size);
+			this.accuracy = accuracy;
+		}
+	}
+	
+	/**
+	 * Gives the theta value of a specific word and label
+	 * with lambda smoothing
+	 * 
+	 * @param label The label whose tweets are to be looked at
+	 * @param word The word whose theta we are calculating
+	 * @return The theta value for the given word and label
+	 */
+	public double calculateTheta(String label, String word) {		
+		double wordCount = 0.0;
+		if (model.getLabelWords().get(label).get(word) != null) {
+			wordCount = model.getLabelWords().get(label).get(word) + lambda;
+		} else {
+			wordCount = lambda;
+		}
+		
+		double totalWordsInLabel = model.getLabelWordCounts().get(label) + (lambda * model.getVocab().size());
+		return wordCount / totalWordsInLabel;
+	}
+	
+	/**
+	 * Calculates a "super" theta value that combines word counts and total words from
+	 * all labels except the excluded label, for the purpose of finding most predictive features
+	 * for the excluded label
+	 * 
+	 * @param excludedLabel Label whose values are not to be used
+	 * @param word The word whose theta we are calculating
+	 * @return The "theta" value for the group of states/labels and the given word
+	 */
+	public double calculateSuperTheta(String excludedLabel, String word) {
+		double wordCount = 0.0;
+		double totalWordsInLabel = 0.0;
+		
+		for (String label : model.getTrainingSetLabels()) {
+			if (!label.equals(excludedLabel)) {
+				if (model.getLabelWords().get(label).get(word) != null) {
+					wordCount += model.getLabelWords().get(label).get(word) + lambda;
+				} else {
+					wordCount += lambda;
+				}
+				
+				totalWordsInLabel += model.getLabelWordCounts().get(label) + (lambda * model.getVocab().size());
+			}
+		}
+		
+		return wordCount / totalWordsInLabel;
+	}
+	
+	/**
+	 * Prints out the predicted label and the log-prob of that
+	 * label for a given sentence
+	 * 
+	 * @param tweet Tweet to be classified
+	 * @return Prediction as a string, with label predicted and log prob
+	 */
+	public String predictLabel(String tweet, String personID) {
+		return predictLabel(tweet, personID, accuracy);
+	}
+	
+	/**
+	 * Prints out the predicted label and the log-prob of that
+	 * label for a given sentence, counting the prediction in
+	 * the given accuracy tracker
+	 * 
+	 * @param tweet Tweet to be classified
+	 * @param personID ID of the user who wrote the tweet
+	 * @param tracker Accuracy counts the prediction is added to
+	 * @return Prediction as a string, with label predicted and log prob
+	 */
+	public String predictLabel(String tweet, String personID, AccuracyTracker tracker) {
+			String realLocation = model.getUserLocations().get(personID); // get the real location of the person
+			if (realLocation != null) {
+				tweet.toLowerCase();
+				
+				// The tables are read once so a refresh can't swap them mid-tweet
+				ScoringModel scoringModel = this.scoringModel;
+
+				// Calculate the final log probabilities for each label
+				// that occurs in the training set and take the max
+				double[] finalLogProbs = score(scoringModel, tweet);
+				int maxLabelId = scoringModel.argmax(finalLogProbs);
+				String maxLabel = scoringModel.getLabel(maxLabelId);
+
+				tracker.track(maxLabel, realLocation);
+
+				String prediction = maxLabel + "\t" + finalLogProbs[maxLabelId];
+				return prediction;
+				
+			} else {
+				return "User ID invalid";
+			}
+	}
+	
+	/**
+	 * Gives the k most likely labels for a tweet along with their
+	 * log-probs, without counting it toward the accuracy
+	 * 
+	 * @param tweet Tweet to be classified
+	 * @param k How many labels to return
+	 * @return The k labels with the highest log-prob, highest first
+	 */
+	public List<Map.Entry<String, Double>> predictTopLabels(String tweet, int k) {
+		ScoringModel scoringModel = this.scoringModel;
+		double[] finalLogProbs = score(scoringModel, tweet);
+
+		// Selection sort of the first k label IDs, since k is small next to the label count
+		int labelCount = finalLogProbs.length;
+		int[] order = new int[labelCount];
+		for (int labelId = 0; labelId < labelCount; labelId++) {
+			order[labelId] = labelId;
+		}
+		List<Map.Entry<String, Double>> topLabels = new ArrayList<>();
+		for (int rank = 0; rank < Math.min(k, labelCount); rank++) {
+			int best = rank;
+			for (int i = rank + 1; i < labelCount; i++) {
+				if (finalLogProbs[order[i]] > finalLogProbs[order[best]]) {
+					best = i;
+				}
+			}
+			int labelId = order[best];
+			order[best] = order[rank];
+			order[rank] = labelId;
+			topLabels.add(new AbstractMap.SimpleImmutableEntry<>(scoringModel.getLabel(labelId), finalLogProbs[labelId]));
+		}
+		return topLabels;
+	}
+	
+	/**
+	 * Finds the entry in a hashmap with the maximum value
+	 * and returns that entry
+	 * 
+	 * @param map The hashmap with the values
+	 * @return The entry with the maximum value
+	 */
+	public Map.Entry<String, Double> getEntryForMaxValue(HashMap<String, Double> map) {
+		Map.Entry<String, Double> maxEntry = null;
+
+		for (Map.Entry<String, Double> entry : map.entrySet()) {
+			if (maxEntry == null || entry.getValue().compareTo(maxEntry.getValue()) > 0) {
+				maxEntry = entry;
+			}
+		}
+		
+		return maxEntry;
+	}
+	
+	/**
+	 * Track correct counts and total counts overall and by state
+	 * for accuracy evaluation
+	 * 
+	 * @param predictedLabel The label the model predicted a tweet to have
+	 * @param actualLabel The label the tweet actually had
+	 */
+	public void trackAccuracy(String predictedLabel, String actualLabel) {
+		accuracy.track(predictedLabel, actualLabel);
+	}
+	
+	/**
+	 * @return Correct counts and total counts of the predictions made so far,
+	 * only to be read from the thread making predictions
+	 */
+	AccuracyTracker getAccuracy() {
+		return accuracy;
+	}
+
+	/**
+	 * @return The majority state of the counts the scoring tables were compiled from,
+	 * which stays the same when the model changes until it is refreshed
+	 */
+	String getMajorityState() {
+		return majorityState;
+	}
+
+	/**
+	 * Finds the state which occurred the most times in the training data
+	 * 
+	 * @return The label/state that occurs the most
+	 */
+	public String majorityState() {
+		Map.Entry<String, Double> maxEntry = null;
+
+		for (Map.Entry<String, Double> entry : model.getLabelProbs().entrySet()) {
+			if (maxEntry == null || entry.getValue().compareTo(maxEntry.getValue()) > 0) {
+				maxEntry = entry;
+			}
+		}
+		
+		return maxEntry.getKey();
+	}
+	
+	/**
+	 * Calculates the accuracy of the model if it just predicted
+	 * the state that occurs the most all the time
+	 * 
+	 * @return The majority accuracy of the model as a decimal proportion
+	 */
+	public double majorityAccuracy() {
+		System.out.println("Correct majority label predictions count: " + accuracy.getCorrectMajorityCount());
+		return (double) accuracy.getCorrectMajorityCount() / (double) accuracy.getTotalPredictions();
+	}
+	
+	/**
+	 * Calculates the accuracy per state, then
+	 * averages these accuracies
+	 * 
+	 * @return The average of the accuracy of each state 
+	 */
+	public double microAccuracy() {
+		double sumOfAccuracies = 0.0;
+		int validLabelCount = 0;
+		for (String label : model.getTrainingSetLabels()) {
+			if (accuracy.getTotalOccurrences(label) > 0) {
+				double labelAccuracy = (double) accuracy.getCorrectCount(label) / (double) accuracy.getTotalOccurrences(label);
+				System.out.println("Accuracy for " + label + " :" + labelAccuracy);
+				sumOfAccuracies += labelAccuracy;
+				validLabelCount++;
+			} else {
+				System.out.println("No occurrences of " + label + " in test data, so excluded from micro-accuracy");
+			}
+		}
+		
+		return sumOfAccuracies / (double) validLabelCount;
+	}
+	
+	/**
+	 * Gives the accuracy of the model as measured by
+	 * the amount of correct predictions over the total amount
+	 * of predictions
+	 * 
+	 * @return The accuracy as a decimal number
+	 */
+	public double macroAccuracy() {
+		System.out.println("Correct predictions count: " + accuracy.getCorrectCount());
+		System.out.println("Total predictions: " + accuracy.getTotalPredictions());
+		return (double) accuracy.getCorrectCount()/(double) accuracy.getTotalPredictions();
+	}
+	
+	/**
+	 * Gives the top 10 most predictive features for a certain label,
+	 * comparing its theta value against the combine theta value of all other labels
+	 * 
+	 * In this version, we are assuming there is always a non-zero lambda value
+	 * 
+	 * @param label The label whose top 10 predictive features are being predicted
+	 * @param considerAllWords True to consider ALL words, which heavily weights words that
+	 * occurred even only once in a state but not in other states (so, rare words),
+	 * or false to consider only words that occur in all 50 labels
+	 */
+	public void top10PredictiveFeatures(String label, boolean considerAllWords) {
+		FeatureRanking.LabelFeatures features = new FeatureRanking(model, lambda).rank(label, 10, considerAllWords);
+		
+		for (int i = 0; i < features.getMostPredictive().size(); i++) {
+			FeatureRanking.Feature feature = features.getMostPredictive().get(i);
+			System.out.println(i+1+ "th most predictive for " + label + ": " + feature.getWord() + "\t" + feature.getValue());
+		}
+		
+		for (int i = 0; i < features.getLeastPredictive().size(); i++) {
+			FeatureRanking.Feature feature = features.getLeastPredictive().get(i);
+			System.out.println(i+1 + "th least predictive for " + label + ": " + feature.getWord() + "\t" + feature.getValue());
+		}
+	}
+	
+	/**
+	 * Main method for running code
+	 * 
+	 * @param args The training set users file, the training set for the model, the stoplist,
+	 * the lambda value, and then the file containing the test set of tweets
+	 */
+	public static void main(String[] args) {
+		String usersFileName = "data/training_set_users.txt";
+		String tweetsFileName = "data/training_set_tweets_3mil.txt";
+		String stoplistFileName = "data/smallStoplist";
+		String modelFileName = "data/training_set_tweets_3mil.model";
+		long fingerprint = ModelFile.fingerprint(usersFileName, tweetsFileName, stoplistFileName);
+
+		// Metrics can be watched over JMX while the run goes
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		try {
+			metrics.registerMBean();
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+
+		// Reuse the saved model if it was trained from the same files,
+		// otherwise train from scratch and save it for the next run
+		ModelTrainer model;
+		try {
+			model = ModelTrainer.loadModel(modelFileName, fingerprint);
+		} catch (IOException e) {
+			System.out.println("Retraining model: " + e.getMessage());
+			TrainingOptions options = new TrainingOptions()
+					.setNumThreads(Runtime.getRuntime().availableProcessors());
+			ProgressReporter progress = new ProgressReporter(metrics.counter("training.lines"),
+					"lines trained", 10, System.err);
+			model = new ModelTrainer(usersFileName, tweetsFileName, stoplistFileName, options);
+			progress.close();
+			try {
+				model.saveModel(modelFileName, fingerprint);
+			} catch (IOException saveException) {
+				saveException.printStackTrace();
+			}
+		}
+		ProgressReporter progress = new ProgressReporter(metrics.counter("classify.lines"),
+				"lines classified", 10, System.err);
+		Classifier classifier = new Classifier(model, 0.01, "data/test_set_tweets_360k.txt",
+				Runtime.getRuntime().availableProcessors());
+		progress.close();
+		classifier.top10PredictiveFeatures("CA", false);
+		System.out.println("Macro accuracy: " + classifier.macroAccuracy());
+		System.out.println("Majority accuracy: " + classifier.majorityAccuracy());
+		System.out.println("Micro accuracy: " + classifier.microAccuracy());
+
+		// Combines each user's tweets into one prediction per user
+		UserClassifier userClassifier = new UserClassifier(classifier, false, 1000000);
+		try {
+			userClassifier.classifyFile("data/test_set_tweets_360k.txt", "results/user_output.txt",
+					Runtime.getRuntime().availableProcessors());
+			System.out.println("User-level accuracy: " + userClassifier.userAccuracy());
+			System.out.println("User-level majority accuracy: " + userClassifier.userMajorityAccuracy());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		for (Map.Entry<String, Number> metric : metrics.snapshot().entrySet()) {
+			System.err.println(metric.getKey() + " = " + metric.getValue());
+		}
+		System.out.print(classifier.majorityState());
+	}
+}
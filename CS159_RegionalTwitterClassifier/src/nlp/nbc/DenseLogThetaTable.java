@@ -0,0 +1,62 @@
+package nlp.nbc;
+
+/**
+ * Log theta table holding a double for every word and label, stored
+ * word-major, so scoring a tweet is only adding up its rows with a kernel
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+class DenseLogThetaTable implements LogThetaTable {
+
+	// Log10 theta values stored word-major, so the row for a word
+	// starts at wordId * labelCount and holds one value per label
+	private final double[] logThetas;
+
+	private final int labelCount;
+
+	// Adds up the rows of a tweet
+	private final ScoringKernel kernel;
+
+	/**
+	 * Constructor which fills in every row
+	 *
+	 * @param vocabSize How many words there are
+	 * @param unseenLogThetas Log10 theta of a word that never occurred with each label
+	 * @param entries Log theta of the words that occurred with each label
+	 * @param kernel Adds up the rows of a tweet
+	 */
+	DenseLogThetaTable(int vocabSize, double[] unseenLogThetas, Entries entries, ScoringKernel kernel) {
+		this.labelCount = unseenLogThetas.length;
+		this.kernel = kernel;
+
+		// Every row starts out as the unseen value, then the
+		// words actually seen with a label overwrite their entry
+		logThetas = new double[vocabSize * labelCount];
+		for (int wordId = 0; wordId < vocabSize; wordId++) {
+			System.arraycopy(unseenLogThetas, 0, logThetas, wordId * labelCount, labelCount);
+		}
+		entries.forEach((wordId, labelId, logTheta) -> logThetas[wordId * labelCount + labelId] = logTheta);
+	}
+
+	@Override
+	public double[] score(int[] tokenIds, int length, double[] logPriors) {
+		return kernel.score(logThetas, labelCount, tokenIds, length, logPriors);
+	}
+
+	@Override
+	public double getLogTheta(int wordId, int labelId) {
+		return logThetas[wordId * labelCount + labelId];
+	}
+
+	@Override
+	public long getStoredValueCount() {
+		return logThetas.length;
+	}
+
+	@Override
+	public long memoryBytes() {
+		return 8L * logThetas.length;
+	}
+}
@@ -0,0 +1,369 @@
+package nlp.nbc;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Twitter-aware tokenizer which scans the tweet once and hands each
+ * token to the sink as a span of the input, without allocating per token.
+ * 
+ * Keeps URLs, @mentions, #hashtags, emoticons, HTML entities and emoji
+ * together as single tokens. Otherwise follows PTB conventions closely:
+ * words keep internal hyphens and digit separators, clitics such as n't
+ * and 's are split off, and runs of the same punctuation are one token
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class FastTweetTokenizer implements TweetTokenizer {
+
+	// Name saved with models trained with this tokenizer
+	public static final String NAME = "fast";
+
+	// Emoticons kept as single tokens, matched ignoring case
+	private static final String[] EMOTICONS = {
+		":-)", ":-(", ":-d", ":-p", ";-)", ":'(", "^_^", 
+		":)", ":(", ":d", ":p", ";)", ":/", ":o", ":|", "=)", "=(", "=p", "=d", "<3"
+	};
+
+	// Clitics split off the end of a word, as PTB does
+	private static final String[] CLITICS = { "'s", "'re", "'ve", "'ll", "'d", "'m" };
+
+	@Override
+	public void tokenize(CharSequence tweet, TokenSink sink) {
+		int length = tweet.length();
+		int i = 0;
+		while (i < length) {
+			int codePoint = Character.codePointAt(tweet, i);
+			int charCount = Character.charCount(codePoint);
+
+			if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)
+					|| Character.isISOControl(codePoint) || Character.getType(codePoint) == Character.FORMAT) {
+				i += charCount;
+				continue;
+			}
+
+			int end = scanUrl(tweet, i, length);
+			if (end == i) {
+				end = scanMentionOrHashtag(tweet, i, length);
+			}
+			if (end == i) {
+				end = scanEmoticon(tweet, i, length);
+			}
+			if (end == i) {
+				end = scanEntity(tweet, i, length);
+			}
+			if (end > i) {
+				sink.token(tweet, i, end);
+				i = end;
+			} else if (Character.isLetterOrDigit(codePoint)) {
+				end = scanWord(tweet, i, length);
+				emitWord(tweet, i, end, sink);
+				i = end;
+			} else if (isEmoji(codePoint)) {
+				end = scanEmoji(tweet, i + charCount, length);
+				sink.token(tweet, i, end);
+				i = end;
+			} else {
+				// Punctuation, with a run of the same char kept together like "..." or "!!"
+				end = i + charCount;
+				while (end < length && Character.codePointAt(tweet, end) == codePoint) {
+					end += charCount;
+				}
+				sink.token(tweet, i, end);
+				i = end;
+			}
+		}
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * @return End of a URL starting at start, or start if there isn't one
+	 */
+	private static int scanUrl(CharSequence text, int start, int length) {
+		if (!startsWithIgnoreCase(text, start, length, "http://")
+				&& !startsWithIgnoreCase(text, start, length, "https://")
+				&& !startsWithIgnoreCase(text, start, length, "www.")) {
+			return start;
+		}
+
+		int end = start;
+		while (end < length && !Character.isWhitespace(text.charAt(end))) {
+			end++;
+		}
+
+		// Leave punctuation that ends the sentence out of the URL
+		while (end > start + 4 && ".,!?;:)\"'".indexOf(text.charAt(end - 1)) >= 0) {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * @return End of an @mention or #hashtag starting at start, or start if there isn't one
+	 */
+	private static int scanMentionOrHashtag(CharSequence text, int start, int length) {
+		char first = text.charAt(start);
+		if ((first != '@' && first != '#') || start + 1 >= length) {
+			return start;
+		}
+
+		int end = start + 1;
+		while (end < length) {
+			int codePoint = Character.codePointAt(text, end);
+			if (!Character.isLetterOrDigit(codePoint) && codePoint != '_') {
+				break;
+			}
+			end += Character.charCount(codePoint);
+		}
+		return end > start + 1 ? end : start;
+	}
+
+	/**
+	 * @return End of an emoticon starting at start, or start if there isn't one
+	 */
+	private static int scanEmoticon(CharSequence text, int start, int length) {
+		for (String emoticon : EMOTICONS) {
+			int end = start + emoticon.length();
+			if (startsWithIgnoreCase(text, start, length, emoticon)
+					&& (end == length || !Character.isLetterOrDigit(text.charAt(end)))) {
+				return end;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * @return End of an HTML entity such as &amp;amp; starting at start, or start if there isn't one
+	 */
+	private static int scanEntity(CharSequence text, int start, int length) {
+		if (text.charAt(start) != '&') {
+			return start;
+		}
+		int end = start + 1;
+		while (end < length && end - start <= 8 && Character.isLetterOrDigit(text.charAt(end))) {
+			end++;
+		}
+		return end > start + 1 && end < length && text.charAt(end) == ';' ? end + 1 : start;
+	}
+
+	/**
+	 * Scans a word made of letters and digits, which may have single hyphens
+	 * or apostrophes between letters and periods or commas between digits
+	 * 
+	 * @return End of the word starting at start
+	 */
+	private static int scanWord(CharSequence text, int start, int length) {
+		int end = start;
+		while (end < length) {
+			int codePoint = Character.codePointAt(text, end);
+			if (Character.isLetterOrDigit(codePoint)) {
+				end += Character.charCount(codePoint);
+			} else if (end + 1 < length && isJoiner(text.charAt(end), text.charAt(end - 1), text.charAt(end + 1))) {
+				end++;
+			} else {
+				break;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return True if the char joins the chars on either side of it into one word
+	 */
+	private static boolean isJoiner(char c, char before, char after) {
+		if (c == '-' || c == '\'' || c == '\u2019') {
+			return Character.isLetterOrDigit(before) && Character.isLetter(after);
+		} else if (c == '.' || c == ',') {
+			return Character.isDigit(before) && Character.isDigit(after);
+		}
+		return false;
+	}
+
+	/**
+	 * Emits a word, splitting off a clitic at its end as a separate token
+	 */
+	private static void emitWord(CharSequence text, int start, int end, TokenSink sink) {
+		int split = end;
+		if (end - start > 3 && endsWithIgnoreCase(text, start, end, "n't")) {
+			split = end - 3;
+		} else {
+			for (String clitic : CLITICS) {
+				if (end - start > clitic.length() && endsWithIgnoreCase(text, start, end, clitic)) {
+					split = end - clitic.length();
+					break;
+				}
+			}
+		}
+
+		sink.token(text, start, split);
+		if (split < end) {
+			sink.token(text, split, end);
+		}
+	}
+
+	/**
+	 * @return True if the code point is an emoji or other pictographic symbol
+	 */
+	private static boolean isEmoji(int codePoint) {
+		return codePoint >= 0x1F000 || Character.getType(codePoint) == Character.OTHER_SYMBOL;
+	}
+
+	/**
+	 * Extends an emoji over any variation selectors, skin tone modifiers
+	 * and zero width joined emoji that follow it
+	 * 
+	 * @return End of the emoji sequence
+	 */
+	private static int scanEmoji(CharSequence text, int end, int length) {
+		while (end < length) {
+			int codePoint = Character.codePointAt(text, end);
+			if (codePoint == 0xFE0F || (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF)) {
+				end += Character.charCount(codePoint);
+			} else if (codePoint == 0x200D && end + 1 < length && isEmoji(Character.codePointAt(text, end + 1))) {
+				end += 1 + Character.charCount(Character.codePointAt(text, end + 1));
+			} else {
+				break;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return True if the text at start begins with the prefix, ignoring case
+	 */
+	private static boolean startsWithIgnoreCase(CharSequence text, int start, int length, String prefix) {
+		if (length - start < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (Character.toLowerCase(text.charAt(start + i)) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return True if the span ends with the suffix, ignoring case
+	 */
+	private static boolean endsWithIgnoreCase(CharSequence text, int start, int end, String suffix) {
+		if (end - start < suffix.length()) {
+			return false;
+		}
+		int offset = end - suffix.length();
+		for (int i = 0; i < suffix.length(); i++) {
+			char c = text.charAt(offset + i);
+			if (c == '\u2019') {
+				c = '\'';
+			}
+			if (Character.toLowerCase(c) != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param tokenizer The tokenizer to run
+	 * @param tweet Text of the tweet
+	 * @return The tokens of the tweet as strings
+	 */
+	private static List<String> tokens(TweetTokenizer tokenizer, String tweet) {
+		List<String> tokens = new ArrayList<>();
+		tokenizer.tokenize(tweet, (text, start, end) -> tokens.add(text.subSequence(start, end).toString()));
+		return tokens;
+	}
+
+	/**
+	 * Main method which compares the tokens of this tokenizer with PTBTokenizer's
+	 * on the shipped data files, reporting how many tweets get identical tokens,
+	 * how much the token multisets overlap and how fast each tokenizer is
+	 * 
+	 * @param args Optionally the tweet files to compare on
+	 * @throws IOException If a file can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		String[] fileNames = args.length > 0 ? args : new String[] {
+			"data/training_set_tweets_1k.txt", "data/test_set_tweets_1k.txt", "data/test_set_tweets_10k.txt" };
+		TweetTokenizer fast = new FastTweetTokenizer();
+		TweetTokenizer ptb = new PTBTweetTokenizer();
+
+		for (String fileName : fileNames) {
+			List<String> tweets = new ArrayList<>();
+			try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					String[] splitLine = line.split("\t");
+					if (splitLine.length == 4) {
+						tweets.add(splitLine[2].toLowerCase());
+					}
+				}
+			}
+
+			int identicalTweets = 0;
+			long sharedTokens = 0;
+			long totalTokens = 0;
+			HashMap<String, Integer> differences = new HashMap<>();
+			for (String tweet : tweets) {
+				List<String> fastTokens = tokens(fast, tweet);
+				List<String> ptbTokens = tokens(ptb, tweet);
+				if (fastTokens.equals(ptbTokens)) {
+					identicalTweets++;
+				}
+
+				// Multiset overlap: tokens both produced over tokens either produced
+				HashMap<String, Integer> counts = new HashMap<>();
+				for (String token : ptbTokens) {
+					counts.merge(token, 1, Integer::sum);
+				}
+				int shared = 0;
+				for (String token : fastTokens) {
+					Integer count = counts.get(token);
+					if (count != null && count > 0) {
+						counts.put(token, count - 1);
+						shared++;
+					} else {
+						differences.merge("fast only: " + token, 1, Integer::sum);
+					}
+				}
+				for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+					if (entry.getValue() > 0) {
+						differences.merge("ptb only: " + entry.getKey(), entry.getValue(), Integer::sum);
+					}
+				}
+				sharedTokens += shared;
+				totalTokens += fastTokens.size() + ptbTokens.size() - shared;
+			}
+
+			System.out.println(fileName + ": " + tweets.size() + " tweets");
+			System.out.printf("  identical token sequences: %.2f%%%n", 100.0 * identicalTweets / tweets.size());
+			System.out.printf("  token multiset overlap:    %.2f%%%n", 100.0 * sharedTokens / totalTokens);
+			differences.entrySet().stream()
+					.sorted((a, b) -> b.getValue() - a.getValue())
+					.limit(10)
+					.forEach(entry -> System.out.println("  " + entry.getValue() + "\t" + entry.getKey()));
+
+			for (TweetTokenizer tokenizer : new TweetTokenizer[] { ptb, fast }) {
+				int[] tokenCount = new int[1];
+				long start = System.nanoTime();
+				for (int round = 0; round < 5; round++) {
+					for (String tweet : tweets) {
+						tokenizer.tokenize(tweet, (text, tokenStart, tokenEnd) -> tokenCount[0]++);
+					}
+				}
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("  %-5s %12.0f tweets/sec%n", tokenizer.getName(), 5 * tweets.size() / seconds);
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package nlp.nbc;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Gives the words of tweets dense integer word IDs, in the order they are
+ * first added, so the model can keep its counts in arrays. WordDictionary
+ * keeps the words themselves, and HashedWordDictionary keeps only the hash
+ * bucket each word falls in, for the hashing trick
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public interface FeatureDictionary {
+
+	/**
+	 * @param word The word to look up
+	 * @return The word ID of the word, or -1 if it hasn't been added
+	 */
+	int getId(String word);
+
+	/**
+	 * Looks up a span of text without creating a String for it
+	 *
+	 * @param text Text holding the word
+	 * @param start Index of the first char of the word
+	 * @param end Index after the last char of the word
+	 * @return The word ID of the word, or -1 if it hasn't been added
+	 */
+	int getId(CharSequence text, int start, int end);
+
+	/**
+	 * Adds a word if it isn't in the dictionary yet
+	 *
+	 * @param word The word to add
+	 * @return The word ID of the word
+	 */
+	int add(String word);
+
+	/**
+	 * Adds a span of text as a word if it isn't in the dictionary yet
+	 *
+	 * @param text Text holding the word
+	 * @param start Index of the first char of the word
+	 * @param end Index after the last char of the word
+	 * @return The word ID of the word
+	 */
+	int add(CharSequence text, int start, int end);
+
+	/**
+	 * @param wordId ID of the word
+	 * @return The word with that ID, or null if the dictionary keeps no words
+	 */
+	String getWord(int wordId);
+
+	/**
+	 * @return A new, empty dictionary which maps words to word IDs the same way as this one
+	 */
+	FeatureDictionary emptyCopy();
+
+	/**
+	 * Adds a word of another dictionary made by emptyCopy, or the one it was made from
+	 *
+	 * @param source The other dictionary
+	 * @param sourceWordId ID of the word in the other dictionary
+	 * @return The word ID of the word in this dictionary
+	 */
+	int addFrom(FeatureDictionary source, int sourceWordId);
+
+	/**
+	 * @return How many words have been added
+	 */
+	int size();
+
+	/**
+	 * @return Bits of the hash picking a word's bucket, or 0 if the words themselves are kept
+	 */
+	int getHashBits();
+
+	/**
+	 * @return Approximate bytes used by the dictionary
+	 */
+	long memoryBytes();
+
+	/**
+	 * Writes the dictionary to a model file, in a layout its class reads back
+	 * in place from the mapped file
+	 *
+	 * @param out Stream to write to
+	 * @throws IOException If the stream can't be written
+	 */
+	void write(DataOutputStream out) throws IOException;
+}
@@ -0,0 +1,328 @@
+package nlp.nbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Ranks the words of a trained model by how predictive they are of each label,
+ * comparing a word's theta for the label against its combined theta for all
+ * other labels (see Classifier.calculateSuperTheta).
+ *
+ * The count of each word across all labels is added up once, so the count for
+ * "all other labels" is that total minus the label's own count, and ranking a
+ * label is a single pass over the vocab with bounded heaps for the top and bottom k.
+ * The counts are copied out of the model along with the totals, so the model can
+ * be changed while labels are ranked without the two ever disagreeing
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class FeatureRanking {
+
+	/**
+	 * A word along with how predictive it is of a label
+	 */
+	public static class Feature {
+		private final String word;
+		private final double value;
+
+		Feature(String word, double value) {
+			this.word = word;
+			this.value = value;
+		}
+
+		/**
+		 * @return The word
+		 */
+		public String getWord() {
+			return word;
+		}
+
+		/**
+		 * @return The word's theta for the label divided by its theta for all other labels
+		 */
+		public double getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return word + "\t" + value;
+		}
+	}
+
+	/**
+	 * The most and least predictive words of one label
+	 */
+	public static class LabelFeatures {
+		private final String label;
+		private final List<Feature> mostPredictive;
+		private final List<Feature> leastPredictive;
+
+		LabelFeatures(String label, List<Feature> mostPredictive, List<Feature> leastPredictive) {
+			this.label = label;
+			this.mostPredictive = Collections.unmodifiableList(mostPredictive);
+			this.leastPredictive = Collections.unmodifiableList(leastPredictive);
+		}
+
+		/**
+		 * @return The label the words were ranked for
+		 */
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * @return The most predictive words, most predictive first
+		 */
+		public List<Feature> getMostPredictive() {
+			return mostPredictive;
+		}
+
+		/**
+		 * @return The least predictive words, least predictive first
+		 */
+		public List<Feature> getLeastPredictive() {
+			return leastPredictive;
+		}
+	}
+
+	// Orders features from least to most predictive, breaking ties by word
+	private static final Comparator<Feature> ASCENDING =
+			Comparator.comparingDouble(Feature::getValue).thenComparing(Feature::getWord);
+	private static final Comparator<Feature> DESCENDING = ASCENDING.reversed();
+
+	// Labels of the training set, sorted
+	private final List<String> labels = new ArrayList<>();
+
+	// Words in the vocab
+	private final String[] words;
+
+	// Count of each word (indexed like words) across all training set labels,
+	// and how many of those labels the word occurs with
+	private final int[] wordTotals;
+	private final int[] labelsWithWord;
+
+	// Count of each word with each label, where it isn't 0. The entries of label i
+	// (indexed like labels) are labelEntryStarts[i] up to labelEntryStarts[i + 1],
+	// each holding a word (indexed like words) and its count
+	private final int[] labelEntryStarts;
+	private final int[] entryWordIndexes;
+	private final int[] entryCounts;
+
+	// Smoothed total words of each label (indexed like labels), and their sum
+	private final double[] totalWordsInLabels;
+	private final double totalWordsInAllLabels;
+
+	private final double lambda;
+
+	/**
+	 * Constructor which copies the counts of every word with each label
+	 * and adds them up across labels, under the model's lock
+	 *
+	 * Note that a lambda value > 0 MUST be used to prevent division by 0
+	 *
+	 * @param model The trained model whose words are ranked
+	 * @param lambda The lambda value which is used to smooth the data
+	 * @throws IllegalArgumentException If the model was trained with the hashing trick, so keeps no words to rank
+	 */
+	public FeatureRanking(ModelTrainer model, double lambda) {
+		if (model.getDictionary().getHashBits() > 0) {
+			throw new IllegalArgumentException("A model trained with the hashing trick keeps no words to rank");
+		}
+		this.lambda = lambda;
+
+		synchronized (model) {
+			labels.addAll(model.getTrainingSetLabels());
+			Collections.sort(labels);
+
+			int vocabSize = model.getVocab().size();
+			int[] modelLabelIds = new int[labels.size()];
+			totalWordsInLabels = new double[labels.size()];
+			double total = 0.0;
+			for (int i = 0; i < labels.size(); i++) {
+				modelLabelIds[i] = model.getLabelId(labels.get(i));
+				totalWordsInLabels[i] = model.getLabelWordCounts().get(labels.get(i)) + (lambda * vocabSize);
+				total += totalWordsInLabels[i];
+			}
+			totalWordsInAllLabels = total;
+
+			// Maps model word IDs to indexes here, skipping removed words
+			FeatureDictionary dictionary = model.getDictionary();
+			int[] wordIndexes = new int[dictionary.size()];
+			words = new String[vocabSize];
+			int wordIndex = 0;
+			for (int wordId = 0; wordId < dictionary.size(); wordId++) {
+				if (model.isInVocab(wordId)) {
+					words[wordIndex] = dictionary.getWord(wordId);
+					wordIndexes[wordId] = wordIndex++;
+				} else {
+					wordIndexes[wordId] = -1;
+				}
+			}
+
+			// Maps model label IDs to indexes here, skipping labels not in the training set
+			int[] labelIndexes = new int[model.getLabelCount()];
+			Arrays.fill(labelIndexes, -1);
+			for (int i = 0; i < modelLabelIds.length; i++) {
+				labelIndexes[modelLabelIds[i]] = i;
+			}
+			wordTotals = new int[vocabSize];
+			labelsWithWord = new int[vocabSize];
+			labelEntryStarts = new int[labels.size() + 1];
+			model.getWordLabelCounts().forEach((wordId, modelLabelId, count) -> {
+				int index = wordIndexes[wordId];
+				int labelIndex = labelIndexes[modelLabelId];
+				if (index >= 0 && labelIndex >= 0) {
+					wordTotals[index] += count;
+					labelsWithWord[index]++;
+					labelEntryStarts[labelIndex + 1]++;
+				}
+			});
+			for (int i = 0; i < labels.size(); i++) {
+				labelEntryStarts[i + 1] += labelEntryStarts[i];
+			}
+
+			entryWordIndexes = new int[labelEntryStarts[labels.size()]];
+			entryCounts = new int[entryWordIndexes.length];
+			int[] nextEntries = Arrays.copyOf(labelEntryStarts, labels.size());
+			model.getWordLabelCounts().forEach((wordId, modelLabelId, count) -> {
+				int index = wordIndexes[wordId];
+				int labelIndex = labelIndexes[modelLabelId];
+				if (index >= 0 && labelIndex >= 0) {
+					int entry = nextEntries[labelIndex]++;
+					entryWordIndexes[entry] = index;
+					entryCounts[entry] = count;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Finds the most and least predictive words of a label. The two lists never
+	 * share a word, as the least predictive are picked from the words left over
+	 *
+	 * @param label The label whose words are ranked
+	 * @param k How many words to give in each list
+	 * @param considerAllWords True to rank every vocab word, which heavily weights
+	 * rare words, or false to only rank words which occur with every label
+	 * @return The k most and k least predictive words of the label
+	 */
+	public LabelFeatures rank(String label, int k, boolean considerAllWords) {
+		int labelIndex = Collections.binarySearch(labels, label);
+		if (labelIndex < 0) {
+			throw new IllegalArgumentException("Label is not in the training set: " + label);
+		}
+		double totalWordsInLabel = totalWordsInLabels[labelIndex];
+		double totalWordsInOtherLabels = totalWordsInAllLabels - totalWordsInLabel;
+		double otherLabelsLambda = lambda * (labels.size() - 1);
+
+		// The label's count of every word, from the copy taken with the totals
+		int[] counts = new int[words.length];
+		for (int entry = labelEntryStarts[labelIndex]; entry < labelEntryStarts[labelIndex + 1]; entry++) {
+			counts[entryWordIndexes[entry]] = entryCounts[entry];
+		}
+
+		// The top heap keeps its least predictive word on top so it can be replaced,
+		// and the bottom heap keeps its most predictive word on top
+		PriorityQueue<Feature> top = new PriorityQueue<>(k + 1, ASCENDING);
+		PriorityQueue<Feature> bottom = new PriorityQueue<>(k + 1, DESCENDING);
+		double[] values = new double[words.length];
+		int candidateCount = 0;
+
+		for (int i = 0; i < words.length; i++) {
+			if (!considerAllWords && labelsWithWord[i] < labels.size()) {
+				values[i] = Double.NaN;
+				continue;
+			}
+			int count = counts[i];
+			double labelTheta = (count + lambda) / totalWordsInLabel;
+			double otherLabelsTheta = (wordTotals[i] - count + otherLabelsLambda) / totalWordsInOtherLabels;
+			values[i] = labelTheta / otherLabelsTheta;
+			candidateCount++;
+
+			Feature feature = new Feature(words[i], values[i]);
+			offer(top, k, feature, ASCENDING);
+			offer(bottom, k, feature, DESCENDING);
+		}
+
+		List<Feature> mostPredictive = drain(top);
+		Collections.reverse(mostPredictive);
+
+		// With fewer than 2k words the two lists could overlap,
+		// so the least predictive are found again without the top words
+		if (candidateCount < 2 * k) {
+			Set<String> topWords = new HashSet<>();
+			for (Feature feature : mostPredictive) {
+				topWords.add(feature.getWord());
+			}
+			bottom.clear();
+			for (int i = 0; i < words.length; i++) {
+				if (!Double.isNaN(values[i]) && !topWords.contains(words[i])) {
+					offer(bottom, k, new Feature(words[i], values[i]), DESCENDING);
+				}
+			}
+		}
+		List<Feature> leastPredictive = drain(bottom);
+		Collections.reverse(leastPredictive);
+
+		return new LabelFeatures(label, mostPredictive, leastPredictive);
+	}
+
+	/**
+	 * Ranks the words of every label in the training set, several labels at a time
+	 *
+	 * @param k How many words to give in each list
+	 * @param considerAllWords True to rank every vocab word, or false to
+	 * only rank words which occur with every label
+	 * @param numThreads How many labels are ranked at once
+	 * @return The ranking of each label, in label order
+	 */
+	public Map<String, LabelFeatures> rankAll(int k, boolean considerAllWords, int numThreads) {
+		Map<String, LabelFeatures> rankings = new LinkedHashMap<>();
+		BatchPipeline<String, LabelFeatures> pipeline = new BatchPipeline<>(numThreads, 1);
+		pipeline.run(labels.iterator(), batch -> rank(batch.get(0), k, considerAllWords),
+				features -> rankings.put(features.getLabel(), features));
+		return rankings;
+	}
+
+	/**
+	 * @return The labels which can be ranked, sorted
+	 */
+	public List<String> getLabels() {
+		return Collections.unmodifiableList(labels);
+	}
+
+	/**
+	 * Adds a feature to a heap holding at most k features, dropping whichever
+	 * one the order puts first if it gets too big
+	 */
+	private static void offer(PriorityQueue<Feature> heap, int k, Feature feature, Comparator<Feature> order) {
+		if (heap.size() < k) {
+			heap.add(feature);
+		} else if (k > 0 && order.compare(feature, heap.peek()) > 0) {
+			heap.poll();
+			heap.add(feature);
+		}
+	}
+
+	/**
+	 * Empties a heap into a list, in the heap's order
+	 */
+	private static List<Feature> drain(PriorityQueue<Feature> heap) {
+		List<Feature> features = new ArrayList<>(heap.size());
+		while (!heap.isEmpty()) {
+			features.add(heap.poll());
+		}
+		return features;
+	}
+}
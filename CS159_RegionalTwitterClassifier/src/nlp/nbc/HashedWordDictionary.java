@@ -0,0 +1,236 @@
+package nlp.nbc;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Word dictionary for the hashing trick: a word's hash picks one of 2^k
+ * buckets and the bucket stands in for the word, so no word strings are
+ * kept and the vocab can never grow past 2^k. Words sharing a bucket share
+ * their counts. Buckets get dense word IDs in the order they are first used,
+ * the same as words do in WordDictionary, so the rest of the model doesn't
+ * know the difference. Words can be looked up but not listed, so getWord
+ * gives null, and model files keep the hash bits and each word ID's bucket.
+ * A dictionary read from a model file is used in place until a bucket is added
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class HashedWordDictionary implements FeatureDictionary {
+
+	// Most hash bits, so the bucket table stays a sensible size
+	public static final int MAX_HASH_BITS = 24;
+
+	// How many bits of the hash pick the bucket
+	private final int hashBits;
+
+	// Word ID + 1 of each bucket, or 0 for a bucket nothing has been added to
+	private int[] bucketWordIds;
+
+	// Bucket of each word ID
+	private int[] buckets = new int[1024];
+
+	// How many buckets have been added
+	private int size = 0;
+
+	// While the dictionary is read in place from a model file, the two tables
+	// above as views of the mapped file. Null once they have been copied to the heap
+	private IntBuffer mappedBucketWordIds;
+	private IntBuffer mappedBuckets;
+
+	/**
+	 * Constructor for an empty dictionary with 2^hashBits buckets
+	 *
+	 * @param hashBits How many bits of the hash pick the bucket, from 1 to MAX_HASH_BITS
+	 */
+	public HashedWordDictionary(int hashBits) {
+		this.hashBits = checkHashBits(hashBits);
+		bucketWordIds = new int[1 << hashBits];
+	}
+
+	/**
+	 * Constructor for a dictionary read in place from a model file
+	 *
+	 * @param hashBits How many bits of the hash pick the bucket
+	 * @param size How many buckets have been added
+	 * @param mappedBuckets Bucket of each word ID
+	 * @param mappedBucketWordIds Word ID + 1 of each bucket
+	 */
+	private HashedWordDictionary(int hashBits, int size, IntBuffer mappedBuckets, IntBuffer mappedBucketWordIds) {
+		this.hashBits = checkHashBits(hashBits);
+		this.size = size;
+		this.mappedBuckets = mappedBuckets;
+		this.mappedBucketWordIds = mappedBucketWordIds;
+		buckets = null;
+	}
+
+	/**
+	 * @param hashBits How many bits of the hash pick the bucket
+	 * @return The hash bits
+	 * @throws IllegalArgumentException If they aren't from 1 to MAX_HASH_BITS
+	 */
+	private static int checkHashBits(int hashBits) {
+		if (hashBits < 1 || hashBits > MAX_HASH_BITS) {
+			throw new IllegalArgumentException("Hash bits must be from 1 to " + MAX_HASH_BITS + ": " + hashBits);
+		}
+		return hashBits;
+	}
+
+	@Override
+	public int getId(String word) {
+		return getBucketWordId(bucket(word.hashCode()));
+	}
+
+	@Override
+	public int getId(CharSequence text, int start, int end) {
+		return getBucketWordId(bucket(WordDictionary.hash(text, start, end)));
+	}
+
+	/**
+	 * @param bucket Number of the bucket
+	 * @return The word ID of the bucket, or -1 if it hasn't been added
+	 */
+	private int getBucketWordId(int bucket) {
+		return (mappedBucketWordIds != null ? mappedBucketWordIds.get(bucket) : bucketWordIds[bucket]) - 1;
+	}
+
+	@Override
+	public int add(CharSequence text, int start, int end) {
+		return addBucket(bucket(WordDictionary.hash(text, start, end)));
+	}
+
+	@Override
+	public int add(String word) {
+		return addBucket(bucket(word.hashCode()));
+	}
+
+	@Override
+	public HashedWordDictionary emptyCopy() {
+		return new HashedWordDictionary(hashBits);
+	}
+
+	@Override
+	public int addFrom(FeatureDictionary source, int sourceWordId) {
+		return addBucket(((HashedWordDictionary) source).getBucket(sourceWordId));
+	}
+
+	/**
+	 * Adds a bucket if it hasn't been added yet
+	 *
+	 * @param bucket Number of the bucket
+	 * @return The word ID of the bucket
+	 */
+	public int addBucket(int bucket) {
+		int wordId = getBucketWordId(bucket);
+		if (wordId < 0) {
+			if (mappedBuckets != null) {
+				copyToHeap();
+			}
+			wordId = size++;
+			if (wordId == buckets.length) {
+				buckets = Arrays.copyOf(buckets, wordId * 2);
+			}
+			buckets[wordId] = bucket;
+			bucketWordIds[bucket] = wordId + 1;
+		}
+		return wordId;
+	}
+
+	/**
+	 * @param wordId ID of the word
+	 * @return Number of the bucket with that word ID
+	 */
+	public int getBucket(int wordId) {
+		return mappedBuckets != null ? mappedBuckets.get(wordId) : buckets[wordId];
+	}
+
+	/**
+	 * @return Null, since only the buckets of words are kept
+	 */
+	@Override
+	public String getWord(int wordId) {
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Approximate bytes used by the dictionary, none while it is read in place from a model file
+	 */
+	@Override
+	public long memoryBytes() {
+		if (mappedBuckets != null) {
+			return 0;
+		}
+		return (long) bucketWordIds.length * 4 + (long) buckets.length * 4;
+	}
+
+	/**
+	 * Writes the dictionary to a model file, as the bucket of each word ID
+	 * and then the word ID + 1 of each bucket
+	 *
+	 * @param out Stream to write to
+	 * @throws IOException If the stream can't be written
+	 */
+	@Override
+	public void write(DataOutputStream out) throws IOException {
+		for (int wordId = 0; wordId < size; wordId++) {
+			out.writeInt(getBucket(wordId));
+		}
+		for (int bucket = 0; bucket < 1 << hashBits; bucket++) {
+			out.writeInt(getBucketWordId(bucket) + 1);
+		}
+	}
+
+	/**
+	 * Reads a dictionary written by write, using the buffer in place, so
+	 * a dictionary read from a mapped file stays in the file until a bucket is added
+	 *
+	 * @param buffer Buffer positioned at the dictionary, which is moved past it
+	 * @param hashBits How many bits of the hash pick the bucket
+	 * @param size How many buckets the dictionary has
+	 * @return The dictionary
+	 */
+	static HashedWordDictionary read(ByteBuffer buffer, int hashBits, int size) {
+		IntBuffer buckets = ModelFile.readSection(buffer, 4 * size).asIntBuffer();
+		IntBuffer bucketWordIds = ModelFile.readSection(buffer, 4 << hashBits).asIntBuffer();
+		return new HashedWordDictionary(hashBits, size, buckets, bucketWordIds);
+	}
+
+	/**
+	 * Copies the tables of the mapped file to the heap, so that buckets can be added
+	 */
+	private void copyToHeap() {
+		int[] heapBuckets = new int[Math.max(1024, Integer.highestOneBit(Math.max(1, size)) * 2)];
+		mappedBuckets.duplicate().get(heapBuckets, 0, size);
+		int[] heapBucketWordIds = new int[1 << hashBits];
+		mappedBucketWordIds.duplicate().get(heapBucketWordIds);
+
+		buckets = heapBuckets;
+		bucketWordIds = heapBucketWordIds;
+		mappedBuckets = null;
+		mappedBucketWordIds = null;
+	}
+
+	/**
+	 * @return How many bits of the hash pick the bucket
+	 */
+	@Override
+	public int getHashBits() {
+		return hashBits;
+	}
+
+	/**
+	 * @return The bucket of a word's hash, taken from the mixed hash's top bits
+	 */
+	private int bucket(int hash) {
+		return WordDictionary.mix(hash) >>> (32 - hashBits);
+	}
+}
@@ -0,0 +1,413 @@
+package nlp.nbc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tries many lambda values without retraining or re-tokenizing. Lambda only
+ * changes the scoring tables, so the counts are trained once and every test
+ * tweet is tokenized once, into word IDs of its own dictionary. Scoring
+ * models built from the same counts number their words the same way whatever
+ * the lambda, so the tokens are mapped to the scoring word IDs once and scored
+ * with every lambda's tables, one lambda per thread.
+ *
+ * Cross-validation splits the training tweets into folds by user, so no user
+ * has tweets on both sides of a split. The tweets are read once to count each
+ * fold on its own, and once more to tokenize them. The model for a fold is the
+ * full counts with the fold's counts taken off, and the fold's counts are added
+ * back once the scoring tables for the fold have been built. Each fold's tweets
+ * are then mapped to the word IDs of its tables, without tokenizing them again
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class LambdaSweep {
+
+	// Lambda values to try
+	private final double[] lambdas;
+
+	// How many threads tokenize and score tweets
+	private final int numThreads;
+
+	/**
+	 * Accuracy of one lambda value, over a test file or over every fold
+	 */
+	public static class Result {
+		private final double lambda;
+		private final AccuracyTracker accuracy;
+		private final List<String> labels;
+
+		Result(double lambda, AccuracyTracker accuracy, List<String> labels) {
+			this.lambda = lambda;
+			this.accuracy = accuracy;
+			this.labels = labels;
+		}
+
+		/**
+		 * @return The lambda value
+		 */
+		public double getLambda() {
+			return lambda;
+		}
+
+		/**
+		 * @return Correct and total counts of the predictions
+		 */
+		public AccuracyTracker getAccuracy() {
+			return accuracy;
+		}
+
+		/**
+		 * @return Correct predictions over all predictions, as Classifier.macroAccuracy
+		 */
+		public double macroAccuracy() {
+			return (double) accuracy.getCorrectCount() / accuracy.getTotalPredictions();
+		}
+
+		/**
+		 * @return Mean of the accuracy of each label, as Classifier.microAccuracy
+		 */
+		public double microAccuracy() {
+			return accuracy.averageLabelAccuracy(labels);
+		}
+
+		/**
+		 * @return Accuracy of always predicting the majority state
+		 */
+		public double majorityAccuracy() {
+			return (double) accuracy.getCorrectMajorityCount() / accuracy.getTotalPredictions();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("lambda %-10s macro %.4f  micro %.4f  majority %.4f  (%d predictions)",
+					lambda, macroAccuracy(), microAccuracy(), majorityAccuracy(), accuracy.getTotalPredictions());
+		}
+	}
+
+	/**
+	 * Test tweets as word IDs of their own dictionary, which has every token,
+	 * with their real labels and the fold of their users
+	 */
+	private static class TokenizedTweets {
+		final WordDictionary words = new WordDictionary();
+		final List<int[]> tokenIds = new ArrayList<>();
+		final List<String> realLocations = new ArrayList<>();
+		final List<Integer> folds = new ArrayList<>();
+
+		/**
+		 * Adds the tweets of a batch, moving its tokens over to this dictionary
+		 */
+		void add(TokenizedTweets batch) {
+			int[] wordIds = new int[batch.words.size()];
+			for (int localId = 0; localId < wordIds.length; localId++) {
+				wordIds[localId] = words.add(batch.words.getWord(localId));
+			}
+			for (int[] batchIds : batch.tokenIds) {
+				int[] ids = new int[batchIds.length];
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = wordIds[batchIds[i]];
+				}
+				tokenIds.add(ids);
+			}
+			realLocations.addAll(batch.realLocations);
+			folds.addAll(batch.folds);
+		}
+	}
+
+	/**
+	 * Constructor which sets what to try
+	 *
+	 * @param lambdas Lambda values to try, each must be > 0
+	 * @param numThreads How many threads tokenize and score tweets
+	 */
+	public LambdaSweep(double[] lambdas, int numThreads) {
+		this.lambdas = lambdas.clone();
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Scores every tweet of a test file with a trained model for each lambda
+	 *
+	 * @param model The trained model
+	 * @param testSetFileName The name of the file that contains the test tweets
+	 * @return The accuracy of each lambda, in the order they were given
+	 * @throws IOException If the test file can't be read
+	 */
+	public List<Result> sweep(ModelTrainer model, String testSetFileName) throws IOException {
+		List<Classifier> classifiers = buildClassifiers(model);
+		TokenizedTweets tokenized = tokenize(model, testSetFileName, 0);
+		List<AccuracyTracker> accuracies = evaluate(model, classifiers, tokenized, -1);
+		return results(model, accuracies);
+	}
+
+	/**
+	 * Cross-validates every lambda over folds of a tweets file
+	 *
+	 * @param locationsFileName Name of file containing twitter user IDs and locations
+	 * @param tweetsFileName Name of file containing tweets
+	 * @param stoplistFileName Name of file containing words to exclude when processing
+	 * @param options How to read and count the tweets
+	 * @param folds How many folds to split the tweets into, at least 2
+	 * @return The accuracy of each lambda over the held out tweets of every fold
+	 * @throws IOException If a file can't be read
+	 * @throws IllegalArgumentException If there are fewer than 2 folds or the options prune
+	 * the vocab, since pruned counts couldn't be taken off for a fold
+	 */
+	public List<Result> crossValidate(String locationsFileName, String tweetsFileName, String stoplistFileName,
+			TrainingOptions options, int folds) throws IOException {
+		if (folds < 2) {
+			throw new IllegalArgumentException("Cross-validation needs at least 2 folds");
+		}
+		if (options.prunesVocab()) {
+			throw new IllegalArgumentException("Cross-validation can't prune the vocab");
+		}
+
+		ModelTrainer model = new ModelTrainer();
+		model.setOptions(options);
+		model.readUsersAndStoplist(locationsFileName, stoplistFileName);
+
+		// Count each fold's tweets apart, then the full model is every fold added up
+		TrainingCounts[] foldCounts = new TrainingCounts[folds];
+		for (int fold = 0; fold < folds; fold++) {
+			foldCounts[fold] = new TrainingCounts(model.getLabelCount());
+		}
+		try (TabRecordReader trainingDataReader = new TabRecordReader(tweetsFileName)) {
+			BatchPipeline<TweetRecord, TrainingCounts[]> pipeline =
+					new BatchPipeline<>(options.getNumThreads(), options.getBatchSize());
+			pipeline.run(trainingDataReader.tweets(), tweets -> {
+				List<List<TweetRecord>> byFold = new ArrayList<>();
+				for (int fold = 0; fold < folds; fold++) {
+					byFold.add(new ArrayList<>());
+				}
+				for (TweetRecord tweet : tweets) {
+					byFold.get(tweet.isWellFormed() ? foldOf(tweet.getUserID(), folds) : 0).add(tweet);
+				}
+				TrainingCounts[] counts = new TrainingCounts[folds];
+				for (int fold = 0; fold < folds; fold++) {
+					counts[fold] = model.countTweets(byFold.get(fold));
+				}
+				return counts;
+			}, counts -> {
+				for (int fold = 0; fold < folds; fold++) {
+					foldCounts[fold].add(counts[fold]);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		for (TrainingCounts counts : foldCounts) {
+			model.applyCounts(counts, 1);
+		}
+		TokenizedTweets tokenized = tokenize(model, tweetsFileName, folds);
+
+		List<Result> results = null;
+		for (int fold = 0; fold < folds; fold++) {
+			model.applyCounts(foldCounts[fold], -1);
+			List<Classifier> classifiers = buildClassifiers(model);
+			model.applyCounts(foldCounts[fold], 1);
+
+			List<AccuracyTracker> accuracies = evaluate(model, classifiers, tokenized, fold);
+			if (results == null) {
+				results = results(model, accuracies);
+			} else {
+				for (int i = 0; i < lambdas.length; i++) {
+					results.get(i).getAccuracy().merge(accuracies.get(i));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return The fold a user's tweets go in
+	 */
+	private static int foldOf(String userID, int folds) {
+		return Math.floorMod(WordDictionary.mix(userID.hashCode()), folds);
+	}
+
+	/**
+	 * Builds a classifier, and so the scoring tables, for each lambda
+	 */
+	private List<Classifier> buildClassifiers(ModelTrainer model) {
+		List<Classifier> classifiers = new ArrayList<>();
+		for (double lambda : lambdas) {
+			classifiers.add(new Classifier(model, lambda));
+		}
+		return classifiers;
+	}
+
+	/**
+	 * Tokenizes the test tweets of users with a known location, once for every fold and lambda
+	 *
+	 * @param model Model whose users' locations are the real labels
+	 * @param testSetFileName The file holding the test tweets
+	 * @param folds How many folds the tweets are split into, or 0 to not split them
+	 * @return The tokens of each tweet as word IDs of their own dictionary
+	 * @throws IOException If the file can't be read
+	 */
+	private TokenizedTweets tokenize(ModelTrainer model, String testSetFileName, int folds) throws IOException {
+		TokenizedTweets tokenized = new TokenizedTweets();
+		try (TabRecordReader testDataReader = new TabRecordReader(testSetFileName)) {
+			BatchPipeline<TweetRecord, TokenizedTweets> pipeline = new BatchPipeline<>(numThreads, 1000);
+			pipeline.run(testDataReader.tweets(), tweets -> {
+				TokenizedTweets batch = new TokenizedTweets();
+				for (TweetRecord tweet : tweets) {
+					if (!tweet.isWellFormed()) {
+						continue;
+					}
+					String realLocation = model.getUserLocations().get(tweet.getUserID());
+					if (realLocation != null) {
+						// Tokenized the same way Classifier.predictLabel does
+						TokenCorpus.IntList ids = new TokenCorpus.IntList();
+						model.getTokenizer().tokenize(tweet.getText(), (text, start, end) -> ids.add(batch.words.add(text, start, end)));
+						batch.tokenIds.add(ids.toArray());
+						batch.realLocations.add(realLocation);
+						batch.folds.add(folds > 0 ? foldOf(tweet.getUserID(), folds) : -1);
+					}
+				}
+				return batch;
+			}, tokenized::add);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return tokenized;
+	}
+
+	/**
+	 * Scores the tokenized tweets of a fold with every classifier's tables, after
+	 * mapping their tokens to the word IDs of the tables and leaving out the words
+	 * not in the vocab, as Classifier.predictLabel does
+	 *
+	 * @param model Model whose training set labels are counted
+	 * @param classifiers A classifier per lambda, built from the same counts
+	 * @param tokenized The test tweets, tokenized by tokenize
+	 * @param fold Only tweets of users in this fold are used, or -1 to use every tweet
+	 * @return Accuracy of each classifier
+	 */
+	private List<AccuracyTracker> evaluate(ModelTrainer model, List<Classifier> classifiers,
+			TokenizedTweets tokenized, int fold) {
+		ScoringModel tokenModel = classifiers.get(0).getScoringModel();
+		int[] scoringIds = new int[tokenized.words.size()];
+		for (int wordId = 0; wordId < scoringIds.length; wordId++) {
+			scoringIds[wordId] = tokenModel.getWordId(tokenized.words.getWord(wordId));
+		}
+		List<int[]> tokenIds = new ArrayList<>();
+		List<String> realLocations = new ArrayList<>();
+		for (int i = 0; i < tokenized.tokenIds.size(); i++) {
+			if (fold >= 0 && tokenized.folds.get(i) != fold) {
+				continue;
+			}
+			int[] ids = tokenized.tokenIds.get(i);
+			int[] inVocab = new int[ids.length];
+			int size = 0;
+			for (int id : ids) {
+				if (scoringIds[id] >= 0) {
+					inVocab[size++] = scoringIds[id];
+				}
+			}
+			tokenIds.add(Arrays.copyOf(inVocab, size));
+			realLocations.add(tokenized.realLocations.get(i));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, classifiers.size()));
+		try {
+			List<Future<AccuracyTracker>> futures = new ArrayList<>();
+			for (Classifier classifier : classifiers) {
+				futures.add(executor.submit(() -> score(model, classifier, tokenModel, tokenIds, realLocations)));
+			}
+			List<AccuracyTracker> accuracies = new ArrayList<>();
+			for (Future<AccuracyTracker> future : futures) {
+				accuracies.add(future.get());
+			}
+			return accuracies;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Predicts every tweet with one classifier's tables, counting the majority
+	 * state of the counts the tables were built from, so held out tweets which
+	 * are added back to the model don't count toward it
+	 */
+	private static AccuracyTracker score(ModelTrainer model, Classifier classifier, ScoringModel tokenModel,
+			List<int[]> tokenIds, List<String> realLocations) {
+		ScoringModel scoringModel = classifier.getScoringModel();
+		if (scoringModel.getVocabSize() != tokenModel.getVocabSize()) {
+			throw new IllegalStateException("Scoring models were built from different counts");
+		}
+		AccuracyTracker accuracy = new AccuracyTracker(model.getTrainingSetLabels(), classifier.getMajorityState());
+		for (int i = 0; i < tokenIds.size(); i++) {
+			int[] ids = tokenIds.get(i);
+			double[] logProbs = scoringModel.score(ids, ids.length);
+			accuracy.track(scoringModel.getLabel(scoringModel.argmax(logProbs)), realLocations.get(i));
+		}
+		return accuracy;
+	}
+
+	/**
+	 * Pairs each lambda with its accuracy, whose micro accuracy is over the
+	 * model's training set labels as in Classifier.microAccuracy
+	 */
+	private List<Result> results(ModelTrainer model, List<AccuracyTracker> accuracies) {
+		List<String> labels = new ArrayList<>(model.getTrainingSetLabels());
+		List<Result> results = new ArrayList<>();
+		for (int i = 0; i < lambdas.length; i++) {
+			results.add(new Result(lambdas[i], accuracies.get(i), labels));
+		}
+		return results;
+	}
+
+	/**
+	 * Main method which sweeps lambda over a test file, or cross-validates it
+	 *
+	 * @param args Comma separated lambda values, then optionally the number of folds
+	 * (0, the default, tests on the test file instead) and the training and test files
+	 * @throws IOException If a file can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		String usersFileName = "data/training_set_users.txt";
+		String stoplistFileName = "data/smallStoplist";
+		double[] lambdas = Arrays.stream((args.length > 0 ? args[0] : "0.001,0.003,0.01,0.03,0.1,0.3,1").split(","))
+				.mapToDouble(Double::parseDouble).toArray();
+		int folds = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		String tweetsFileName = args.length > 2 ? args[2] : "data/training_set_tweets_3mil.txt";
+		String testSetFileName = args.length > 3 ? args[3] : "data/test_set_tweets_360k.txt";
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		TrainingOptions options = new TrainingOptions().setNumThreads(cores);
+		LambdaSweep sweep = new LambdaSweep(lambdas, cores);
+		long start = System.nanoTime();
+		List<Result> results;
+		if (folds > 0) {
+			results = sweep.crossValidate(usersFileName, tweetsFileName, stoplistFileName, options, folds);
+		} else {
+			ModelTrainer model = new ModelTrainer(usersFileName, tweetsFileName, stoplistFileName, options);
+			results = sweep.sweep(model, testSetFileName);
+		}
+
+		Result best = results.get(0);
+		for (Result result : results) {
+			System.out.println(result);
+			if (result.macroAccuracy() > best.macroAccuracy()) {
+				best = result;
+			}
+		}
+		System.out.printf("Best lambda %s, %d settings in %.1f s%n", best.getLambda(), results.size(),
+				(System.nanoTime() - start) / 1e9);
+	}
+}
@@ -0,0 +1,95 @@
+package nlp.nbc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of request latencies which can report percentiles.
+ * Latencies are counted in buckets that are 1 microsecond wide below
+ * 1 millisecond and grow by about 6% per bucket after that, so percentiles
+ * are accurate to within a few percent without keeping every sample
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class LatencyRecorder {
+
+	// Latencies below this many microseconds get a bucket each
+	private static final int LINEAR_MICROS = 1000;
+
+	// Buckets per doubling above the linear range
+	private static final int BUCKETS_PER_DOUBLING = 12;
+
+	// Enough doublings to go from 1ms to well over an hour
+	private static final int DOUBLINGS = 32;
+
+	// Count of recorded latencies in each bucket
+	private final AtomicLongArray buckets = new AtomicLongArray(LINEAR_MICROS + DOUBLINGS * BUCKETS_PER_DOUBLING);
+
+	/**
+	 * Records one latency
+	 * 
+	 * @param nanos The latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		buckets.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+	}
+
+	/**
+	 * @return How many latencies were recorded
+	 */
+	public long count() {
+		long count = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Gives the latency that the given fraction of recorded latencies are at or below
+	 * 
+	 * @param fraction Fraction between 0 and 1, for example 0.99 for the p99
+	 * @return The latency in microseconds, or 0 if nothing was recorded
+	 */
+	public double percentileMicros(double fraction) {
+		long count = count();
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= Math.max(1, rank)) {
+				return upperBoundMicros(i);
+			}
+		}
+		return upperBoundMicros(buckets.length() - 1);
+	}
+
+	/**
+	 * @param micros A latency in microseconds
+	 * @return The bucket the latency is counted in
+	 */
+	private int bucket(long micros) {
+		if (micros < LINEAR_MICROS) {
+			return (int) micros;
+		}
+		double doublings = Math.log((double) micros / LINEAR_MICROS) / Math.log(2);
+		int bucket = LINEAR_MICROS + (int) (doublings * BUCKETS_PER_DOUBLING);
+		return Math.min(bucket, buckets.length() - 1);
+	}
+
+	/**
+	 * @param bucket A bucket
+	 * @return The largest latency in microseconds counted in the bucket
+	 */
+	private double upperBoundMicros(int bucket) {
+		if (bucket < LINEAR_MICROS) {
+			return bucket + 1;
+		}
+		return LINEAR_MICROS * Math.pow(2, (double) (bucket - LINEAR_MICROS + 1) / BUCKETS_PER_DOUBLING);
+	}
+}
@@ -0,0 +1,464 @@
+package nlp.nbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the free text location of a user into a state code. Place names are
+ * compiled into a char trie, with case folded and every run of spaces and
+ * punctuation turned into a single space, so "st. louis" matches "St. Louis".
+ * Matching walks the location straight from the text without making any
+ * Strings, so it can be run on a field of the users file as it is read.
+ *
+ * A location is matched in two steps:
+ * 1. As before, if the part after the last ", " is two capital letters it is
+ *    taken as the code as it is, e.g. "Austin, TX" gives TX.
+ * 2. Otherwise the location is split at commas and matched left to right,
+ *    taking the longest name at each word, and the last place matched wins,
+ *    e.g. "Brooklyn, New York, USA" gives NY. A word of two capital letters
+ *    which is a state code also counts as a place. Places outside the U.S. are
+ *    in the gazetteer with the code "-", so "Birmingham, England" gives nothing
+ *    rather than AL.
+ *
+ * The states and cities of LocationFilterHelper are always in the trie, with a
+ * state taking the place of a city of the same name, so every location that
+ * resolved before resolves to the same code. The gazetteer file adds to them
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class LocationResolver {
+
+	// Gazetteer loaded by getDefault when it is there
+	public static final String DEFAULT_GAZETTEER = "data/gazetteer.txt";
+
+	// Code of places outside the U.S.
+	public static final String NOT_US = "-";
+
+	// Loaded the first time it is asked for
+	private static LocationResolver defaultResolver;
+
+	// Every pair of capital letters as a String, so codes taken from the text as they are aren't made each time
+	private static final String[] LETTER_PAIRS = new String[26 * 26];
+	static {
+		for (int pair = 0; pair < LETTER_PAIRS.length; pair++) {
+			LETTER_PAIRS[pair] = new String(new char[] { (char) ('A' + pair / 26), (char) ('A' + pair % 26) });
+		}
+	}
+
+	// Code of each trie node with a name ending at it, as an index into codes, or -1
+	private int[] nodeCodes = new int[256];
+	private int nodeCount = 1;
+
+	// Open addressing table from (node, char) to child node, key 0 marks an empty slot
+	private long[] edgeKeys = new long[512];
+	private int[] edgeChildren = new int[512];
+	private int edgeCount = 0;
+
+	// Codes, and the index of each
+	private final List<String> codes = new ArrayList<>();
+	private final Map<String, Integer> codeIndexes = new HashMap<>();
+
+	// Index of the code of each pair of capital letters which is a state code, or -1
+	private final int[] stateCodes = new int[26 * 26];
+
+	// How many names have been added
+	private int nameCount = 0;
+
+	/**
+	 * Constructor for a resolver knowing the states and cities of LocationFilterHelper
+	 */
+	public LocationResolver() {
+		Arrays.fill(nodeCodes, -1);
+		Arrays.fill(stateCodes, -1);
+
+		// States go in last, so a state replaces a city of the same name as it always has
+		LocationFilterHelper filterHelper = new LocationFilterHelper();
+		filterHelper.getCitiesHashMap().forEach(this::addName);
+		filterHelper.getStateHashMap().forEach(this::addName);
+	}
+
+	/**
+	 * Constructor for a resolver knowing the states and cities of
+	 * LocationFilterHelper and the places of a gazetteer file
+	 *
+	 * @param gazetteerFileName Name of the gazetteer file, see addGazetteer
+	 * @throws IOException If the file can't be read or has a bad line
+	 */
+	public LocationResolver(String gazetteerFileName) throws IOException {
+		this();
+		addGazetteer(gazetteerFileName);
+	}
+
+	/**
+	 * @return The resolver ModelTrainer uses unless it is given another, which
+	 * adds DEFAULT_GAZETTEER to the states and cities when the file is there
+	 * @throws IOException If the gazetteer is there but can't be read
+	 */
+	public static synchronized LocationResolver getDefault() throws IOException {
+		if (defaultResolver == null) {
+			defaultResolver = new File(DEFAULT_GAZETTEER).isFile()
+					? new LocationResolver(DEFAULT_GAZETTEER) : new LocationResolver();
+		}
+		return defaultResolver;
+	}
+
+	/**
+	 * Adds the places of a gazetteer file. Each line is a place name, a tab and
+	 * its state code, or - for a place outside the U.S. Blank lines and lines
+	 * starting with # are skipped, and a name replaces any earlier code for it
+	 *
+	 * @param gazetteerFileName Name of the gazetteer file
+	 * @throws IOException If the file can't be read or has a bad line
+	 */
+	public void addGazetteer(String gazetteerFileName) throws IOException {
+		try (TabRecordReader reader = new TabRecordReader(gazetteerFileName)) {
+			int lineNumber = 0;
+			while (reader.next()) {
+				lineNumber++;
+				String name = reader.getFieldCount() == 0 ? "" : reader.getField(0);
+				if ((reader.getFieldCount() <= 1 && name.trim().isEmpty()) || name.startsWith("#")) {
+					continue;
+				}
+				if (reader.getFieldCount() != 2) {
+					throw new IOException(gazetteerFileName + " line " + lineNumber + ": expected a name and a code");
+				}
+				try {
+					addName(name, reader.getField(1).trim());
+				} catch (IllegalArgumentException e) {
+					throw new IOException(gazetteerFileName + " line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a place, replacing any earlier code for the same name
+	 *
+	 * @param name Name of the place, of one or more words
+	 * @param code State code of the place, or NOT_US
+	 * @throws IllegalArgumentException If the name has no letters or digits, or has a comma
+	 */
+	public void addName(String name, String code) {
+		if (name.indexOf(',') >= 0) {
+			throw new IllegalArgumentException("Place names can't have commas: " + name);
+		}
+		int node = 0;
+		boolean inWord = false;
+		boolean hasWord = false;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				if (!inWord && hasWord) {
+					node = addChild(node, ' ');
+				}
+				node = addChild(node, fold(c));
+				inWord = true;
+				hasWord = true;
+			} else {
+				inWord = false;
+			}
+		}
+		if (!hasWord) {
+			throw new IllegalArgumentException("Place name has no letters: " + name);
+		}
+
+		Integer codeIndex = codeIndexes.get(code);
+		if (codeIndex == null) {
+			codeIndex = codes.size();
+			codes.add(code);
+			codeIndexes.put(code, codeIndex);
+			if (isLetterPair(code, 0, 2)) {
+				stateCodes[letterPair(code, 0)] = codeIndex;
+			}
+		}
+		if (nodeCodes[node] < 0) {
+			nameCount++;
+		}
+		nodeCodes[node] = codeIndex;
+	}
+
+	/**
+	 * Resolves a location, first as a trailing two letter code and then by the places in it
+	 *
+	 * @param location Location of a user, e.g. "San Francisco, CA"
+	 * @return The state code, or null if nothing in the U.S. was found
+	 */
+	public String resolve(CharSequence location) {
+		String code = resolveCode(location);
+		return code != null ? code : resolvePlace(location);
+	}
+
+	/**
+	 * Takes the part of a location after the last ", " as the code if it is two
+	 * capital letters, the way users have always been labeled, even when it
+	 * isn't a state (e.g. UK)
+	 *
+	 * @param location Location of a user
+	 * @return The two capital letters, or null if the last part is anything else
+	 */
+	public String resolveCode(CharSequence location) {
+		// Like the last entry of location.split(", "): trailing ", " are dropped
+		int end = location.length();
+		while (end >= 2 && location.charAt(end - 2) == ',' && location.charAt(end - 1) == ' ') {
+			end -= 2;
+		}
+		int start = end - 2;
+		if (start < 0 || !isLetterPair(location, start, end)) {
+			return null;
+		}
+		if (start == 0 || (start >= 2 && location.charAt(start - 2) == ',' && location.charAt(start - 1) == ' ')) {
+			return LETTER_PAIRS[letterPair(location, start)];
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the last place named in a location
+	 *
+	 * @param location Location of a user
+	 * @return The state code of the last place, or null if there wasn't
+	 * one or it is outside the U.S.
+	 */
+	public String resolvePlace(CharSequence location) {
+		int length = location.length();
+		int found = -1;
+		int position = 0;
+		while (position < length) {
+			if (!Character.isLetterOrDigit(location.charAt(position))) {
+				position++;
+				continue;
+			}
+			int wordEnd = wordEnd(location, position);
+
+			// Follow the trie a word at a time for as long as it goes,
+			// keeping the longest name that ends at the end of a word
+			int matchEnd = -1;
+			int matchCode = -1;
+			int node = 0;
+			int word = position;
+			while (true) {
+				int end = wordEnd(location, word);
+				for (int i = word; i < end && node >= 0; i++) {
+					node = child(node, fold(location.charAt(i)));
+				}
+				if (node < 0) {
+					break;
+				}
+				if (nodeCodes[node] >= 0) {
+					matchEnd = end;
+					matchCode = nodeCodes[node];
+				}
+
+				// Names don't go past a comma
+				int next = end;
+				while (next < length && !Character.isLetterOrDigit(location.charAt(next)) && location.charAt(next) != ',') {
+					next++;
+				}
+				if (next == length || location.charAt(next) == ',') {
+					break;
+				}
+				node = child(node, ' ');
+				if (node < 0) {
+					break;
+				}
+				word = next;
+			}
+
+			if (matchEnd < 0 && wordEnd - position == 2 && isLetterPair(location, position, wordEnd)
+					&& stateCodes[letterPair(location, position)] >= 0) {
+				matchEnd = wordEnd;
+				matchCode = stateCodes[letterPair(location, position)];
+			}
+
+			if (matchEnd >= 0) {
+				found = matchCode;
+				position = matchEnd;
+			} else {
+				position = wordEnd;
+			}
+		}
+
+		if (found < 0 || codes.get(found).equals(NOT_US)) {
+			return null;
+		}
+		return codes.get(found);
+	}
+
+	/**
+	 * @return How many place names the resolver knows
+	 */
+	public int size() {
+		return nameCount;
+	}
+
+	/**
+	 * @return Approximate bytes used by the trie
+	 */
+	public long memoryBytes() {
+		return (long) nodeCodes.length * 4 + (long) edgeKeys.length * 8 + (long) edgeChildren.length * 4;
+	}
+
+	/**
+	 * @return Index after the last letter or digit of the word starting at start
+	 */
+	private static int wordEnd(CharSequence text, int start) {
+		int end = start;
+		while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * @return The char with ASCII capitals lower-cased without a table lookup
+	 */
+	private static char fold(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return (char) (c + ('a' - 'A'));
+		}
+		return c < 128 ? c : Character.toLowerCase(c);
+	}
+
+	/**
+	 * @return True if the text from start to end is exactly two capital letters
+	 */
+	private static boolean isLetterPair(CharSequence text, int start, int end) {
+		return end - start == 2 && end <= text.length()
+				&& text.charAt(start) >= 'A' && text.charAt(start) <= 'Z'
+				&& text.charAt(start + 1) >= 'A' && text.charAt(start + 1) <= 'Z';
+	}
+
+	/**
+	 * @return Number of the two capital letters at start, from 0 to 26 * 26 - 1
+	 */
+	private static int letterPair(CharSequence text, int start) {
+		return (text.charAt(start) - 'A') * 26 + (text.charAt(start + 1) - 'A');
+	}
+
+	/**
+	 * @return The child of a node along a char, or -1 if there isn't one
+	 */
+	private int child(int node, char c) {
+		long key = edgeKey(node, c);
+		int mask = edgeKeys.length - 1;
+		for (int slot = slot(key) & mask; edgeKeys[slot] != 0; slot = (slot + 1) & mask) {
+			if (edgeKeys[slot] == key) {
+				return edgeChildren[slot];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The child of a node along a char, made if there isn't one yet
+	 */
+	private int addChild(int node, char c) {
+		int child = child(node, c);
+		if (child >= 0) {
+			return child;
+		}
+		child = nodeCount++;
+		if (child == nodeCodes.length) {
+			nodeCodes = Arrays.copyOf(nodeCodes, child * 2);
+			Arrays.fill(nodeCodes, child, nodeCodes.length, -1);
+		}
+		putEdge(edgeKey(node, c), child);
+		edgeCount++;
+
+		// Keep the table at most half full so probe chains stay short
+		if (edgeCount * 2 > edgeKeys.length) {
+			long[] oldKeys = edgeKeys;
+			int[] oldChildren = edgeChildren;
+			edgeKeys = new long[oldKeys.length * 2];
+			edgeChildren = new int[oldKeys.length * 2];
+			for (int slot = 0; slot < oldKeys.length; slot++) {
+				if (oldKeys[slot] != 0) {
+					putEdge(oldKeys[slot], oldChildren[slot]);
+				}
+			}
+		}
+		return child;
+	}
+
+	private void putEdge(long key, int child) {
+		int mask = edgeKeys.length - 1;
+		int slot = slot(key) & mask;
+		while (edgeKeys[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		edgeKeys[slot] = key;
+		edgeChildren[slot] = child;
+	}
+
+	/**
+	 * @return Key of the edge from a node along a char, never 0 since no edge is along char 0
+	 */
+	private static long edgeKey(int node, char c) {
+		return ((long) node << 16) | c;
+	}
+
+	private static int slot(long key) {
+		return WordDictionary.mix((int) (key ^ (key >>> 32)));
+	}
+
+	/**
+	 * Main method which reports how many users of a users file get a location,
+	 * next to how many the states and cities alone give, and the most common
+	 * locations left over, which are the ones worth adding to the gazetteer
+	 *
+	 * @param args The users file, then optionally the gazetteer file
+	 * @throws IOException If a file can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		String usersFileName = args.length > 0 ? args[0] : "data/training_set_users.txt";
+		String gazetteerFileName = args.length > 1 ? args[1] : DEFAULT_GAZETTEER;
+		LocationResolver resolver = new LocationResolver(gazetteerFileName);
+		LocationResolver builtIn = new LocationResolver();
+
+		int lineCount = 0;
+		int byCode = 0;
+		int byPlace = 0;
+		int byBuiltIn = 0;
+		Map<String, Integer> unresolved = new HashMap<>();
+		long start = System.nanoTime();
+		try (TabRecordReader reader = new TabRecordReader(usersFileName)) {
+			while (reader.next()) {
+				lineCount++;
+				CharSequence location = reader.getFieldCount() > 1 ? reader.getFieldChars(1) : "";
+				if (resolver.resolveCode(location) != null) {
+					byCode++;
+				} else if (resolver.resolvePlace(location) != null) {
+					byPlace++;
+				} else {
+					unresolved.merge(location.toString(), 1, Integer::sum);
+				}
+				if (builtIn.resolve(location) != null) {
+					byBuiltIn++;
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		int resolved = byCode + byPlace;
+		System.out.printf("%s: %,d place names, %,d bytes%n", gazetteerFileName, resolver.size(), resolver.memoryBytes());
+		System.out.printf("Users: %,d%n", lineCount);
+		System.out.printf("Resolved: %,d (%.1f%%), %,d by trailing code, %,d by place name%n",
+				resolved, 100.0 * resolved / lineCount, byCode, byPlace);
+		System.out.printf("Resolved without the gazetteer: %,d (%.1f%%)%n", byBuiltIn, 100.0 * byBuiltIn / lineCount);
+		System.out.printf("Thrown out: %,d (%.1f%%)%n", lineCount - resolved, 100.0 * (lineCount - resolved) / lineCount);
+		System.out.printf("Resolved twice in %.2f s, %,.0f users/sec%n", seconds, 2 * lineCount / seconds);
+
+		System.out.println("Most common locations thrown out:");
+		unresolved.entrySet().stream()
+				.sorted((a, b) -> b.getValue() - a.getValue())
+				.limit(25)
+				.forEach(entry -> System.out.printf("%8d  %s%n", entry.getValue(), entry.getKey()));
+	}
+}
@@ -0,0 +1,56 @@
+package nlp.nbc;
+
+/**
+ * The log10 theta of every vocab word and label of a ScoringModel, laid out
+ * one way or another, and how a tweet's rows are added up from that layout.
+ * Tables are built once from the entries of the words that occurred with a
+ * label, every other pair being its label's unseen value, and never change
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+interface LogThetaTable {
+
+	/**
+	 * Takes the log theta of a word that occurred with a label
+	 */
+	interface EntryConsumer {
+		void accept(int wordId, int labelId, double logTheta);
+	}
+
+	/**
+	 * Gives the log theta of every word and label that occurred together,
+	 * each time it is asked, in no particular order
+	 */
+	interface Entries {
+		void forEach(EntryConsumer consumer);
+	}
+
+	/**
+	 * Adds up the log probability of every label for a tweet
+	 *
+	 * @param tokenIds Word IDs of the tweet's tokens, repeated for repeated words
+	 * @param length How many entries of tokenIds to use
+	 * @param logPriors Log10 prior probability of each label, added to its sum
+	 * @return Log probability of each label, indexed by label ID
+	 */
+	double[] score(int[] tokenIds, int length, double[] logPriors);
+
+	/**
+	 * @param wordId ID of the word
+	 * @param labelId ID of the label
+	 * @return The log10 theta value for the given word and label
+	 */
+	double getLogTheta(int wordId, int labelId);
+
+	/**
+	 * @return How many log theta values are stored
+	 */
+	long getStoredValueCount();
+
+	/**
+	 * @return Rough bytes taken by the table
+	 */
+	long memoryBytes();
+}
@@ -0,0 +1,242 @@
+package nlp.nbc;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named counters, timers and gauges for training and classification.
+ * Counters and timers are LongAdders, so threads updating them don't
+ * contend on a lock, and hot loops add to them once per batch.
+ *
+ * Metrics are read with snapshot(), or over JMX once registerMBean()
+ * has been called, where every metric is a read-only attribute
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class MetricsRegistry {
+
+	// Registry used by the trainer and classifiers
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	// Name the registry is registered under over JMX
+	public static final String MBEAN_NAME = "nlp.nbc:type=Metrics";
+
+	private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+	/**
+	 * A count which only goes up
+	 */
+	public static class Counter {
+		private final LongAdder count = new LongAdder();
+
+		/**
+		 * Adds one to the count
+		 */
+		public void increment() {
+			count.increment();
+		}
+
+		/**
+		 * @param amount Amount to add to the count
+		 */
+		public void add(long amount) {
+			count.add(amount);
+		}
+
+		/**
+		 * @return The count so far
+		 */
+		public long get() {
+			return count.sum();
+		}
+	}
+
+	/**
+	 * How many times something happened and how long it took in total
+	 */
+	public static class Timer {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+
+		/**
+		 * Records one timed event
+		 *
+		 * @param nanos How long it took
+		 */
+		public void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+		}
+
+		/**
+		 * Records several events timed together, such as a batch of tweets
+		 *
+		 * @param events How many events there were
+		 * @param nanos How long they took in total
+		 */
+		public void record(long events, long nanos) {
+			count.add(events);
+			totalNanos.add(nanos);
+		}
+
+		/**
+		 * @return How many events were recorded
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * @return Total time of the events in nanoseconds
+		 */
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		/**
+		 * @return Mean time of an event in microseconds, 0 if there were none
+		 */
+		public double getMeanMicros() {
+			long events = count.sum();
+			return events == 0 ? 0.0 : totalNanos.sum() / 1e3 / events;
+		}
+	}
+
+	/**
+	 * @return The registry used by the trainer and classifiers
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param name Name of the counter
+	 * @return The counter with that name, made the first time it is asked for
+	 */
+	public Counter counter(String name) {
+		return counters.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * @param name Name of the timer
+	 * @return The timer with that name, made the first time it is asked for
+	 */
+	public Timer timer(String name) {
+		return timers.computeIfAbsent(name, key -> new Timer());
+	}
+
+	/**
+	 * Sets a value which is read whenever the metrics are, replacing any gauge with the same name
+	 *
+	 * @param name Name of the gauge
+	 * @param value Gives the current value
+	 */
+	public void gauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+
+	/**
+	 * Reads every metric. Timers give three values, name.count,
+	 * name.totalMillis and name.meanMicros
+	 *
+	 * @return Value of each metric, sorted by name
+	 */
+	public Map<String, Number> snapshot() {
+		Map<String, Number> values = new TreeMap<>();
+		counters.forEach((name, counter) -> values.put(name, counter.get()));
+		timers.forEach((name, timer) -> {
+			values.put(name + ".count", timer.getCount());
+			values.put(name + ".totalMillis", timer.getTotalNanos() / 1e6);
+			values.put(name + ".meanMicros", timer.getMeanMicros());
+		});
+		gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+		return values;
+	}
+
+	/**
+	 * Makes every metric readable over JMX, including ones added later
+	 *
+	 * @throws JMException If the registry can't be registered, e.g. if it already is
+	 */
+	public void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(MBEAN_NAME);
+		if (!server.isRegistered(name)) {
+			server.registerMBean(new MetricsMBean(), name);
+		}
+	}
+
+	/**
+	 * Read-only view of the metrics over JMX. The attributes are
+	 * worked out each time, since metrics are made as they are used
+	 */
+	private class MetricsMBean implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Number value = snapshot().get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Number> values = snapshot();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				if (values.containsKey(attribute)) {
+					list.add(new Attribute(attribute, values.get(attribute)));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException("Metrics have no operations");
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<>();
+			for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+				attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+						entry.getKey(), true, false, false));
+			}
+			return new MBeanInfo(MetricsRegistry.class.getName(), "Training and classification metrics",
+					attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package nlp.nbc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes a trained model as a compact binary file so that it
+ * doesn't have to be retrained from the tweets on every run.
+ * 
+ * The file starts with a header holding a magic number, the format version,
+ * a fingerprint of the files the model was trained from, a CRC32 checksum
+ * of the body and the body length. The body holds the tokenizer name, the hash bits
+ * (0 unless the model uses the hashing trick), the label table, the per-label tweet
+ * and word counts, the stoplist, the vocab size, the dictionary (see
+ * WordDictionary.write, or HashedWordDictionary.write), the document count of
+ * each word, the counts of each word with the labels it occurred with (see
+ * WordLabelCounts.write) and the user location index, see UserLocationIndex.
+ *
+ * The file is loaded through a memory map. Only the labels and the stoplist
+ * are copied to the heap; the dictionary, the counts and the users are used
+ * where they are in the mapped file, so loading costs little more than the
+ * checksum and the OS page cache holding the file is shared by every process
+ * using the model. A table is only copied to the heap the first time the
+ * loaded model changes it, such as when tweets are added.
+ *
+ * Files are written next to the target and renamed over it once complete,
+ * so a crash never leaves half a model behind, and processes which have the
+ * old file mapped keep reading the old file
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class ModelFile {
+
+	// Marks a file as a model file, spells "NBCM"
+	private static final int MAGIC = 0x4E42434D;
+
+	// Bump whenever the layout of the body changes
+	public static final int VERSION = 5;
+
+	// Bytes taken by the magic, version, fingerprint, checksum and body length
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+
+	/**
+	 * Writes a trained model to a file
+	 * 
+	 * @param model The trained model
+	 * @param fileName Name of the file to write
+	 * @param fingerprint Fingerprint of the files the model was trained from
+	 * @throws IOException If the file can't be written
+	 */
+	public static void write(ModelTrainer model, String fileName, long fingerprint) throws IOException {
+		List<String> labels = new ArrayList<>(model.getLabelCounts().keySet());
+		Collections.sort(labels);
+		HashMap<String, Integer> labelIds = new HashMap<>();
+		for (String label : labels) {
+			labelIds.put(label, labelIds.size());
+		}
+
+		// Only words still in the vocab are written, numbered in the order of
+		// the model's word IDs, so words whose counts were all removed are dropped
+		FeatureDictionary dictionary = model.getDictionary();
+		FeatureDictionary fileDictionary = dictionary.emptyCopy();
+		int[] fileWordIds = new int[dictionary.size()];
+		for (int wordId = 0; wordId < fileWordIds.length; wordId++) {
+			fileWordIds[wordId] = model.isInVocab(wordId) ? fileDictionary.addFrom(dictionary, wordId) : -1;
+		}
+
+		// Renumber the count table by the file's word IDs and label IDs
+		int[] fileLabelIds = new int[model.getLabelCount()];
+		for (int modelLabelId = 0; modelLabelId < fileLabelIds.length; modelLabelId++) {
+			fileLabelIds[modelLabelId] = labelIds.get(model.getLabel(modelLabelId));
+		}
+		WordLabelCounts fileCounts = new WordLabelCounts();
+		model.getWordLabelCounts().forEach((wordId, labelId, count) ->
+				fileCounts.add(fileWordIds[wordId], fileLabelIds[labelId], count));
+
+		write(fileName, fingerprint, out -> {
+			writeString(out, model.getTokenizer().getName());
+			out.writeByte(dictionary.getHashBits());
+
+			out.writeInt(labels.size());
+			for (String label : labels) {
+				writeString(out, label);
+				out.writeBoolean(model.getTrainingSetLabels().contains(label));
+				out.writeInt(model.getLabelCounts().get(label));
+				out.writeInt(model.getLabelWordCounts().get(label));
+			}
+
+			writeStoplist(out, model.getStoplist());
+
+			out.writeInt(fileDictionary.size());
+			fileDictionary.write(out);
+			for (int wordId = 0; wordId < dictionary.size(); wordId++) {
+				if (fileWordIds[wordId] >= 0) {
+					out.writeInt(model.getDocumentCount(wordId));
+				}
+			}
+			fileCounts.write(out, fileDictionary.size());
+
+			model.getUserLocations().write(out);
+		});
+	}
+
+	/**
+	 * Writes the body of a model file behind its header. Used by write and
+	 * by trainers which stream the body out instead of holding the model
+	 */
+	interface BodyWriter {
+		/**
+		 * @param out Stream the body is written to
+		 * @throws IOException If the stream can't be written
+		 */
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Writes a model file, filling in the header once the body is written.
+	 * The file is written under a temporary name in the same directory and
+	 * renamed to its name once it is complete and on disk
+	 * 
+	 * @param fileName Name of the file to write
+	 * @param fingerprint Fingerprint of the files the model was trained from
+	 * @param body Writes the body, in the layout described above
+	 * @throws IOException If the file can't be written
+	 */
+	static void write(String fileName, long fingerprint, BodyWriter body) throws IOException {
+		File target = new File(fileName).getAbsoluteFile();
+		File temp = File.createTempFile(target.getName() + ".", ".tmp", target.getParentFile());
+		try {
+			CRC32 checksum = new CRC32();
+			long bodyLength;
+			try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+				// Leave room for the header, which is filled in once the checksum is known
+				fileOut.write(new byte[HEADER_SIZE]);
+
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+						new CheckedOutputStream(fileOut, checksum), 1 << 16));
+				body.write(out);
+				out.flush();
+				bodyLength = out.size();
+			}
+
+			try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+				file.writeInt(MAGIC);
+				file.writeInt(VERSION);
+				file.writeLong(fingerprint);
+				file.writeLong(checksum.getValue());
+				file.writeLong(bodyLength);
+				file.getChannel().force(true);
+			}
+
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Writes the stoplist section of the body
+	 * 
+	 * @param out Stream to write to
+	 * @param stoplist Words excluded from training
+	 * @throws IOException If the stream can't be written
+	 */
+	static void writeStoplist(DataOutputStream out, Collection<String> stoplist) throws IOException {
+		out.writeInt(stoplist.size());
+		for (String stopWord : stoplist) {
+			writeString(out, stopWord);
+		}
+	}
+
+	/**
+	 * Loads a model written by write, refusing files from another format
+	 * version, files trained from different inputs and corrupted files
+	 * 
+	 * @param fileName Name of the model file
+	 * @param fingerprint Fingerprint of the files the model is expected to be trained from
+	 * @return The trained model
+	 * @throws IOException If the file can't be read or is stale or corrupted
+	 */
+	public static ModelTrainer read(String fileName, long fingerprint) throws IOException {
+		return read(fileName, true, fingerprint);
+	}
+
+	/**
+	 * Loads a model written by write without checking which files it was
+	 * trained from, for when the model file is all that is available.
+	 * The format version and checksum are still checked
+	 * 
+	 * @param fileName Name of the model file
+	 * @return The trained model
+	 * @throws IOException If the file can't be read or is corrupted
+	 */
+	public static ModelTrainer read(String fileName) throws IOException {
+		return read(fileName, false, 0);
+	}
+
+	/**
+	 * Loads a model written by write
+	 * 
+	 * @param fileName Name of the model file
+	 * @param checkFingerprint Whether to refuse files trained from other inputs
+	 * @param fingerprint Fingerprint of the files the model is expected to be trained from
+	 * @return The trained model
+	 * @throws IOException If the file can't be read or is stale or corrupted
+	 */
+	private static ModelTrainer read(String fileName, boolean checkFingerprint, long fingerprint)
+			throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+				throw new IOException(fileName + " is not a model file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(fileName + " has format version " + version + ", expected " + VERSION);
+			}
+			if (buffer.getLong() != fingerprint && checkFingerprint) {
+				throw new IOException(fileName + " was trained from different input files");
+			}
+			long expectedChecksum = buffer.getLong();
+			long bodyLength = buffer.getLong();
+			if (bodyLength != buffer.remaining()) {
+				throw new IOException(fileName + " is truncated");
+			}
+
+			CRC32 checksum = new CRC32();
+			checksum.update(buffer.duplicate());
+			if (checksum.getValue() != expectedChecksum) {
+				throw new IOException(fileName + " failed its checksum");
+			}
+
+			return readBody(buffer);
+		}
+	}
+
+	/**
+	 * Reads only the header of a model file to find which files it was
+	 * trained from, so a stale file can be found without loading it
+	 * 
+	 * @param fileName Name of the model file
+	 * @return The fingerprint the file was written with
+	 * @throws IOException If the file can't be read or isn't a model file of this format version
+	 */
+	public static long readFingerprint(String fileName) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(fileName + " is not a model file");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException(fileName + " has format version " + version + ", expected " + VERSION);
+			}
+			return in.readLong();
+		} catch (EOFException e) {
+			throw new IOException(fileName + " is not a model file", e);
+		}
+	}
+
+	/**
+	 * Reads the body of a model file into a new model, which uses the
+	 * dictionary, counts and users where they are in the buffer
+	 * 
+	 * @param buffer Buffer positioned at the start of the body
+	 * @return The trained model
+	 */
+	private static ModelTrainer readBody(ByteBuffer buffer) {
+		ModelTrainer model = new ModelTrainer();
+		model.setTokenizer(TweetTokenizer.forName(readString(buffer)));
+		int hashBits = buffer.get();
+
+		// A new model gives labels IDs in the order they are added,
+		// so its label IDs are the same as the file's
+		int labelCount = buffer.getInt();
+		for (int labelId = 0; labelId < labelCount; labelId++) {
+			String label = readString(buffer);
+			model.addLabel(label);
+			if (buffer.get() != 0) {
+				model.addTrainingSetLabel(label);
+			}
+			model.getLabelCounts().put(label, buffer.getInt());
+			model.getLabelWordCounts().put(label, buffer.getInt());
+		}
+
+		int stoplistSize = buffer.getInt();
+		for (int i = 0; i < stoplistSize; i++) {
+			model.addStopWord(readString(buffer));
+		}
+
+		int vocabSize = buffer.getInt();
+		FeatureDictionary dictionary = hashBits > 0 ? HashedWordDictionary.read(buffer, hashBits, vocabSize)
+				: WordDictionary.read(buffer, vocabSize);
+		IntBuffer documentCounts = readSection(buffer, 4 * vocabSize).asIntBuffer();
+		WordLabelCounts wordLabelCounts = WordLabelCounts.read(buffer, vocabSize);
+		model.setCounts(dictionary, wordLabelCounts, documentCounts);
+
+		// The mapped file stays open after the channel is closed, for as long as the buffers are used
+		model.setUserLocations(UserLocationIndex.read(buffer));
+
+		model.countsChanged();
+		model.registerGauges();
+		return model;
+	}
+
+	/**
+	 * Takes the next bytes of a buffer as a buffer of their own, sharing its
+	 * contents, for a table which is used where it is in a mapped file
+	 *
+	 * @param buffer Buffer positioned at the table, which is moved past it
+	 * @param length How many bytes the table takes
+	 * @return Buffer holding just the table
+	 */
+	static ByteBuffer readSection(ByteBuffer buffer, int length) {
+		ByteBuffer section = buffer.slice();
+		section.limit(length);
+		buffer.position(buffer.position() + length);
+		return section;
+	}
+
+	/**
+	 * Gives a fingerprint of a set of input files based on their names,
+	 * sizes and modification times, so a model file can tell whether
+	 * it was trained from the same inputs
+	 * 
+	 * @param fileNames Names of the files the model is trained from
+	 * @return The fingerprint of the files
+	 */
+	public static long fingerprint(String... fileNames) {
+		long hash = 1125899906842597L;
+		for (String fileName : fileNames) {
+			File file = new File(fileName);
+			hash = 31 * hash + file.getAbsolutePath().hashCode();
+			hash = 31 * hash + file.length();
+			hash = 31 * hash + file.lastModified();
+		}
+		return hash;
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length and bytes
+	 * 
+	 * @param out Stream to write to
+	 * @param value String to write
+	 * @throws IOException If the stream can't be written
+	 */
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by writeString
+	 * 
+	 * @param buffer Buffer positioned at the string
+	 * @return The string
+	 */
+	static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,145 @@
+package nlp.nbc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Adds up partial models, each trained on a different part of the tweets,
+ * into the model trained on all of them. Adding counts doesn't depend on how
+ * the models are grouped, so the partial models are loaded and merged in
+ * pairs, then the pairs in pairs and so on, with the merges of each level
+ * running in parallel.
+ *
+ * Words new to a model are appended in the order the other model has them,
+ * so merging partial models of consecutive parts of a file in file order
+ * numbers the words in the order they first occur in the file, the same as
+ * training on the whole file at once. The users come from the first model,
+ * so every partial model must be trained with the same users file
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class ModelMerger {
+
+	// How many models are loaded or merged at once
+	private final int numThreads;
+
+	/**
+	 * Constructor which sets how much is done at once
+	 *
+	 * @param numThreads How many models are loaded or merged at once
+	 */
+	public ModelMerger(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Loads model files and adds them up. Every file is loaded as soon
+	 * as a thread is free, so they can all be in memory at once
+	 *
+	 * @param modelFileNames Names of the model files, in the order of the parts of the tweets they were trained on
+	 * @return The model with the counts of all of them
+	 * @throws IOException If a file can't be read or the models can't be merged
+	 */
+	public ModelTrainer merge(List<String> modelFileNames) throws IOException {
+		if (modelFileNames.isEmpty()) {
+			throw new IllegalArgumentException("No models to merge");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, modelFileNames.size()));
+		try {
+			List<CompletableFuture<ModelTrainer>> models = new ArrayList<>();
+			for (String modelFileName : modelFileNames) {
+				models.add(CompletableFuture.supplyAsync(() -> {
+					try {
+						return ModelTrainer.loadModel(modelFileName);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, executor));
+			}
+
+			// Each merge starts as soon as both of its halves are ready
+			while (models.size() > 1) {
+				List<CompletableFuture<ModelTrainer>> merged = new ArrayList<>();
+				for (int i = 0; i + 1 < models.size(); i += 2) {
+					merged.add(models.get(i).thenCombineAsync(models.get(i + 1), (into, from) -> {
+						add(into, from);
+						return into;
+					}, executor));
+				}
+				if (models.size() % 2 == 1) {
+					merged.add(models.get(models.size() - 1));
+				}
+				models = merged;
+			}
+			return models.get(0).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			if (e.getCause() instanceof IllegalArgumentException) {
+				throw new IOException(e.getCause().getMessage(), e.getCause());
+			}
+			throw e;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Adds the counts of one model to another, all under the lock of the model
+	 * added to, then recomputes its priors and bumps its version as any other
+	 * change to its counts does, so classifiers of it pick the merged counts up
+	 *
+	 * @param into The model which is added to
+	 * @param from The model whose counts are added, which isn't changed
+	 * @throws IllegalArgumentException If the models were trained with a
+	 * different tokenizer, hashing trick or stoplist
+	 */
+	public static void add(ModelTrainer into, ModelTrainer from) {
+		if (!into.getTokenizer().getName().equals(from.getTokenizer().getName())) {
+			throw new IllegalArgumentException("Models were trained with different tokenizers");
+		}
+		if (into.getDictionary().getHashBits() != from.getDictionary().getHashBits()) {
+			throw new IllegalArgumentException("Models were trained with different hash bits");
+		}
+		if (!into.getStoplist().equals(from.getStoplist())) {
+			throw new IllegalArgumentException("Models were trained with different stoplists");
+		}
+
+		synchronized (into) {
+			int[] labelIds = new int[from.getLabelCount()];
+			for (int fromLabelId = 0; fromLabelId < labelIds.length; fromLabelId++) {
+				labelIds[fromLabelId] = into.addLabel(from.getLabel(fromLabelId));
+			}
+
+			FeatureDictionary fromDictionary = from.getDictionary();
+			int[] wordIds = new int[fromDictionary.size()];
+			for (int fromWordId = 0; fromWordId < wordIds.length; fromWordId++) {
+				wordIds[fromWordId] = from.isInVocab(fromWordId)
+						? into.getDictionary().addFrom(fromDictionary, fromWordId) : -1;
+				if (wordIds[fromWordId] >= 0) {
+					into.addDocumentCount(wordIds[fromWordId], from.getDocumentCount(fromWordId));
+				}
+			}
+			from.getWordLabelCounts().forEach((fromWordId, fromLabelId, count) ->
+					into.addCount(wordIds[fromWordId], labelIds[fromLabelId], count));
+
+			for (String label : from.getLabelCounts().keySet()) {
+				into.getLabelCounts().merge(label, from.getLabelCounts().get(label), Integer::sum);
+				into.getLabelWordCounts().merge(label, from.getLabelWordCounts().get(label), Integer::sum);
+			}
+			for (String label : from.getTrainingSetLabels()) {
+				into.addTrainingSetLabel(label);
+			}
+			into.countsChanged();
+		}
+	}
+}
@@ -1,297 +1,1171 @@
-package nlp.nbc;
-
-import java.io.*;
-import java.util.HashMap;
-import java.util.HashSet;
-import edu.stanford.nlp.process.PTBTokenizer;
-import edu.stanford.nlp.ling.CoreLabel;
-import edu.stanford.nlp.process.CoreLabelTokenFactory;
-
-/**
- * Learns a multinomial Naive Bayes model on Twitter data
- * and users' locations to be able to predict the U.S. state
- * a user is located at based on their tweet
- * 
- * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
- * CS159 - Final Project
- *
- */
-public class ModelTrainer {
-
-	// Maps from string of twitter user ID to location of user
-	private HashMap<String, String> idLocations = new HashMap<>();
-
-	// All the labels that occur in the training set
-	private HashSet<String> trainingSetLabels = new HashSet<>();
-
-	// Maps from location label to word to count of how many times that word occurs in that label
-	// Note that these is not lambda-smoothed by default in order to save space
-	private HashMap<String, HashMap<String, Integer>> labelWords = new HashMap<>();
-
-	// Maps from location label to how many tweets had that location label in the training data
-	private HashMap<String, Integer> labelCounts = new HashMap<>();
-
-	// Maps from location label to the probability that any given tweet is a certain label
-	private HashMap<String, Double> labelProbs = new HashMap<>();
-
-	// A set of all the words that appear in the tweets
-	private HashSet<String> vocab = new HashSet<>();
-
-	// How many total words occur in each location label
-	// Note that this is not lambda-smoothed by default
-	private HashMap<String, Integer> labelWordCounts = new HashMap<>();
-	
-	// Words to filter out from the data
-	private HashSet<String> stoplist = new HashSet<>();
-
-	/**
-	 * Constructor which iterates over training tweets
-	 * and trains the model
-	 * 
-	 * @param locationsFileName Name of file containing twitter user IDs and locations
-	 * @param tweetsFileName Name of file containing tweets
-	 * @param stoplistFileName Name of file containing words to exclude when processing
-	 */
-	public ModelTrainer(String locationsFileName, String tweetsFileName, String stoplistFileName) {
-		populateIDLocations(locationsFileName);
-
-		// Pre-populate hashmaps with all locations from our data set as labels
-		for (String locationLabel : idLocations.values()) {
-			HashMap<String, Integer> inner = new HashMap<>();
-			labelWords.put(locationLabel, inner);
-
-			labelCounts.put(locationLabel, 0);
-			labelWordCounts.put(locationLabel, 0);
-		}
-
-		try {
-			BufferedReader stoplistReader = new BufferedReader(new FileReader(stoplistFileName));	
-			String stopWord = stoplistReader.readLine();
-
-			while (stopWord != null) {
-				stoplist.add(stopWord);
-				stopWord = stoplistReader.readLine();
-			}
-
-			stoplistReader.close();
-			
-			BufferedReader trainingDataReader = new BufferedReader(new FileReader(tweetsFileName));	
-			String tweetLine = trainingDataReader.readLine();
-			int lineCount = 0;
-
-			// Look at tweets line by line
-			while (tweetLine != null) {
-				lineCount++;
-				String[] splitLine = tweetLine.split("\t");
-
-				// Pass in lower-cased tweet text to String Reader so that in
-				// can be tokenized 
-				if (splitLine.length == 4 && splitLine[0].matches("[0-9]+") && splitLine[1].matches("[0-9]+")) {
-					StringReader tweetText = new StringReader(splitLine[2].toLowerCase());
-
-					PTBTokenizer<CoreLabel> ptbt = new PTBTokenizer<>(tweetText,
-							new CoreLabelTokenFactory(), "americanize=false,untokenizable=noneDelete");
-
-					// Skip tweet if user is not accounted for in location data
-					if (idLocations.get(splitLine[0]) != null) {
-
-						String location = idLocations.get(splitLine[0]);
-						trainingSetLabels.add(location);
-						
-						// Goes through each word of the tweet 
-						// and adds it to appropriate data structures
-						while (ptbt.hasNext()) {
-							CoreLabel word = ptbt.next();
-							String wordAsString = word.toString();
-							if (!stoplist.contains(wordAsString) && passesFilter(wordAsString)) {
-							
-								// Add to vocab and appropriate hashtable entry
-								vocab.add(wordAsString);
-								addToLabelWords(wordAsString, location);
-
-								// Increment total amount of words in that label
-								labelWordCounts.put(location, labelWordCounts.get(location) + 1);
-							}
-						}
-						labelCounts.put(location, labelCounts.get(location) + 1);
-					}
-				}
-				tweetLine = trainingDataReader.readLine();
-			}
-			populateLabelProbs();
-			trainingDataReader.close();
-		}
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-
-	/**
-	 * Populate idLocations hashmap using the file provided
-	 * @param fileName The name of the file that contains tweet IDs and their locations
-	 */
-	public void populateIDLocations(String fileName) {
-		int thrownOutUsersCount = 0;
-		LocationFilterHelper filterHelper = new LocationFilterHelper();
-
-		try {
-			BufferedReader trainingDataReader = new BufferedReader(new FileReader(fileName));	
-			String idLoc = trainingDataReader.readLine();
-
-			while (idLoc != null) {
-				String[] splitLine = idLoc.split("\t");
-
-				// If we assume all same format, we can also split on ", "
-				String[] splitLoc = splitLine[1].split(", ");
-
-				String lastPortion = splitLoc[splitLoc.length-1];
-
-				// Filters out any entries that don't have a state in two-letter format
-				if(lastPortion.matches("^[A-Z][A-Z]$")) {
-					idLocations.put(splitLine[0], lastPortion);
-				} else {
-					if (filterHelper.getStateHashMap().get(lastPortion) != null) {
-						idLocations.put(splitLine[0], filterHelper.getStateHashMap().get(lastPortion));
-					} else if (filterHelper.getCitiesHashMap().get(lastPortion) != null) { 
-						idLocations.put(splitLine[0], filterHelper.getCitiesHashMap().get(lastPortion));
-					} else {
-						thrownOutUsersCount++;
-					}
-				}
-
-				idLoc = trainingDataReader.readLine();
-			}
-			trainingDataReader.close();
-			System.out.println("Thrown out users: " + thrownOutUsersCount);
-		}
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-		
-	}
-	
-	/**
-	 * Indicate whether a word passes filter or not
-	 * in order to filter out links, etc.
-	 * 
-	 * @param word Word to check
-	 * @return True if word should not be filtered out, false if it should be filtered out
-	 */
-	public boolean passesFilter(String word) {
-		if (word.matches("^http.+")) {
-			return false;
-		} else if (word.matches("www\\..+")) {
-			return false;
-		}
-		
-		return true;
-	}
-
-	/**
-	 * Helper method for finding which location was not included in training data
-	 */
-	public void findMissingState() {
-		LocationFilterHelper filterHelper = new LocationFilterHelper();
-		
-		for (String label: filterHelper.getStateHashMap().values()) {
-			if (!trainingSetLabels.contains(label)){
-				System.out.println(label);
-			}
-		}
-	}
-	
-	/**
-	 * Populate the labelWords hashmap with the word in question
-	 * associated with the particular label and its count 
-	 * 
-	 * @param word
-	 * @param locationLabel
-	 */
-	public void addToLabelWords(String word, String locationLabel) {
-		if (!labelWords.containsKey(locationLabel)) {
-			// Not a location we've seen before
-			// Decide how to handle it
-		} else {
-			if (labelWords.get(locationLabel).get(word) == null) {
-				HashMap<String, Integer> inner = labelWords.get(locationLabel);
-				inner.put(word, 1);
-			} else {
-				HashMap<String, Integer> inner = labelWords.get(locationLabel);
-				inner.put(word, labelWords.get(locationLabel).get(word) + 1);
-			}
-		}
-	}
-
-	/*
-	 * Calculates the probability of each label
-	 * and populate the labelProbs hashmap
-	 */
-	public void populateLabelProbs() {
-		// Populate label probs
-		int denominator = 0;
-		for (String locationLabel : labelCounts.keySet()) {
-			denominator += labelCounts.get(locationLabel);
-		}
-
-		for (String locationLabel : labelCounts.keySet()) {
-			int numerator = labelCounts.get(locationLabel);
-			double prob = (double) numerator / (double) denominator;
-			labelProbs.put(locationLabel, prob);
-		}
-	}
-
-	/**
-	 * @return vocabulary hashset from training
-	 */
-	public HashSet<String> getVocab() {
-		return vocab;
-	}
-
-	/**
-	 * @return labelWords hashmap from training
-	 */
-	public HashMap<String, HashMap<String, Integer>> getLabelWords() {
-		return labelWords;
-	}
-
-	/**
-	 * @return labelWordCounts hashmap from training
-	 */
-	public HashMap<String, Integer> getLabelWordCounts() {
-		return labelWordCounts;
-	}
-
-	/**
-	 * @return idLocations hashmap from training which maps from
-	 * a user ID to their location as a 2-letter state code
-	 */
-	public HashMap<String, String> getIDLocations() {
-		return idLocations;
-	}
-
-	/**
-	 * @return labelProbs hashmap from training
-	 */
-	public HashMap<String, Double> getLabelProbs() {
-		return labelProbs;
-	}
-
-	/**
-	 * @return trainingSetLabels hashset from training
-	 * which is all the labels that occurred in the training
-	 */
-	public HashSet<String> getTrainingSetLabels() {
-		return trainingSetLabels;
-	}
-
-	/**
-	 * Main method for testing
-	 * @param args not used
-	 */
-	public static void main(String[] args) {
-		ModelTrainer tester = new ModelTrainer("data/training_set_users.txt", 
-				"data/test_set_tweets_360k.txt", "data/smallStoplist");
-		System.out.println(tester.trainingSetLabels);
-		System.out.println(tester.trainingSetLabels.size());
-	}
-}
+package nlp.nbc;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Learns a multinomial Naive Bayes model on Twitter data
+ * and users' locations to be able to predict the U.S. state
+ * a user is located at based on their tweet
+ * 
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class ModelTrainer {
+
+	// Maps from twitter user ID to location of user
+	private UserLocationIndex userLocations = new UserLocationIndex();
+
+	// All the labels that occur in the training set
+	private HashSet<String> trainingSetLabels = new HashSet<>();
+
+	// Location labels indexed by label ID, and the label ID of each label
+	private ArrayList<String> labels = new ArrayList<>();
+	private HashMap<String, Integer> labelIds = new HashMap<>();
+
+	// Interns every word that appears in the tweets as a word ID,
+	// or its hash bucket when the hashing trick is used
+	private FeatureDictionary dictionary = new WordDictionary();
+
+	// Count of how many times each word occurs in each label, keyed by word ID and label ID
+	// Note that these is not lambda-smoothed by default in order to save space
+	private WordLabelCounts wordLabelCounts = new WordLabelCounts();
+
+	// Total count of each word ID across all labels, and how many words have a
+	// non-zero total, so words whose tweets were all removed drop out of the vocab.
+	// The totals are null for a model read from a file until its counts first
+	// change, since every word a model file keeps is in the vocab
+	private int[] wordTotals = new int[1024];
+	private int vocabSize = 0;
+
+	// How many tweets each word ID occurred in, for pruning rare words, or null
+	// while they are read in place from a model file as mappedDocumentCounts
+	private int[] wordDocumentCounts = new int[1024];
+	private IntBuffer mappedDocumentCounts;
+
+	// Maps from location label to word to count, backed by wordLabelCounts
+	private LabelWordsView labelWords = new LabelWordsView();
+
+	// Maps from location label to how many tweets had that location label in the training data
+	private HashMap<String, Integer> labelCounts = new HashMap<>();
+
+	// Maps from location label to the probability that any given tweet is a certain label
+	private HashMap<String, Double> labelProbs = new HashMap<>();
+
+	// A set of all the words that appear in the tweets, backed by dictionary
+	private VocabView vocab = new VocabView();
+
+	// How many total words occur in each location label
+	// Note that this is not lambda-smoothed by default
+	private HashMap<String, Integer> labelWordCounts = new HashMap<>();
+	
+	// Words to filter out from the data
+	private HashSet<String> stoplist = new HashSet<>();
+
+	// The stoplist interned so tokens can be checked against it without creating Strings
+	private WordDictionary stopWords = new WordDictionary();
+
+	// Splits tweets into words, both when training and when classifying with this model
+	private TweetTokenizer tokenizer = new PTBTweetTokenizer();
+
+	// How tweet files are read and counted, also used when adding tweets to the model later
+	private TrainingOptions options = new TrainingOptions();
+
+	// Goes up by one every time the counts change, so snapshots can tell they are stale
+	private long version = 0;
+
+	/**
+	 * Constructor for an empty model, which ModelFile fills in
+	 * when loading a saved model
+	 */
+	ModelTrainer() {
+	}
+
+	/**
+	 * Constructor which iterates over training tweets
+	 * and trains the model
+	 * 
+	 * @param locationsFileName Name of file containing twitter user IDs and locations
+	 * @param tweetsFileName Name of file containing tweets
+	 * @param stoplistFileName Name of file containing words to exclude when processing
+	 */
+	public ModelTrainer(String locationsFileName, String tweetsFileName, String stoplistFileName) {
+		this(locationsFileName, tweetsFileName, stoplistFileName, new TrainingOptions());
+	}
+
+	/**
+	 * Constructor which iterates over training tweets
+	 * and trains the model, splitting the tweets into batches
+	 * which are tokenized and counted on several threads
+	 * 
+	 * @param locationsFileName Name of file containing twitter user IDs and locations
+	 * @param tweetsFileName Name of file containing tweets
+	 * @param stoplistFileName Name of file containing words to exclude when processing
+	 * @param options How to read and count the training data
+	 */
+	public ModelTrainer(String locationsFileName, String tweetsFileName, String stoplistFileName,
+			TrainingOptions options) {
+		setOptions(options);
+		try {
+			readUsersAndStoplist(locationsFileName, stoplistFileName);
+			applyTweetsFile(tweetsFileName, 1);
+			if (options.prunesVocab()) {
+				pruneVocab(options.getMinWordCount(), options.getMinDocumentFrequency(), options.getMaxVocabSize());
+			}
+		}
+		catch (IOException | UncheckedIOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads the users' locations, which give the labels, and the stoplist,
+	 * everything needed before tweets can be counted
+	 * 
+	 * @param locationsFileName Name of file containing twitter user IDs and locations
+	 * @param stoplistFileName Name of file containing words to exclude when processing
+	 * @throws IOException If the stoplist can't be read
+	 */
+	void readUsersAndStoplist(String locationsFileName, String stoplistFileName) throws IOException {
+		populateIDLocations(locationsFileName);
+
+		// Pre-populate hashmaps with all locations from our data set as labels
+		for (String locationLabel : userLocations.getUsedLabels()) {
+			addLabel(locationLabel);
+		}
+
+		BufferedReader stoplistReader = new BufferedReader(new FileReader(stoplistFileName));	
+		String stopWord = stoplistReader.readLine();
+
+		while (stopWord != null) {
+			addStopWord(stopWord);
+			stopWord = stoplistReader.readLine();
+		}
+
+		stoplistReader.close();
+	}
+
+	/**
+	 * @param options How tweet files are read and counted, including the tokenizer
+	 */
+	void setOptions(TrainingOptions options) {
+		this.options = options;
+		tokenizer = options.getTokenizer();
+		if (options.getHashBits() > 0) {
+			dictionary = new HashedWordDictionary(options.getHashBits());
+		}
+	}
+
+	/**
+	 * Adds the tweets in a file to the already trained model. Only the new
+	 * tweets are read, so the cost is proportional to the size of the file.
+	 * Classifiers using the model keep their snapshot until they are refreshed
+	 * 
+	 * @param tweetsFileName Name of file containing tweets
+	 * @throws IOException If the file can't be read
+	 */
+	public void addTweets(String tweetsFileName) throws IOException {
+		applyTweetsFile(tweetsFileName, 1);
+	}
+
+	/**
+	 * Adds the tweets on the lines which start in a byte range of a file, so a
+	 * file can be trained in shards by separate processes, see ShardedTraining.
+	 * The token cache isn't used for ranges
+	 * 
+	 * @param tweetsFileName Name of an uncompressed file containing tweets
+	 * @param startOffset Offset of the first byte of the range
+	 * @param endOffset Offset after the last byte of the range
+	 * @throws IOException If the file can't be read or is gzipped
+	 */
+	public void addTweets(String tweetsFileName, long startOffset, long endOffset) throws IOException {
+		applyTweetsFile(tweetsFileName, startOffset, endOffset, 1);
+	}
+
+	/**
+	 * Removes the tweets in a file from the model, undoing an earlier addTweets
+	 * or the training of those tweets. The file is applied batch by batch, so if a
+	 * batch has tweets that aren't in the model, the batches before it stay removed
+	 * 
+	 * @param tweetsFileName Name of file containing tweets
+	 * @throws IOException If the file can't be read
+	 * @throws IllegalArgumentException If the file has tweets that aren't in the model
+	 */
+	public void removeTweets(String tweetsFileName) throws IOException {
+		applyTweetsFile(tweetsFileName, -1);
+	}
+
+	/**
+	 * Adds a single tweet to the model. Tweets from users without
+	 * a known location are skipped, as in training
+	 * 
+	 * @param userID Twitter user ID of the tweet's author
+	 * @param tweet Text of the tweet
+	 */
+	public void addTweet(String userID, String tweet) {
+		TrainingCounts counts = new TrainingCounts(labels.size());
+		countTweet(userID, tweet, counts);
+		applyCounts(counts, 1);
+	}
+
+	/**
+	 * Removes a single tweet from the model, undoing an earlier addTweet
+	 * or the training of that tweet
+	 * 
+	 * @param userID Twitter user ID of the tweet's author
+	 * @param tweet Text of the tweet
+	 * @throws IllegalArgumentException If the tweet isn't in the model
+	 */
+	public void removeTweet(String userID, String tweet) {
+		TrainingCounts counts = new TrainingCounts(labels.size());
+		countTweet(userID, tweet, counts);
+		applyCounts(counts, -1);
+	}
+
+	/**
+	 * Counts every tweet in a file and adds the counts to, or removes them from, the model
+	 * 
+	 * @param tweetsFileName Name of file containing tweets
+	 * @param sign 1 to add the tweets, -1 to remove them
+	 * @throws IOException If the file can't be read
+	 */
+	private void applyTweetsFile(String tweetsFileName, int sign) throws IOException {
+		applyTweetsFile(tweetsFileName, 0, Long.MAX_VALUE, sign);
+	}
+
+	/**
+	 * Counts the tweets on the lines which start in a byte range of a file
+	 * and adds the counts to, or removes them from, the model
+	 * 
+	 * @param tweetsFileName Name of file containing tweets
+	 * @param startOffset Offset of the first byte of the range
+	 * @param endOffset Offset after the last byte of the range, Long.MAX_VALUE for the rest of the file
+	 * @param sign 1 to add the tweets, -1 to remove them
+	 * @throws IOException If the file can't be read
+	 */
+	private void applyTweetsFile(String tweetsFileName, long startOffset, long endOffset, int sign)
+			throws IOException {
+		// Each batch of lines is counted on its own and then merged in file order,
+		// so the model comes out the same no matter how many threads are used
+		MetricsRegistry.Timer mergeTimer = MetricsRegistry.getDefault().timer("training.merge");
+		Consumer<TrainingCounts> merge = counts -> {
+			long start = System.nanoTime();
+			applyCounts(counts, sign);
+			mergeTimer.record(System.nanoTime() - start);
+		};
+
+		try {
+			if (options.getTokenCacheDirectory() != null && startOffset == 0 && endOffset == Long.MAX_VALUE) {
+				try (TokenCorpus corpus = TokenCorpus.open(options.getTokenCacheDirectory(), tweetsFileName,
+						this, options.getNumThreads())) {
+					BatchPipeline<TokenCorpus.Tweet, TrainingCounts> pipeline =
+							new BatchPipeline<>(options.getNumThreads(), options.getBatchSize());
+					pipeline.run(corpus.tweets(), tweets -> countTweets(corpus, tweets), merge);
+				}
+			} else {
+				try (TabRecordReader trainingDataReader = new TabRecordReader(tweetsFileName, startOffset, endOffset)) {
+					BatchPipeline<TweetRecord, TrainingCounts> pipeline =
+							new BatchPipeline<>(options.getNumThreads(), options.getBatchSize());
+					pipeline.run(trainingDataReader.tweets(), this::countTweets, merge);
+				}
+			}
+
+			registerGauges();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Tokenizes and counts a batch of tweets without touching the model,
+	 * so that batches can be counted on several threads at once
+	 * 
+	 * @param tweets Lines of the tweets file
+	 * @return The counts from those lines
+	 */
+	TrainingCounts countTweets(List<TweetRecord> tweets) {
+		TrainingCounts counts = new TrainingCounts(labels.size());
+
+		// Look at tweets line by line, skipping improperly formatted lines
+		for (TweetRecord tweet : tweets) {
+			if (tweet.isWellFormed()) {
+				countTweet(tweet.getUserID(), tweet.getText(), counts);
+			} else {
+				counts.rejectedLines++;
+			}
+		}
+		counts.lines = tweets.size();
+		recordMetrics(counts);
+		return counts;
+	}
+
+	/**
+	 * Counts a batch of tweets which were tokenized ahead of time, the
+	 * same way countTweets counts them from the text
+	 * 
+	 * @param corpus Corpus the tweets were read from, which holds their words
+	 * @param tweets Records of the corpus
+	 * @return The counts from those records
+	 */
+	TrainingCounts countTweets(TokenCorpus corpus, List<TokenCorpus.Tweet> tweets) {
+		TrainingCounts counts = new TrainingCounts(labels.size());
+		for (TokenCorpus.Tweet tweet : tweets) {
+			if (!tweet.isWellFormed()) {
+				counts.rejectedLines++;
+				continue;
+			}
+			String location = userLocations.get(tweet.getUserID());
+			if (location != null) {
+				int labelId = labelIds.get(location);
+				long countStart = System.nanoTime();
+				for (int wordId : tweet.getTrainingTokens()) {
+					counts.addWord(corpus.getWord(wordId), labelId);
+				}
+				counts.tokens += tweet.getTrainingTokens().length + tweet.getStoppedTokens() + tweet.getFilteredTokens();
+				counts.stoppedTokens += tweet.getStoppedTokens();
+				counts.filteredTokens += tweet.getFilteredTokens();
+				counts.countNanos += System.nanoTime() - countStart;
+				counts.addTweet(labelId);
+			} else {
+				counts.unknownUserTweets++;
+			}
+		}
+		counts.lines = tweets.size();
+		recordMetrics(counts);
+		return counts;
+	}
+
+	/**
+	 * Reports the size of this model in the metrics
+	 */
+	void registerGauges() {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.gauge("model.memoryBytes", this::memoryBytes);
+		metrics.gauge("model.vocabSize", () -> vocabSize);
+		metrics.gauge("model.version", () -> version);
+	}
+
+	/**
+	 * Adds what happened to a batch's lines and tokens to the metrics,
+	 * once per batch so the hot loop doesn't touch shared counters
+	 * 
+	 * @param counts The counts from one batch of tweets
+	 */
+	private static void recordMetrics(TrainingCounts counts) {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.counter("training.lines").add(counts.lines);
+		metrics.counter("training.linesRejected").add(counts.rejectedLines);
+		metrics.counter("training.tweetsUnknownUser").add(counts.unknownUserTweets);
+		metrics.counter("training.tokens").add(counts.tokens);
+		metrics.counter("training.tokensStopped").add(counts.stoppedTokens);
+		metrics.counter("training.tokensFiltered").add(counts.filteredTokens);
+		int tweetCount = counts.lines - counts.rejectedLines - counts.unknownUserTweets;
+		metrics.timer("training.countTweets").record(tweetCount, counts.countNanos);
+	}
+
+	/**
+	 * Tokenizes and counts one tweet without touching the model
+	 * 
+	 * @param userID Twitter user ID of the tweet's author
+	 * @param tweet Text of the tweet
+	 * @param counts Counts the tweet is added to
+	 */
+	private void countTweet(String userID, String tweet, TrainingCounts counts) {
+		// Skip tweet if user is not accounted for in location data
+		String location = userLocations.get(userID);
+		if (location != null) {
+			int labelId = labelIds.get(location);
+
+			// Goes through each word of the lower-cased tweet 
+			// and adds it to the batch counts
+			long countStart = System.nanoTime();
+			tokenizer.tokenize(tweet.toLowerCase(), (text, start, end) -> {
+				counts.tokens++;
+				if (stopWords.getId(text, start, end) >= 0) {
+					counts.stoppedTokens++;
+				} else if (!passesFilter(text, start, end)) {
+					counts.filteredTokens++;
+				} else {
+					counts.addWord(text, start, end, labelId);
+				}
+			});
+			counts.countNanos += System.nanoTime() - countStart;
+			counts.addTweet(labelId);
+		} else {
+			counts.unknownUserTweets++;
+		}
+	}
+
+	/**
+	 * Adds the counts from one batch of tweets to the model, or removes them.
+	 * The label priors are recomputed before the lock is let go, so a
+	 * snapshot taken under the lock never pairs new counts with old priors
+	 * 
+	 * @param counts The counts from one batch of tweets
+	 * @param sign 1 to add the counts, -1 to remove them
+	 * @throws IllegalArgumentException If counts being removed aren't in the model
+	 */
+	synchronized void applyCounts(TrainingCounts counts, int sign) {
+		computeWordTotals();
+
+		// Words are added in the order the batch first saw them,
+		// so word IDs come out in file order
+		int[] wordIds = new int[counts.words.size()];
+		for (int localId = 0; localId < wordIds.length; localId++) {
+			String word = counts.words.getWord(localId);
+			wordIds[localId] = sign > 0 ? dictionary.add(word) : dictionary.getId(word);
+		}
+
+		// Check everything being removed is there before changing anything,
+		// so a bad removal can't leave negative counts behind
+		if (sign < 0) {
+			counts.wordLabelCounts.forEach((localId, labelId, count) -> {
+				if (wordIds[localId] < 0 || wordLabelCounts.get(wordIds[localId], labelId) < count) {
+					throw new IllegalArgumentException("Removed tweets were not in the model");
+				}
+			});
+			for (int localId = 0; localId < wordIds.length; localId++) {
+				if (counts.documentCounts[localId] > 0 && (wordIds[localId] < 0
+						|| getDocumentCount(wordIds[localId]) < counts.documentCounts[localId])) {
+					throw new IllegalArgumentException("Removed tweets were not in the model");
+				}
+			}
+			for (int labelId = 0; labelId < counts.labelCounts.length; labelId++) {
+				String location = labels.get(labelId);
+				if (labelCounts.getOrDefault(location, 0) < counts.labelCounts[labelId]
+						|| labelWordCounts.getOrDefault(location, 0) < counts.labelWordCounts[labelId]) {
+					throw new IllegalArgumentException("Removed tweets were not in the model");
+				}
+			}
+		}
+
+		counts.wordLabelCounts.forEach((localId, labelId, count) ->
+				addCount(wordIds[localId], labelId, sign * count));
+		for (int localId = 0; localId < wordIds.length; localId++) {
+			addDocumentCount(wordIds[localId], sign * counts.documentCounts[localId]);
+		}
+
+		for (int labelId = 0; labelId < counts.labelCounts.length; labelId++) {
+			String location = labels.get(labelId);
+			labelWordCounts.merge(location, sign * counts.labelWordCounts[labelId], Integer::sum);
+			if (counts.labelCounts[labelId] > 0) {
+				int labelCount = labelCounts.merge(location, sign * counts.labelCounts[labelId], Integer::sum);
+				if (labelCount > 0) {
+					trainingSetLabels.add(location);
+				} else {
+					trainingSetLabels.remove(location);
+				}
+			}
+		}
+		countsChanged();
+	}
+
+	/**
+	 * Recomputes the label priors and bumps the version, called with the
+	 * lock held after every change to the counts
+	 */
+	synchronized void countsChanged() {
+		populateLabelProbs();
+		version++;
+	}
+
+	/**
+	 * Adds to the count of a word with a label, keeping the
+	 * word's total and the vocab size up to date
+	 * 
+	 * @param wordId ID of the word
+	 * @param labelId ID of the label
+	 * @param delta Amount to add, may be negative
+	 */
+	void addCount(int wordId, int labelId, int delta) {
+		computeWordTotals();
+		if (wordId >= wordTotals.length) {
+			wordTotals = Arrays.copyOf(wordTotals, Math.max(wordId + 1, wordTotals.length * 2));
+		}
+		int oldTotal = wordTotals[wordId];
+		wordTotals[wordId] += delta;
+		wordLabelCounts.add(wordId, labelId, delta);
+
+		if (oldTotal == 0 && wordTotals[wordId] != 0) {
+			vocabSize++;
+		} else if (oldTotal != 0 && wordTotals[wordId] == 0) {
+			vocabSize--;
+		}
+	}
+
+	/**
+	 * Adds to how many tweets a word occurred in
+	 * 
+	 * @param wordId ID of the word
+	 * @param delta Amount to add, may be negative
+	 */
+	void addDocumentCount(int wordId, int delta) {
+		if (mappedDocumentCounts != null) {
+			wordDocumentCounts = new int[Math.max(1024, mappedDocumentCounts.capacity())];
+			mappedDocumentCounts.duplicate().get(wordDocumentCounts, 0, mappedDocumentCounts.capacity());
+			mappedDocumentCounts = null;
+		}
+		if (wordId >= wordDocumentCounts.length) {
+			wordDocumentCounts = Arrays.copyOf(wordDocumentCounts,
+					Math.max(wordId + 1, wordDocumentCounts.length * 2));
+		}
+		wordDocumentCounts[wordId] += delta;
+	}
+
+	/**
+	 * @param wordId ID of a word in the dictionary
+	 * @return How many tweets the word occurred in
+	 */
+	int getDocumentCount(int wordId) {
+		if (mappedDocumentCounts != null) {
+			return wordId < mappedDocumentCounts.capacity() ? mappedDocumentCounts.get(wordId) : 0;
+		}
+		return wordId < wordDocumentCounts.length ? wordDocumentCounts[wordId] : 0;
+	}
+
+	/**
+	 * Uses the dictionary and counts of a model file where they are in the mapped
+	 * file, rather than adding them up one by one. Every word a model file keeps
+	 * is in the vocab, so the word totals are only added up once the counts change
+	 *
+	 * @param dictionary Words of the model file
+	 * @param wordLabelCounts Count of each word in each label
+	 * @param documentCounts How many tweets each word occurred in
+	 */
+	void setCounts(FeatureDictionary dictionary, WordLabelCounts wordLabelCounts, IntBuffer documentCounts) {
+		this.dictionary = dictionary;
+		this.wordLabelCounts = wordLabelCounts;
+		mappedDocumentCounts = documentCounts;
+		wordDocumentCounts = null;
+		wordTotals = null;
+		vocabSize = dictionary.size();
+	}
+
+	/**
+	 * Adds up the word totals from the counts if they haven't been since the
+	 * model was read from a file, before anything which reads or changes them
+	 */
+	private void computeWordTotals() {
+		if (wordTotals == null) {
+			int[] totals = new int[Math.max(1024, dictionary.size())];
+			wordLabelCounts.forEach((wordId, labelId, count) -> totals[wordId] += count);
+			wordTotals = totals;
+		}
+	}
+
+	/**
+	 * Drops rare words from the vocab, taking their occurrences off the label
+	 * word counts as if they had been in the stoplist, so the smoothing of the
+	 * words that are kept uses the smaller vocab size. The dictionary is rebuilt
+	 * with only the kept words, which gives them new word IDs. The counts of
+	 * dropped words are gone, so tweets counted before pruning can't be removed
+	 * later. Words added after pruning are kept until the next time it is called
+	 * 
+	 * @param minWordCount Fewest times a word must occur in total, 1 keeps every word
+	 * @param minDocumentFrequency Fewest tweets a word must occur in, 1 keeps every word
+	 * @param maxVocabSize Most words kept, the ones occurring the most times
+	 * with ties going to the word seen first, or 0 for no limit
+	 * @return How many words were dropped
+	 */
+	public synchronized int pruneVocab(int minWordCount, int minDocumentFrequency, int maxVocabSize) {
+		computeWordTotals();
+		boolean[] pruned = new boolean[dictionary.size()];
+		int keptCount = 0;
+		for (int wordId = 0; wordId < pruned.length; wordId++) {
+			if (isInVocab(wordId)) {
+				if (wordTotals[wordId] < minWordCount || getDocumentCount(wordId) < minDocumentFrequency) {
+					pruned[wordId] = true;
+				} else {
+					keptCount++;
+				}
+			}
+		}
+
+		if (maxVocabSize > 0 && keptCount > maxVocabSize) {
+			// Sort by descending total then word ID, packed into one long per word
+			long[] ranks = new long[keptCount];
+			int rank = 0;
+			for (int wordId = 0; wordId < pruned.length; wordId++) {
+				if (isInVocab(wordId) && !pruned[wordId]) {
+					ranks[rank++] = ((long) (Integer.MAX_VALUE - wordTotals[wordId]) << 32) | wordId;
+				}
+			}
+			Arrays.sort(ranks);
+			for (rank = maxVocabSize; rank < ranks.length; rank++) {
+				pruned[(int) ranks[rank]] = true;
+			}
+		}
+
+		// Rebuild the dictionary and count table with only the kept words, so the
+		// dropped words' strings and entries are freed rather than left at 0
+		FeatureDictionary keptDictionary = dictionary.emptyCopy();
+		int[] keptWordIds = new int[pruned.length];
+		for (int wordId = 0; wordId < pruned.length; wordId++) {
+			keptWordIds[wordId] = isInVocab(wordId) && !pruned[wordId]
+					? keptDictionary.addFrom(dictionary, wordId) : -1;
+		}
+		WordLabelCounts keptCounts = new WordLabelCounts();
+		int[] keptTotals = new int[Math.max(1024, keptDictionary.size())];
+		int[] keptDocumentCounts = new int[keptTotals.length];
+		wordLabelCounts.forEach((wordId, labelId, count) -> {
+			int keptWordId = keptWordIds[wordId];
+			if (keptWordId >= 0) {
+				keptCounts.add(keptWordId, labelId, count);
+				keptTotals[keptWordId] += count;
+			} else {
+				labelWordCounts.merge(labels.get(labelId), -count, Integer::sum);
+			}
+		});
+		for (int wordId = 0; wordId < pruned.length; wordId++) {
+			if (keptWordIds[wordId] >= 0) {
+				keptDocumentCounts[keptWordIds[wordId]] = getDocumentCount(wordId);
+			}
+		}
+
+		int vocabSizeBefore = vocabSize;
+		dictionary = keptDictionary;
+		wordLabelCounts = keptCounts;
+		wordTotals = keptTotals;
+		wordDocumentCounts = keptDocumentCounts;
+		mappedDocumentCounts = null;
+		vocabSize = keptDictionary.size();
+		countsChanged();
+
+		int prunedWordCount = vocabSizeBefore - vocabSize;
+		MetricsRegistry.getDefault().counter("training.wordsPruned").add(prunedWordCount);
+		return prunedWordCount;
+	}
+
+	/**
+	 * @param wordId ID of a word in the dictionary
+	 * @return True if the word currently has a non-zero count, so is part of the vocab
+	 */
+	boolean isInVocab(int wordId) {
+		if (wordTotals == null) {
+			return wordId >= 0 && wordId < dictionary.size();
+		}
+		return wordId >= 0 && wordId < wordTotals.length && wordTotals[wordId] > 0;
+	}
+
+	/**
+	 * Adds a location label if it hasn't been seen yet,
+	 * starting its counts at 0
+	 * 
+	 * @param locationLabel The label to add
+	 * @return The label ID of the label
+	 */
+	int addLabel(String locationLabel) {
+		Integer labelId = labelIds.get(locationLabel);
+		if (labelId == null) {
+			labelId = labels.size();
+			labels.add(locationLabel);
+			labelIds.put(locationLabel, labelId);
+			labelCounts.put(locationLabel, 0);
+			labelWordCounts.put(locationLabel, 0);
+		}
+		return labelId;
+	}
+
+	/**
+	 * Populate the user location index using the file provided. Locations are
+	 * matched straight from the read buffer by the options' LocationResolver,
+	 * and user IDs are parsed from it as numbers, so no Strings are made
+	 * @param fileName The name of the file that contains tweet IDs and their locations
+	 */
+	public void populateIDLocations(String fileName) {
+		int thrownOutUsersCount = 0;
+		int byCodeCount = 0;
+		int lineCount = 0;
+
+		try (TabRecordReader trainingDataReader = new TabRecordReader(fileName)) {
+			LocationResolver resolver = options.getLocationResolver() != null
+					? options.getLocationResolver() : LocationResolver.getDefault();
+			while (trainingDataReader.next()) {
+				lineCount++;
+				if (trainingDataReader.getFieldCount() < 2) {
+					thrownOutUsersCount++;
+					continue;
+				}
+				CharSequence location = trainingDataReader.getFieldChars(1);
+
+				// A trailing two-letter code is taken as it is, otherwise
+				// the last U.S. place named in the location gives the state
+				String label = resolver.resolveCode(location);
+				if (label != null) {
+					byCodeCount++;
+				} else {
+					label = resolver.resolvePlace(location);
+				}
+
+				if (label != null) {
+					userLocations.add(trainingDataReader.getFieldChars(0), label);
+				} else {
+					thrownOutUsersCount++;
+				}
+			}
+			System.out.println("Thrown out users: " + thrownOutUsersCount);
+			int resolvedCount = lineCount - thrownOutUsersCount;
+			System.out.printf("Resolved users: %d of %d (%.1f%%), %d by state code, %d by place name%n",
+					resolvedCount, lineCount, lineCount == 0 ? 0.0 : 100.0 * resolvedCount / lineCount,
+					byCodeCount, resolvedCount - byCodeCount);
+			MetricsRegistry.getDefault().counter("users.thrownOut").add(thrownOutUsersCount);
+			MetricsRegistry.getDefault().counter("users.resolvedByCode").add(byCodeCount);
+			MetricsRegistry.getDefault().counter("users.resolvedByPlace").add(resolvedCount - byCodeCount);
+			MetricsRegistry.getDefault().counter("users.lines").add(lineCount);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+	}
+
+	/**
+	 * Indicate whether a word passes filter or not
+	 * in order to filter out links, etc.
+	 * 
+	 * @param word Word to check
+	 * @return True if word should not be filtered out, false if it should be filtered out
+	 */
+	public boolean passesFilter(String word) {
+		return passesFilter(word, 0, word.length());
+	}
+	
+	/**
+	 * Indicate whether a word, given as a span of text, passes filter or not
+	 * in order to filter out links, etc. Checks the prefixes directly instead
+	 * of with a regex so that no String has to be created for the word
+	 * 
+	 * @param text Text holding the word
+	 * @param start Index of the first char of the word
+	 * @param end Index after the last char of the word
+	 * @return True if word should not be filtered out, false if it should be filtered out
+	 */
+	public boolean passesFilter(CharSequence text, int start, int end) {
+		if (end - start > 4 && startsWith(text, start, "http")) {
+			return false;
+		} else if (end - start > 4 && startsWith(text, start, "www.")) {
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return True if the text at start begins with the prefix
+	 */
+	private static boolean startsWith(CharSequence text, int start, String prefix) {
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text.charAt(start + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method for finding which location was not included in training data
+	 */
+	public void findMissingState() {
+		LocationFilterHelper filterHelper = new LocationFilterHelper();
+		
+		for (String label: filterHelper.getStateHashMap().values()) {
+			if (!trainingSetLabels.contains(label)){
+				System.out.println(label);
+			}
+		}
+	}
+	
+	/**
+	 * Populate the labelWords hashmap with the word in question
+	 * associated with the particular label and its count 
+	 * 
+	 * @param word
+	 * @param locationLabel
+	 */
+	public void addToLabelWords(String word, String locationLabel) {
+		if (!labelIds.containsKey(locationLabel)) {
+			// Not a location we've seen before
+			// Decide how to handle it
+		} else {
+			addCount(dictionary.add(word), labelIds.get(locationLabel), 1);
+		}
+	}
+
+	/*
+	 * Calculates the probability of each label
+	 * and populate the labelProbs hashmap. Only called through
+	 * countsChanged, so it runs under the lock with the change
+	 */
+	private void populateLabelProbs() {
+		// Populate label probs
+		int denominator = 0;
+		for (String locationLabel : labelCounts.keySet()) {
+			denominator += labelCounts.get(locationLabel);
+		}
+
+		for (String locationLabel : labelCounts.keySet()) {
+			int numerator = labelCounts.get(locationLabel);
+			double prob = (double) numerator / (double) denominator;
+			labelProbs.put(locationLabel, prob);
+		}
+	}
+
+	/**
+	 * Writes the trained model to a binary model file
+	 * 
+	 * @param fileName Name of the file to write
+	 * @param fingerprint Fingerprint of the files the model was trained from, see ModelFile.fingerprint
+	 * @throws IOException If the file can't be written
+	 */
+	public void saveModel(String fileName, long fingerprint) throws IOException {
+		ModelFile.write(this, fileName, fingerprint);
+	}
+
+	/**
+	 * Loads a model written by saveModel
+	 * 
+	 * @param fileName Name of the model file
+	 * @param fingerprint Fingerprint of the files the model is expected to be trained from
+	 * @return The trained model
+	 * @throws IOException If the file can't be read or is stale or corrupted
+	 */
+	public static ModelTrainer loadModel(String fileName, long fingerprint) throws IOException {
+		return ModelFile.read(fileName, fingerprint);
+	}
+
+	/**
+	 * Loads a model written by saveModel without checking which files
+	 * it was trained from
+	 * 
+	 * @param fileName Name of the model file
+	 * @return The trained model
+	 * @throws IOException If the file can't be read or is corrupted
+	 */
+	public static ModelTrainer loadModel(String fileName) throws IOException {
+		return ModelFile.read(fileName);
+	}
+
+	/**
+	 * @return vocabulary set from training, backed by the word dictionary.
+	 * It can't be iterated if the model was trained with the hashing trick,
+	 * since then only the buckets of words are kept
+	 */
+	public Set<String> getVocab() {
+		return vocab;
+	}
+
+	/**
+	 * @return labelWords map from training, backed by the word/label count table.
+	 * The word counts of a label can't be iterated if the model was trained
+	 * with the hashing trick, since then only the buckets of words are kept
+	 */
+	public Map<String, Map<String, Integer>> getLabelWords() {
+		return labelWords;
+	}
+
+	/**
+	 * @return Number which goes up every time the counts of the model change
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return dictionary which maps each word ever counted to its word ID,
+	 * including words which have since been removed from the vocab. A
+	 * HashedWordDictionary if the model was trained with the hashing trick
+	 */
+	public FeatureDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @return count of each word in each label, keyed by word ID and label ID
+	 */
+	public WordLabelCounts getWordLabelCounts() {
+		return wordLabelCounts;
+	}
+
+	/**
+	 * @param locationLabel The label to look up
+	 * @return The label ID used in getWordLabelCounts, or -1 if the label isn't known
+	 */
+	public int getLabelId(String locationLabel) {
+		Integer labelId = labelIds.get(locationLabel);
+		return labelId == null ? -1 : labelId;
+	}
+
+	/**
+	 * @param labelId ID of the label
+	 * @return The label with that ID
+	 */
+	public String getLabel(int labelId) {
+		return labels.get(labelId);
+	}
+
+	/**
+	 * @return How many labels have a label ID
+	 */
+	public int getLabelCount() {
+		return labels.size();
+	}
+
+	/**
+	 * @return Approximate heap bytes used by the vocab and word/label counts,
+	 * leaving out the tables still read in place from a model file
+	 */
+	public long memoryBytes() {
+		return dictionary.memoryBytes() + wordLabelCounts.memoryBytes()
+				+ (wordTotals == null ? 0 : (long) wordTotals.length * 4)
+				+ (wordDocumentCounts == null ? 0 : (long) wordDocumentCounts.length * 4);
+	}
+
+	/**
+	 * @return labelWordCounts hashmap from training
+	 */
+	public HashMap<String, Integer> getLabelWordCounts() {
+		return labelWordCounts;
+	}
+
+	/**
+	 * @return Map view of the user location index from training which maps
+	 * from a user ID to their location as a 2-letter state code
+	 */
+	public Map<String, String> getIDLocations() {
+		return userLocations.asMap();
+	}
+
+	/**
+	 * @return Index from training which maps from a user ID to
+	 * their location as a 2-letter state code
+	 */
+	public UserLocationIndex getUserLocations() {
+		return userLocations;
+	}
+
+	/**
+	 * @param userLocations Index of users' locations, as read from a model file
+	 */
+	void setUserLocations(UserLocationIndex userLocations) {
+		this.userLocations = userLocations;
+	}
+
+	/**
+	 * @return labelCounts hashmap from training which maps from
+	 * a label to how many training tweets had that label
+	 */
+	public HashMap<String, Integer> getLabelCounts() {
+		return labelCounts;
+	}
+
+	/**
+	 * Adds a word to the stoplist
+	 * 
+	 * @param stopWord Word to exclude when training
+	 */
+	void addStopWord(String stopWord) {
+		stoplist.add(stopWord);
+		stopWords.add(stopWord);
+	}
+
+	/**
+	 * @param dictionary Empty dictionary to intern words with, such as a HashedWordDictionary
+	 */
+	void setDictionary(FeatureDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * @param tokenizer Splits tweets into words when training and classifying with this model
+	 */
+	void setTokenizer(TweetTokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * @return tokenizer which splits tweets into words, used when
+	 * classifying with this model so tweets are split the same way
+	 */
+	public TweetTokenizer getTokenizer() {
+		return tokenizer;
+	}
+
+	/**
+	 * @return stoplist hashset of words excluded from training
+	 */
+	public HashSet<String> getStoplist() {
+		return stoplist;
+	}
+
+	/**
+	 * @return labelProbs hashmap from training
+	 */
+	public HashMap<String, Double> getLabelProbs() {
+		return labelProbs;
+	}
+
+	/**
+	 * @return copy of the trainingSetLabels hashset from training
+	 * which is all the labels that occurred in the training, taken
+	 * under the lock so it can be read while tweets are being added
+	 */
+	public synchronized HashSet<String> getTrainingSetLabels() {
+		return new HashSet<>(trainingSetLabels);
+	}
+
+	/**
+	 * Marks a label as occurring in the training set, for models which are
+	 * filled in from their counts rather than trained from tweets
+	 * 
+	 * @param label The label
+	 */
+	synchronized void addTrainingSetLabel(String label) {
+		trainingSetLabels.add(label);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If the dictionary keeps no words to list
+	 */
+	private void checkWordsKept() {
+		if (dictionary.getHashBits() > 0) {
+			throw new UnsupportedOperationException("A model trained with the hashing trick keeps no words to list");
+		}
+	}
+
+	/**
+	 * Read-only view of the vocab as a set of words
+	 */
+	private class VocabView extends AbstractSet<String> {
+		@Override
+		public boolean contains(Object word) {
+			return word instanceof String && isInVocab(dictionary.getId((String) word));
+		}
+
+		@Override
+		public int size() {
+			return vocabSize;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			checkWordsKept();
+			return new Iterator<String>() {
+				private int wordId = skipRemoved(0);
+
+				@Override
+				public boolean hasNext() {
+					return wordId < dictionary.size();
+				}
+
+				private int skipRemoved(int nextWordId) {
+					while (nextWordId < dictionary.size() && !isInVocab(nextWordId)) {
+						nextWordId++;
+					}
+					return nextWordId;
+				}
+
+				@Override
+				public String next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					String word = dictionary.getWord(wordId);
+					wordId = skipRemoved(wordId + 1);
+					return word;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Read-only view of the word/label count table as a map
+	 * from location label to word to count
+	 */
+	private class LabelWordsView extends AbstractMap<String, Map<String, Integer>> {
+		@Override
+		public Map<String, Integer> get(Object locationLabel) {
+			Integer labelId = labelIds.get(locationLabel);
+			return labelId == null ? null : new WordCountsView(labelId);
+		}
+
+		@Override
+		public boolean containsKey(Object locationLabel) {
+			return labelIds.containsKey(locationLabel);
+		}
+
+		@Override
+		public Set<Map.Entry<String, Map<String, Integer>>> entrySet() {
+			Set<Map.Entry<String, Map<String, Integer>>> entries = new LinkedHashSet<>();
+			for (int labelId = 0; labelId < labels.size(); labelId++) {
+				entries.add(new SimpleImmutableEntry<>(labels.get(labelId), new WordCountsView(labelId)));
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Read-only view of the word counts of one label as a map from word to count
+	 */
+	private class WordCountsView extends AbstractMap<String, Integer> {
+		private final int labelId;
+
+		WordCountsView(int labelId) {
+			this.labelId = labelId;
+		}
+
+		@Override
+		public Integer get(Object word) {
+			if (!(word instanceof String)) {
+				return null;
+			}
+			int wordId = dictionary.getId((String) word);
+			int count = wordId < 0 ? 0 : wordLabelCounts.get(wordId, labelId);
+			return count == 0 ? null : count;
+		}
+
+		@Override
+		public boolean containsKey(Object word) {
+			return get(word) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, Integer>> entrySet() {
+			checkWordsKept();
+			Set<Map.Entry<String, Integer>> entries = new LinkedHashSet<>();
+			wordLabelCounts.forEach((wordId, entryLabelId, count) -> {
+				if (entryLabelId == labelId) {
+					entries.add(new SimpleImmutableEntry<>(dictionary.getWord(wordId), count));
+				}
+			});
+			return entries;
+		}
+	}
+
+	/**
+	 * Main method for testing
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		ProgressReporter progress = new ProgressReporter(MetricsRegistry.getDefault().counter("training.lines"),
+				"lines trained", 10, System.err);
+		ModelTrainer tester = new ModelTrainer("data/training_set_users.txt", 
+				"data/test_set_tweets_360k.txt", "data/smallStoplist");
+		progress.close();
+		System.out.println(tester.trainingSetLabels);
+		System.out.println(tester.trainingSetLabels.size());
+	}
+}
@@ -0,0 +1,666 @@
+package nlp.nbc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Trains a model straight into a model file without ever holding the whole
+ * word/label count table, for tweet files whose vocab doesn't fit in the heap.
+ *
+ * Tweets are counted in batches as in ModelTrainer, and the batch counts are added
+ * up in memory until they take more than the memory budget. They are then sorted by
+ * word, written to a run file on disk and forgotten. At the end the runs are merged
+ * word by word, adding up each word's counts from every run, and written out in the
+ * ModelFile layout, so the model is loaded with ModelTrainer.loadModel. At most
+ * MAX_MERGE_FAN_IN runs are merged at once, so if there are more, groups of them
+ * are first merged into bigger runs, as many times as it takes.
+ *
+ * Words which occur fewer times than the minimum word count, or in fewer tweets
+ * than the minimum document frequency, are dropped during the merge, and their
+ * occurrences are taken off the label word counts as if they had been in the
+ * stoplist. A maximum vocab size and the hashing trick aren't supported, since
+ * the first needs every word at once and the second already bounds the model. Word IDs in the file are in word order rather than file
+ * order, which doesn't change any prediction.
+ *
+ * Run files and the merge's temporary files are written to the spill directory
+ * of the options, or next to the model file if it isn't set, rather than to the
+ * system temporary directory, since together they take about as much disk as the
+ * tweet file's counts and the system one is often a small or memory-backed volume.
+ *
+ * Peak heap is about the memory budget, plus the batches being counted, the user
+ * locations and a buffer for each of at most MAX_MERGE_FAN_IN runs while merging,
+ * whatever the size of the tweet file, and the merge never has more than that many
+ * run files open
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class OutOfCoreTrainer {
+
+	// Size of the buffer of each run and temporary file
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Most runs merged at once, each taking a buffer and an open file
+	public static final int MAX_MERGE_FAN_IN = 64;
+
+	// Holds the users, labels, stoplist and tokenizer and counts batches of
+	// tweets, its own count table is never used
+	private final ModelTrainer counter;
+
+	private final TrainingOptions options;
+
+	// Counts added up since the last run was written, keyed by word
+	private TrainingCounts pending;
+
+	// Approximate bytes taken by the words of pending, kept as they are
+	// added since measuring the dictionary means going over every word
+	private long pendingWordBytes;
+
+	// How many tweets and words each label had over the whole file, by the counter's label IDs
+	private int[] labelCounts;
+	private int[] labelWordCounts;
+
+	// Directory the run and merge files of the training going on are written to
+	private File spillDirectory;
+
+	// Run files written so far
+	private final List<File> runs = new ArrayList<>();
+
+	// How many runs the last training wrote, and what its merge kept and dropped
+	private int runCount;
+	private int vocabSize;
+	private int prunedWordCount;
+	private long prunedTokenCount;
+
+	/**
+	 * Constructor which reads the users' locations and the stoplist
+	 *
+	 * @param locationsFileName Name of file containing twitter user IDs and locations
+	 * @param stoplistFileName Name of file containing words to exclude when processing
+	 * @param options How to read and count the tweets, the memory budget and the
+	 * minimum word count and document frequency
+	 * @throws IOException If the stoplist can't be read
+	 * @throws IllegalArgumentException If the options set a maximum vocab size or hash bits
+	 */
+	public OutOfCoreTrainer(String locationsFileName, String stoplistFileName, TrainingOptions options)
+			throws IOException {
+		if (options.getMaxVocabSize() > 0 || options.getHashBits() > 0) {
+			throw new IllegalArgumentException("OutOfCoreTrainer doesn't support a maximum vocab size or hash bits");
+		}
+		this.options = options;
+		counter = new ModelTrainer();
+		counter.setOptions(options);
+		counter.readUsersAndStoplist(locationsFileName, stoplistFileName);
+	}
+
+	/**
+	 * Counts every tweet in a file and writes the model trained on them to a model file
+	 *
+	 * @param tweetsFileName Name of file containing tweets
+	 * @param modelFileName Name of the model file to write
+	 * @param fingerprint Fingerprint of the files the model was trained from, see ModelFile.fingerprint
+	 * @throws IOException If a file can't be read or written
+	 */
+	public void train(String tweetsFileName, String modelFileName, long fingerprint) throws IOException {
+		pending = new TrainingCounts(counter.getLabelCount());
+		pendingWordBytes = 0;
+		labelCounts = new int[counter.getLabelCount()];
+		labelWordCounts = new int[counter.getLabelCount()];
+		spillDirectory = options.getSpillDirectory() != null ? new File(options.getSpillDirectory())
+				: new File(modelFileName).getAbsoluteFile().getParentFile();
+		if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+			throw new IOException("Can't make spill directory " + spillDirectory);
+		}
+
+		try (TabRecordReader trainingDataReader = new TabRecordReader(tweetsFileName)) {
+			BatchPipeline<TweetRecord, TrainingCounts> pipeline =
+					new BatchPipeline<>(options.getNumThreads(), options.getBatchSize());
+			pipeline.run(trainingDataReader.tweets(), counter::countTweets, this::addCounts);
+			spill();
+			runCount = runs.size();
+
+			long start = System.nanoTime();
+			while (runs.size() > MAX_MERGE_FAN_IN) {
+				mergeRuns();
+			}
+			merge(modelFileName, fingerprint);
+			MetricsRegistry.getDefault().timer("training.mergeRuns").record(System.nanoTime() - start);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+			runs.clear();
+			pending = null;
+		}
+	}
+
+	/**
+	 * Adds the counts of one batch to the pending counts, writing
+	 * them to a run once they take more than the memory budget
+	 *
+	 * @param counts The counts from one batch of tweets
+	 * @throws UncheckedIOException If the run file can't be written, since this is called from the pipeline
+	 */
+	private void addCounts(TrainingCounts counts) {
+		int[] wordIds = new int[counts.words.size()];
+		for (int localId = 0; localId < wordIds.length; localId++) {
+			String word = counts.words.getWord(localId);
+			int wordCount = pending.words.size();
+			wordIds[localId] = pending.words.add(word);
+			if (wordIds[localId] == wordCount) {
+				// String object and its chars, plus the dictionary's slots for it
+				pendingWordBytes += 40 + 2L * word.length() + 24;
+			}
+			pending.addDocumentCount(wordIds[localId], counts.documentCounts[localId]);
+		}
+		counts.wordLabelCounts.forEach((localId, labelId, count) ->
+				pending.wordLabelCounts.add(wordIds[localId], labelId, count));
+		for (int labelId = 0; labelId < labelCounts.length; labelId++) {
+			labelCounts[labelId] += counts.labelCounts[labelId];
+			labelWordCounts[labelId] += counts.labelWordCounts[labelId];
+		}
+
+		if (pendingWordBytes + pending.wordLabelCounts.memoryBytes() > options.getMemoryBudgetBytes()) {
+			try {
+				spill();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending counts to a new run file, sorted by word, and forgets them.
+	 * Each word is written with its document count and its count for every label it occurred with
+	 *
+	 * @throws IOException If the run file can't be written
+	 */
+	private void spill() throws IOException {
+		WordDictionary words = pending.words;
+		if (words.size() == 0) {
+			return;
+		}
+
+		// Group the entries by word, the same way WordLabelCounts.write does
+		int[] entryStarts = new int[words.size() + 1];
+		pending.wordLabelCounts.forEach((wordId, labelId, count) -> entryStarts[wordId + 1]++);
+		for (int wordId = 0; wordId < words.size(); wordId++) {
+			entryStarts[wordId + 1] += entryStarts[wordId];
+		}
+		int[] entryLabelIds = new int[pending.wordLabelCounts.size()];
+		int[] entryCounts = new int[pending.wordLabelCounts.size()];
+		int[] nextEntries = Arrays.copyOf(entryStarts, words.size());
+		pending.wordLabelCounts.forEach((wordId, labelId, count) -> {
+			int position = nextEntries[wordId]++;
+			entryLabelIds[position] = labelId;
+			entryCounts[position] = count;
+		});
+
+		String[] sortedWords = new String[words.size()];
+		for (int wordId = 0; wordId < sortedWords.length; wordId++) {
+			sortedWords[wordId] = words.getWord(wordId);
+		}
+		Arrays.sort(sortedWords);
+
+		File run = File.createTempFile("counts", ".run", spillDirectory);
+		runs.add(run);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+			out.writeInt(sortedWords.length);
+			for (String word : sortedWords) {
+				int wordId = words.getId(word);
+				out.writeUTF(word);
+				out.writeInt(pending.documentCounts[wordId]);
+				out.writeShort(entryStarts[wordId + 1] - entryStarts[wordId]);
+				for (int position = entryStarts[wordId]; position < entryStarts[wordId + 1]; position++) {
+					out.writeShort(entryLabelIds[position]);
+					out.writeInt(entryCounts[position]);
+				}
+			}
+		}
+		MetricsRegistry.getDefault().counter("training.runsWritten").increment();
+
+		pending = new TrainingCounts(counter.getLabelCount());
+		pendingWordBytes = 0;
+	}
+
+	/**
+	 * Merges the runs in groups of MAX_MERGE_FAN_IN into one run per group,
+	 * in the same layout as spill writes, and deletes the runs merged
+	 *
+	 * @throws IOException If a run file can't be read or written
+	 */
+	private void mergeRuns() throws IOException {
+		List<File> mergedRuns = new ArrayList<>();
+		try {
+			for (int first = 0; first < runs.size(); first += MAX_MERGE_FAN_IN) {
+				List<File> group = runs.subList(first, Math.min(runs.size(), first + MAX_MERGE_FAN_IN));
+				File run = File.createTempFile("counts", ".run", spillDirectory);
+				mergedRuns.add(run);
+
+				int wordCount = 0;
+				try (RunMerge merge = new RunMerge(group, counter.getLabelCount());
+						DataOutputStream out = new DataOutputStream(
+								new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+					// The word count is filled in once it is known
+					out.writeInt(0);
+					while (merge.advance()) {
+						out.writeUTF(merge.word);
+						out.writeInt(merge.documentCount);
+						out.writeShort(merge.seenCount);
+						for (int i = 0; i < merge.seenCount; i++) {
+							int labelId = merge.seenLabelIds[i];
+							out.writeShort(labelId);
+							out.writeInt(merge.wordCounts[labelId]);
+						}
+						wordCount++;
+					}
+				} catch (EOFException e) {
+					throw new IOException("Count run file was cut short", e);
+				}
+				try (RandomAccessFile file = new RandomAccessFile(run, "rw")) {
+					file.writeInt(wordCount);
+				}
+				MetricsRegistry.getDefault().counter("training.runsMerged").add(group.size());
+			}
+		} catch (IOException e) {
+			for (File run : mergedRuns) {
+				run.delete();
+			}
+			throw e;
+		}
+
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+		runs.addAll(mergedRuns);
+	}
+
+	/**
+	 * Reads the words of one run file in order
+	 */
+	private static class RunReader {
+		private final DataInputStream in;
+		private int remaining;
+		String word;
+		int documentCount;
+		int entryCount;
+		final int[] labelIds;
+		final int[] counts;
+
+		RunReader(File run, int labelCount) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+			remaining = in.readInt();
+			labelIds = new int[labelCount];
+			counts = new int[labelCount];
+		}
+
+		/**
+		 * Moves to the next word of the run
+		 *
+		 * @return False if the run has no more words
+		 */
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				word = null;
+				in.close();
+				return false;
+			}
+			remaining--;
+			word = in.readUTF();
+			documentCount = in.readInt();
+			entryCount = in.readShort();
+			for (int i = 0; i < entryCount; i++) {
+				labelIds[i] = in.readShort();
+				counts[i] = in.readInt();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Merges run files word by word, adding up the counts each
+	 * run has for a word, with a buffer and an open file per run
+	 */
+	private static class RunMerge implements Closeable {
+		private final List<RunReader> readers = new ArrayList<>();
+		private final PriorityQueue<RunReader> queue =
+				new PriorityQueue<>(Comparator.comparing((RunReader reader) -> reader.word));
+
+		// The word merged last, its document count and total count, and its
+		// count with each label, which is only non-zero for the seen labels
+		String word;
+		int documentCount;
+		long total;
+		final int[] wordCounts;
+		final int[] seenLabelIds;
+		int seenCount;
+
+		RunMerge(List<File> runs, int labelCount) throws IOException {
+			wordCounts = new int[labelCount];
+			seenLabelIds = new int[labelCount];
+			try {
+				for (File run : runs) {
+					RunReader reader = new RunReader(run, labelCount);
+					readers.add(reader);
+					if (reader.advance()) {
+						queue.add(reader);
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Moves to the next word in word order, adding up its counts from every run which has it
+		 *
+		 * @return False if the runs have no more words
+		 */
+		boolean advance() throws IOException {
+			for (int i = 0; i < seenCount; i++) {
+				wordCounts[seenLabelIds[i]] = 0;
+			}
+			seenCount = 0;
+			total = 0;
+			documentCount = 0;
+			if (queue.isEmpty()) {
+				word = null;
+				return false;
+			}
+
+			word = queue.peek().word;
+			while (!queue.isEmpty() && queue.peek().word.equals(word)) {
+				RunReader reader = queue.poll();
+				documentCount += reader.documentCount;
+				for (int i = 0; i < reader.entryCount; i++) {
+					int labelId = reader.labelIds[i];
+					if (wordCounts[labelId] == 0) {
+						seenLabelIds[seenCount++] = labelId;
+					}
+					wordCounts[labelId] += reader.counts[i];
+					total += reader.counts[i];
+				}
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (RunReader reader : readers) {
+				reader.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Merges the run files by word and writes the model file. Each section of
+	 * the file's dictionary and count table is written to a temporary file of its
+	 * own as the merge goes, and they are copied into the model file once the
+	 * label word counts are known. The slots of the dictionary's table are filled
+	 * in a mapped temporary file, so they never take any heap
+	 *
+	 * @param modelFileName Name of the model file to write
+	 * @param fingerprint Fingerprint of the files the model was trained from
+	 * @throws IOException If a file can't be read or written
+	 */
+	private void merge(String modelFileName, long fingerprint) throws IOException {
+		List<String> labels = new ArrayList<>(counter.getLabelCounts().keySet());
+		Collections.sort(labels);
+		int labelCount = counter.getLabelCount();
+		int[] counterLabelIds = new int[labelCount];
+		for (int fileLabelId = 0; fileLabelId < labelCount; fileLabelId++) {
+			counterLabelIds[fileLabelId] = counter.getLabelId(labels.get(fileLabelId));
+		}
+		int[] fileLabelIds = new int[labelCount];
+		for (int fileLabelId = 0; fileLabelId < labelCount; fileLabelId++) {
+			fileLabelIds[counterLabelIds[fileLabelId]] = fileLabelId;
+		}
+
+		vocabSize = 0;
+		prunedWordCount = 0;
+		prunedTokenCount = 0;
+		int minWordCount = options.getMinWordCount();
+		int minDocumentFrequency = options.getMinDocumentFrequency();
+		int[] seenFileLabelIds = new int[labelCount];
+
+		List<File> tempFiles = new ArrayList<>();
+		DataOutputStream[] sectionOuts = new DataOutputStream[Section.values().length];
+		try (RunMerge merge = new RunMerge(runs, labelCount)) {
+			File[] sectionFiles = new File[sectionOuts.length];
+			for (Section section : Section.values()) {
+				sectionFiles[section.ordinal()] = File.createTempFile(section.name().toLowerCase(), ".tmp", spillDirectory);
+				tempFiles.add(sectionFiles[section.ordinal()]);
+			}
+
+			try {
+				for (Section section : Section.values()) {
+					sectionOuts[section.ordinal()] = new DataOutputStream(new BufferedOutputStream(
+							new FileOutputStream(sectionFiles[section.ordinal()]), BUFFER_SIZE));
+				}
+				DataOutputStream hashesOut = sectionOuts[Section.HASHES.ordinal()];
+				DataOutputStream startsOut = sectionOuts[Section.STARTS.ordinal()];
+				DataOutputStream charsOut = sectionOuts[Section.CHARS.ordinal()];
+				DataOutputStream documentCountsOut = sectionOuts[Section.DOCUMENTS.ordinal()];
+				DataOutputStream rowStartsOut = sectionOuts[Section.ROWS.ordinal()];
+				DataOutputStream labelIdsOut = sectionOuts[Section.LABELS.ordinal()];
+				DataOutputStream countsOut = sectionOuts[Section.COUNTS.ordinal()];
+				int charCount = 0;
+				int entryCount = 0;
+				startsOut.writeInt(charCount);
+				rowStartsOut.writeInt(entryCount);
+
+				while (merge.advance()) {
+					String word = merge.word;
+					int seenCount = merge.seenCount;
+					int[] seenLabelIds = merge.seenLabelIds;
+					int[] wordCounts = merge.wordCounts;
+					if (merge.total >= minWordCount && merge.documentCount >= minDocumentFrequency) {
+						hashesOut.writeInt(word.hashCode());
+						charCount += word.length();
+						startsOut.writeInt(charCount);
+						charsOut.writeChars(word);
+						documentCountsOut.writeInt(merge.documentCount);
+
+						// A word's entries are in increasing file label ID order
+						for (int i = 0; i < seenCount; i++) {
+							seenFileLabelIds[i] = fileLabelIds[seenLabelIds[i]];
+						}
+						Arrays.sort(seenFileLabelIds, 0, seenCount);
+						for (int i = 0; i < seenCount; i++) {
+							labelIdsOut.writeInt(seenFileLabelIds[i]);
+							countsOut.writeInt(wordCounts[counterLabelIds[seenFileLabelIds[i]]]);
+						}
+						entryCount += seenCount;
+						rowStartsOut.writeInt(entryCount);
+						vocabSize++;
+					} else {
+						prunedWordCount++;
+						prunedTokenCount += merge.total;
+						for (int i = 0; i < seenCount; i++) {
+							labelWordCounts[seenLabelIds[i]] -= wordCounts[seenLabelIds[i]];
+						}
+					}
+				}
+			} finally {
+				for (DataOutputStream sectionOut : sectionOuts) {
+					if (sectionOut != null) {
+						sectionOut.close();
+					}
+				}
+			}
+
+			// The same table size and slots a WordDictionary holding the words would have
+			int slotCount = 2048;
+			while (vocabSize * 2 > slotCount) {
+				slotCount *= 2;
+			}
+			File slotsFile = File.createTempFile("slots", ".tmp", spillDirectory);
+			tempFiles.add(slotsFile);
+			writeSlots(sectionFiles[Section.HASHES.ordinal()], slotsFile, slotCount);
+
+			int slots = slotCount;
+			ModelFile.write(modelFileName, fingerprint, out -> {
+				ModelFile.writeString(out, counter.getTokenizer().getName());
+				out.writeByte(0);
+
+				out.writeInt(labels.size());
+				for (String label : labels) {
+					int labelId = counter.getLabelId(label);
+					ModelFile.writeString(out, label);
+					out.writeBoolean(labelCounts[labelId] > 0);
+					out.writeInt(labelCounts[labelId]);
+					out.writeInt(labelWordCounts[labelId]);
+				}
+
+				ModelFile.writeStoplist(out, counter.getStoplist());
+
+				out.writeInt(vocabSize);
+				Files.copy(sectionFiles[Section.HASHES.ordinal()].toPath(), out);
+				Files.copy(sectionFiles[Section.STARTS.ordinal()].toPath(), out);
+				Files.copy(sectionFiles[Section.CHARS.ordinal()].toPath(), out);
+				out.writeInt(slots);
+				Files.copy(slotsFile.toPath(), out);
+				Files.copy(sectionFiles[Section.DOCUMENTS.ordinal()].toPath(), out);
+				Files.copy(sectionFiles[Section.ROWS.ordinal()].toPath(), out);
+				Files.copy(sectionFiles[Section.LABELS.ordinal()].toPath(), out);
+				Files.copy(sectionFiles[Section.COUNTS.ordinal()].toPath(), out);
+
+				counter.getUserLocations().write(out);
+			});
+			MetricsRegistry.getDefault().counter("training.wordsPruned").add(prunedWordCount);
+		} catch (EOFException e) {
+			throw new IOException("Count run file was cut short", e);
+		} finally {
+			for (File tempFile : tempFiles) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Sections of the model file written to temporary files during the merge,
+	 * see WordDictionary.write and WordLabelCounts.write
+	 */
+	private enum Section {
+		// Hash of each word, where its chars start and the chars
+		HASHES, STARTS, CHARS,
+		// How many tweets each word occurred in
+		DOCUMENTS,
+		// Where each word's entries start, and the label ID and count of each entry
+		ROWS, LABELS, COUNTS
+	}
+
+	/**
+	 * Fills in the open addressing table of the words, as a WordDictionary
+	 * does, in a file mapped into memory rather than on the heap
+	 *
+	 * @param hashesFile File holding the hash of each word, in word ID order
+	 * @param slotsFile File to write the slots to
+	 * @param slotCount How many slots the table has, a power of two
+	 * @throws IOException If a file can't be read or written
+	 */
+	private static void writeSlots(File hashesFile, File slotsFile, int slotCount) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(slotsFile, "rw");
+				FileChannel channel = file.getChannel();
+				DataInputStream hashesIn = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(hashesFile), BUFFER_SIZE))) {
+			IntBuffer slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, 4L * slotCount).asIntBuffer();
+			int mask = slotCount - 1;
+			int wordCount = (int) (hashesFile.length() / 4);
+			for (int wordId = 0; wordId < wordCount; wordId++) {
+				int slot = WordDictionary.mix(hashesIn.readInt()) & mask;
+				while (slots.get(slot) != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots.put(slot, wordId + 1);
+			}
+		}
+	}
+
+	/**
+	 * @return How many run files the last training wrote, 1 if the counts never went over the budget
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * @return How many words the last model file kept
+	 */
+	public int getVocabSize() {
+		return vocabSize;
+	}
+
+	/**
+	 * @return How many words the last merge dropped for being under the minimum word count or document frequency
+	 */
+	public int getPrunedWordCount() {
+		return prunedWordCount;
+	}
+
+	/**
+	 * @return How many occurrences of dropped words the last merge took off the label word counts
+	 */
+	public long getPrunedTokenCount() {
+		return prunedTokenCount;
+	}
+
+	/**
+	 * Main method which trains a model file without holding the whole model
+	 *
+	 * @param args The users file, the tweets file, the stoplist and the model file to write, and
+	 * optionally the memory budget in MB, the minimum word count, the number of threads
+	 * and the minimum document frequency, and the directory to write the run files to
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 4) {
+			System.err.println("Usage: OutOfCoreTrainer users tweets stoplist model [budgetMB] [minWordCount] [threads] [minDocumentFrequency] [spillDir]");
+			System.exit(1);
+		}
+		TrainingOptions options = new TrainingOptions()
+				.setMemoryBudgetBytes((args.length > 4 ? Long.parseLong(args[4]) : 256) << 20)
+				.setMinWordCount(args.length > 5 ? Integer.parseInt(args[5]) : 1)
+				.setNumThreads(args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors())
+				.setMinDocumentFrequency(args.length > 7 ? Integer.parseInt(args[7]) : 1)
+				.setSpillDirectory(args.length > 8 ? args[8] : null);
+
+		ProgressReporter progress = new ProgressReporter(MetricsRegistry.getDefault().counter("training.lines"),
+				"lines trained", 10, System.err);
+		long start = System.nanoTime();
+		OutOfCoreTrainer trainer = new OutOfCoreTrainer(args[0], args[2], options);
+		trainer.train(args[1], args[3], ModelFile.fingerprint(args[0], args[1], args[2]));
+		progress.close();
+
+		System.out.printf("Wrote %s in %.1f s from %d runs: %,d words kept, %,d words (%,d tokens) under the minimum count%n",
+				args[3], (System.nanoTime() - start) / 1e9, trainer.getRunCount(), trainer.getVocabSize(),
+				trainer.getPrunedWordCount(), trainer.getPrunedTokenCount());
+	}
+}
@@ -0,0 +1,40 @@
+package nlp.nbc;
+
+import java.io.StringReader;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.process.CoreLabelTokenFactory;
+import edu.stanford.nlp.process.PTBTokenizer;
+
+/**
+ * Tokenizes tweets with Stanford's PTBTokenizer, the way the model has
+ * always been trained. Allocates a tokenizer per tweet and a CoreLabel
+ * and String per token
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class PTBTweetTokenizer implements TweetTokenizer {
+
+	// Name saved with models trained with this tokenizer
+	public static final String NAME = "ptb";
+
+	@Override
+	public void tokenize(CharSequence tweet, TokenSink sink) {
+		StringReader tweetText = new StringReader(tweet.toString());
+		PTBTokenizer<CoreLabel> ptbt = new PTBTokenizer<>(tweetText,
+				new CoreLabelTokenFactory(), "americanize=false,untokenizable=noneDelete");
+
+		while (ptbt.hasNext()) {
+			CoreLabel word = ptbt.next();
+			String wordAsString = word.toString();
+			sink.token(wordAsString, 0, wordAsString.length());
+		}
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+}
@@ -0,0 +1,267 @@
+package nlp.nbc;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of tweet scores, so retweets and other duplicate tweets
+ * aren't tokenized and scored again. Tweets are looked up by their exact text
+ * first, which skips tokenizing, and then by the sequence of their in-vocab word
+ * IDs, which is all the score depends on, so tweets differing only in words
+ * outside the vocab share a score. The IDs are kept in order, since the rows
+ * are added up in token order and another order could round differently, so a
+ * cached score is always the same as scoring the tweet again.
+ *
+ * Entries belong to the ScoringModel they were scored with. When a different
+ * one is passed in, as after Classifier.refreshModel, the old entries are
+ * dropped, so an updated model never gets stale predictions.
+ *
+ * The cache is split into segments with a lock each, so that several
+ * threads can use it at once
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class PredictionCache {
+
+	// Most segments the cache is split into, a power of two
+	private static final int MAX_SEGMENTS = 16;
+
+	private final Segment[] segments;
+	private final int maxEntries;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Word IDs of a tweet's in-vocab tokens, in token order
+	 */
+	private static final class TokenKey {
+		private final int[] wordIds;
+		private final int hash;
+
+		TokenKey(int[] tokenIds, int length) {
+			wordIds = Arrays.copyOf(tokenIds, length);
+			hash = WordDictionary.mix(Arrays.hashCode(wordIds));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof TokenKey && ((TokenKey) other).hash == hash
+					&& Arrays.equals(((TokenKey) other).wordIds, wordIds);
+		}
+	}
+
+	/**
+	 * Access ordered map holding part of the entries, keyed by tweet text or
+	 * TokenKey, dropping the least recently used entry once it is full.
+	 * Callers hold its lock
+	 */
+	private final class Segment extends LinkedHashMap<Object, double[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		// Model the entries were scored with
+		private ScoringModel scoringModel;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Drops every entry if they were scored with a different model
+		 */
+		void checkModel(ScoringModel current) {
+			if (scoringModel != current) {
+				invalidations.add(size());
+				clear();
+				scoringModel = current;
+			}
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, double[]> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Constructor which makes an empty cache
+	 *
+	 * @param maxEntries Most entries the cache holds at once, a tweet
+	 * takes up one for its text and one for its tokens
+	 */
+	public PredictionCache(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Cache must hold at least one entry");
+		}
+		this.maxEntries = maxEntries;
+
+		int segmentCount = Integer.highestOneBit(Math.min(MAX_SEGMENTS, maxEntries));
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			// Spread the entries so the segments add up to maxEntries
+			segments[i] = new Segment(maxEntries / segmentCount + (i < maxEntries % segmentCount ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Gives the log probability of every label for a tweet, from the cache if
+	 * the same text, or the same tokens, were scored before with the same model
+	 *
+	 * @param scoringModel Model the tweet is scored with
+	 * @param tweet Text of the tweet
+	 * @param tokenizer Splits the tweet into words, must be the model's tokenizer
+	 * @return Log probability of each label, indexed by label ID.
+	 * The array is shared with the cache so must not be changed
+	 */
+	public double[] score(ScoringModel scoringModel, String tweet, TweetTokenizer tokenizer) {
+		double[] logProbs = get(scoringModel, tweet);
+		if (logProbs == null) {
+			TokenIds tokenIds = new TokenIds(scoringModel);
+			tokenizer.tokenize(tweet, tokenIds);
+			logProbs = score(scoringModel, tokenIds.getIds(), tokenIds.size());
+			put(scoringModel, tweet, logProbs);
+		}
+		return logProbs;
+	}
+
+	/**
+	 * Gives the log probability of every label for a tweet's tokens, from
+	 * the cache if the same tokens were scored before with the same model
+	 *
+	 * @param scoringModel Model the tweet is scored with
+	 * @param tokenIds Word IDs of the tweet's tokens
+	 * @param length How many entries of tokenIds to use
+	 * @return Log probability of each label, indexed by label ID.
+	 * The array is shared with the cache so must not be changed
+	 */
+	public double[] score(ScoringModel scoringModel, int[] tokenIds, int length) {
+		TokenKey key = new TokenKey(tokenIds, length);
+		double[] logProbs = get(scoringModel, key);
+		if (logProbs == null) {
+			// Scored outside the lock, so other tweets in the segment aren't held up
+			logProbs = scoringModel.score(tokenIds, length);
+			put(scoringModel, key, logProbs);
+		}
+		return logProbs;
+	}
+
+	/**
+	 * Looks up a key, counting the hit or miss
+	 */
+	private double[] get(ScoringModel scoringModel, Object key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.checkModel(scoringModel);
+			double[] logProbs = segment.get(key);
+			if (logProbs != null) {
+				hits.increment();
+			} else {
+				misses.increment();
+			}
+			return logProbs;
+		}
+	}
+
+	/**
+	 * Adds an entry, unless the model changed while it was being scored
+	 */
+	private void put(ScoringModel scoringModel, Object key, double[] logProbs) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			if (segment.scoringModel == scoringModel) {
+				segment.put(key, logProbs);
+			}
+		}
+	}
+
+	private Segment segmentFor(Object key) {
+		return segments[WordDictionary.mix(key.hashCode()) & (segments.length - 1)];
+	}
+
+	/**
+	 * Drops every entry, without counting them as evictions
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return How many entries are in the cache, a tweet has one for
+	 * its text and usually one for its tokens
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return Most entries the cache holds at once
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @return How many lookups, by text or by tokens, were found in the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return How many lookups, by text or by tokens, weren't in the cache
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return Fraction of lookups found in the cache, 0 if there were none
+	 */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0.0 : (double) hitCount / total;
+	}
+
+	/**
+	 * @return How many entries were dropped to make room for new ones
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return How many entries were dropped because the model changed
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+}
@@ -0,0 +1,71 @@
+package nlp.nbc;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints how far a long training or classification run has got every few
+ * seconds, from a counter in the metrics registry, along with the rate
+ * since the last report. Runs on a daemon thread so it never keeps the JVM up
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class ProgressReporter implements AutoCloseable {
+
+	private final ScheduledExecutorService scheduler;
+	private final MetricsRegistry.Counter counter;
+	private final String unit;
+	private final PrintStream out;
+	private final long startNanos = System.nanoTime();
+
+	// Count and time of the last report, only used by the reporting thread
+	private long lastCount;
+	private long lastNanos = startNanos;
+
+	/**
+	 * Constructor which starts reporting straight away
+	 *
+	 * @param counter Counter whose progress is reported, such as lines read
+	 * @param unit What the counter counts, such as "lines"
+	 * @param periodSeconds Seconds between reports
+	 * @param out Where the reports are printed
+	 */
+	public ProgressReporter(MetricsRegistry.Counter counter, String unit, long periodSeconds, PrintStream out) {
+		this.counter = counter;
+		this.unit = unit;
+		this.out = out;
+		this.lastCount = counter.get();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "progress-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::report, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Prints the count so far and the rate since the last report
+	 */
+	private void report() {
+		long now = System.nanoTime();
+		long count = counter.get();
+		double rate = (count - lastCount) / ((now - lastNanos) / 1e9);
+		long heapBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		out.printf("[%6.0fs] %,d %s  %,.0f %s/sec  heap %,d MB%n", (now - startNanos) / 1e9,
+				count, unit, rate, unit, heapBytes >> 20);
+		lastCount = count;
+		lastNanos = now;
+	}
+
+	/**
+	 * Stops reporting
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+}
@@ -0,0 +1,247 @@
+package nlp.nbc;
+
+import java.util.Arrays;
+
+/**
+ * Log theta table keeping the full rows but storing each log theta in one byte
+ * (Int8) or two (Int16) instead of eight, as a step count on a grid with its own
+ * scale and offset per label. A label's grid runs from its unseen value, which
+ * most entries are and which stays exact, up to its highest log theta, so each
+ * other entry is off by at most half a step. A tweet's step counts are added up
+ * as integers and turned into a log probability once per label. The tables are
+ * 8 or 4 times smaller than DenseLogThetaTable, so more of them stay in cache,
+ * but labels whose scores are within the rounding error of each other can swap
+ * places, see Benchmark.benchmarkQuantization for how often that happens
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+abstract class QuantizedLogThetaTable implements LogThetaTable {
+
+	// How many tokens' step counts are added up in ints before going into the doubles.
+	// A step count is at most 2^15 from 0, so an int can't overflow within a chunk
+	private static final int STEP_SUM_CHUNK = 1 << 15;
+
+	protected final int labelCount;
+
+	// Log10 theta of one step and of step count 0 on each label's grid, so an entry
+	// is zeros[labelId] + scales[labelId] * its step count
+	private final double[] scales;
+	private final double[] zeros;
+
+	/**
+	 * Constructor which fits each label's grid between its unseen value and highest log theta
+	 *
+	 * @param unseenLogThetas Log10 theta of a word that never occurred with each label
+	 * @param entries Log theta of the words that occurred with each label
+	 * @param minValue Lowest step count, which stands for the unseen value
+	 * @param maxValue Highest step count, which stands for the highest log theta
+	 */
+	protected QuantizedLogThetaTable(double[] unseenLogThetas, Entries entries, int minValue, int maxValue) {
+		labelCount = unseenLogThetas.length;
+		double[] maxLogThetas = unseenLogThetas.clone();
+		entries.forEach((wordId, labelId, logTheta) -> maxLogThetas[labelId] = Math.max(maxLogThetas[labelId], logTheta));
+
+		scales = new double[labelCount];
+		zeros = new double[labelCount];
+		for (int labelId = 0; labelId < labelCount; labelId++) {
+			double range = maxLogThetas[labelId] - unseenLogThetas[labelId];
+			scales[labelId] = range > 0 ? range / (maxValue - minValue) : 1;
+			zeros[labelId] = unseenLogThetas[labelId] - minValue * scales[labelId];
+		}
+	}
+
+	/**
+	 * Stores the step count nearest to the log theta of every entry
+	 *
+	 * @param entries Log theta of the words that occurred with each label
+	 * @param minValue Lowest step count
+	 * @param maxValue Highest step count
+	 */
+	protected void fill(Entries entries, int minValue, int maxValue) {
+		entries.forEach((wordId, labelId, logTheta) -> {
+			long steps = Math.round((logTheta - zeros[labelId]) / scales[labelId]);
+			setSteps(wordId * labelCount + labelId, (int) Math.max(minValue, Math.min(maxValue, steps)));
+		});
+	}
+
+	/**
+	 * @param index Index of the entry, word-major
+	 * @param steps Step count to store there
+	 */
+	protected abstract void setSteps(int index, int steps);
+
+	/**
+	 * @param index Index of the entry, word-major
+	 * @return Step count stored there
+	 */
+	protected abstract int getSteps(int index);
+
+	/**
+	 * Adds the rows of some tokens into the step sums
+	 *
+	 * @param tokenIds Word IDs of the tweet's tokens
+	 * @param from Index of the first token to add
+	 * @param to Index after the last token to add
+	 * @param stepSums Step count sums of each label
+	 */
+	protected abstract void addSteps(int[] tokenIds, int from, int to, int[] stepSums);
+
+	/**
+	 * Adds up the step counts of a tweet's rows as integers, then turns each
+	 * label's total into a log probability on that label's grid
+	 */
+	@Override
+	public double[] score(int[] tokenIds, int length, double[] logPriors) {
+		double[] logProbSums = new double[labelCount];
+		int[] stepSums = new int[labelCount];
+		for (int chunkStart = 0; chunkStart < length; chunkStart += STEP_SUM_CHUNK) {
+			int chunkEnd = (int) Math.min(length, (long) chunkStart + STEP_SUM_CHUNK);
+			Arrays.fill(stepSums, 0);
+			addSteps(tokenIds, chunkStart, chunkEnd, stepSums);
+			for (int labelId = 0; labelId < labelCount; labelId++) {
+				logProbSums[labelId] += scales[labelId] * stepSums[labelId];
+			}
+		}
+		for (int labelId = 0; labelId < labelCount; labelId++) {
+			logProbSums[labelId] += length * zeros[labelId] + logPriors[labelId];
+		}
+		return logProbSums;
+	}
+
+	@Override
+	public double getLogTheta(int wordId, int labelId) {
+		return zeros[labelId] + scales[labelId] * getSteps(wordId * labelCount + labelId);
+	}
+
+	/**
+	 * Quantized table with a byte per word and label
+	 */
+	static class Int8 extends QuantizedLogThetaTable {
+
+		// Step count of every word and label, stored word-major
+		private final byte[] steps;
+
+		/**
+		 * @param vocabSize How many words there are
+		 * @param unseenLogThetas Log10 theta of a word that never occurred with each label
+		 * @param entries Log theta of the words that occurred with each label
+		 */
+		Int8(int vocabSize, double[] unseenLogThetas, Entries entries) {
+			super(unseenLogThetas, entries, Byte.MIN_VALUE, Byte.MAX_VALUE);
+			steps = new byte[vocabSize * labelCount];
+			Arrays.fill(steps, Byte.MIN_VALUE);
+			fill(entries, Byte.MIN_VALUE, Byte.MAX_VALUE);
+		}
+
+		@Override
+		protected void setSteps(int index, int steps) {
+			this.steps[index] = (byte) steps;
+		}
+
+		@Override
+		protected int getSteps(int index) {
+			return steps[index];
+		}
+
+		/**
+		 * Four rows per pass, as in the blocked kernel
+		 */
+		@Override
+		protected void addSteps(int[] tokenIds, int from, int to, int[] stepSums) {
+			int i = from;
+			for (; i + 3 < to; i += 4) {
+				int row0 = tokenIds[i] * labelCount;
+				int row1 = tokenIds[i + 1] * labelCount;
+				int row2 = tokenIds[i + 2] * labelCount;
+				int row3 = tokenIds[i + 3] * labelCount;
+				for (int labelId = 0; labelId < labelCount; labelId++) {
+					stepSums[labelId] += steps[row0 + labelId] + steps[row1 + labelId]
+							+ steps[row2 + labelId] + steps[row3 + labelId];
+				}
+			}
+			for (; i < to; i++) {
+				int rowStart = tokenIds[i] * labelCount;
+				for (int labelId = 0; labelId < labelCount; labelId++) {
+					stepSums[labelId] += steps[rowStart + labelId];
+				}
+			}
+		}
+
+		@Override
+		public long getStoredValueCount() {
+			return steps.length;
+		}
+
+		@Override
+		public long memoryBytes() {
+			return steps.length + 16L * labelCount;
+		}
+	}
+
+	/**
+	 * Quantized table with two bytes per word and label
+	 */
+	static class Int16 extends QuantizedLogThetaTable {
+
+		// Step count of every word and label, stored word-major
+		private final short[] steps;
+
+		/**
+		 * @param vocabSize How many words there are
+		 * @param unseenLogThetas Log10 theta of a word that never occurred with each label
+		 * @param entries Log theta of the words that occurred with each label
+		 */
+		Int16(int vocabSize, double[] unseenLogThetas, Entries entries) {
+			super(unseenLogThetas, entries, Short.MIN_VALUE, Short.MAX_VALUE);
+			steps = new short[vocabSize * labelCount];
+			Arrays.fill(steps, Short.MIN_VALUE);
+			fill(entries, Short.MIN_VALUE, Short.MAX_VALUE);
+		}
+
+		@Override
+		protected void setSteps(int index, int steps) {
+			this.steps[index] = (short) steps;
+		}
+
+		@Override
+		protected int getSteps(int index) {
+			return steps[index];
+		}
+
+		/**
+		 * Four rows per pass, as in the blocked kernel
+		 */
+		@Override
+		protected void addSteps(int[] tokenIds, int from, int to, int[] stepSums) {
+			int i = from;
+			for (; i + 3 < to; i += 4) {
+				int row0 = tokenIds[i] * labelCount;
+				int row1 = tokenIds[i + 1] * labelCount;
+				int row2 = tokenIds[i + 2] * labelCount;
+				int row3 = tokenIds[i + 3] * labelCount;
+				for (int labelId = 0; labelId < labelCount; labelId++) {
+					stepSums[labelId] += steps[row0 + labelId] + steps[row1 + labelId]
+							+ steps[row2 + labelId] + steps[row3 + labelId];
+				}
+			}
+			for (; i < to; i++) {
+				int rowStart = tokenIds[i] * labelCount;
+				for (int labelId = 0; labelId < labelCount; labelId++) {
+					stepSums[labelId] += steps[rowStart + labelId];
+				}
+			}
+		}
+
+		@Override
+		public long getStoredValueCount() {
+			return steps.length;
+		}
+
+		@Override
+		public long memoryBytes() {
+			return 2L * steps.length + 16L * labelCount;
+		}
+	}
+}
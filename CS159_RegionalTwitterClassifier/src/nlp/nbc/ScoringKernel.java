@@ -0,0 +1,154 @@
+package nlp.nbc;
+
+/**
+ * Inner loops of scoring a tweet: adding the log theta row of every token
+ * into one accumulator per label, then taking the argmax. Rows are read from
+ * a word-major matrix, so each row is contiguous and the loop over labels
+ * is a straight run the JIT can turn into SIMD adds.
+ *
+ * Which kernel is used is picked when the class loads, from the
+ * nlp.nbc.scoringKernel system property ("blocked" or "scalar"),
+ * defaulting to blocked. Both add the rows in the same order,
+ * so they give exactly the same sums
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public abstract class ScoringKernel {
+
+	// System property which picks the kernel
+	public static final String PROPERTY = "nlp.nbc.scoringKernel";
+
+	// Kernel used when none is asked for
+	private static final ScoringKernel DEFAULT = forName(System.getProperty(PROPERTY, BlockedKernel.NAME));
+
+	/**
+	 * Adds up the rows of a tweet's tokens and the priors
+	 *
+	 * @param logThetas Word-major log theta matrix, the row for a word
+	 * starts at wordId * labelCount
+	 * @param labelCount How many labels each row has
+	 * @param tokenIds Word IDs of the tweet's tokens
+	 * @param length How many entries of tokenIds to use
+	 * @param logPriors Log prior of each label
+	 * @return Log probability of each label
+	 */
+	public abstract double[] score(double[] logThetas, int labelCount, int[] tokenIds, int length, double[] logPriors);
+
+	/**
+	 * @return Name of the kernel, as used by forName
+	 */
+	public abstract String getName();
+
+	/**
+	 * Finds the label with the highest log probability,
+	 * the first one if several are equal
+	 *
+	 * @param logProbs Log probability of each label
+	 * @return Index of the maximum value
+	 */
+	public int argmax(double[] logProbs) {
+		int maxLabelId = 0;
+		double max = logProbs[0];
+		for (int labelId = 1; labelId < logProbs.length; labelId++) {
+			if (logProbs[labelId] > max) {
+				max = logProbs[labelId];
+				maxLabelId = labelId;
+			}
+		}
+		return maxLabelId;
+	}
+
+	/**
+	 * @return The kernel picked by the system property
+	 */
+	public static ScoringKernel getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param name "blocked" or "scalar"
+	 * @return A kernel of that name
+	 * @throws IllegalArgumentException If there is no kernel with that name
+	 */
+	public static ScoringKernel forName(String name) {
+		switch (name) {
+		case BlockedKernel.NAME:
+			return new BlockedKernel();
+		case ScalarKernel.NAME:
+			return new ScalarKernel();
+		default:
+			throw new IllegalArgumentException("Unknown scoring kernel: " + name);
+		}
+	}
+
+	/**
+	 * Adds one row at a time into the accumulator
+	 */
+	static class ScalarKernel extends ScoringKernel {
+
+		static final String NAME = "scalar";
+
+		@Override
+		public double[] score(double[] logThetas, int labelCount, int[] tokenIds, int length, double[] logPriors) {
+			double[] logProbSums = new double[labelCount];
+			for (int i = 0; i < length; i++) {
+				int rowStart = tokenIds[i] * labelCount;
+				for (int labelId = 0; labelId < labelCount; labelId++) {
+					logProbSums[labelId] += logThetas[rowStart + labelId];
+				}
+			}
+			for (int labelId = 0; labelId < labelCount; labelId++) {
+				logProbSums[labelId] += logPriors[labelId];
+			}
+			return logProbSums;
+		}
+
+		@Override
+		public String getName() {
+			return NAME;
+		}
+	}
+
+	/**
+	 * Adds four rows per pass over the accumulator, so it is loaded and
+	 * stored a quarter as often and the four row reads can overlap. Each
+	 * label still adds its rows one after another in token order
+	 */
+	static class BlockedKernel extends ScoringKernel {
+
+		static final String NAME = "blocked";
+
+		@Override
+		public double[] score(double[] logThetas, int labelCount, int[] tokenIds, int length, double[] logPriors) {
+			double[] logProbSums = new double[labelCount];
+			int i = 0;
+			for (; i + 3 < length; i += 4) {
+				int row0 = tokenIds[i] * labelCount;
+				int row1 = tokenIds[i + 1] * labelCount;
+				int row2 = tokenIds[i + 2] * labelCount;
+				int row3 = tokenIds[i + 3] * labelCount;
+				for (int labelId = 0; labelId < labelCount; labelId++) {
+					logProbSums[labelId] = logProbSums[labelId] + logThetas[row0 + labelId]
+							+ logThetas[row1 + labelId] + logThetas[row2 + labelId] + logThetas[row3 + labelId];
+				}
+			}
+			for (; i < length; i++) {
+				int rowStart = tokenIds[i] * labelCount;
+				for (int labelId = 0; labelId < labelCount; labelId++) {
+					logProbSums[labelId] += logThetas[rowStart + labelId];
+				}
+			}
+			for (int labelId = 0; labelId < labelCount; labelId++) {
+				logProbSums[labelId] += logPriors[labelId];
+			}
+			return logProbSums;
+		}
+
+		@Override
+		public String getName() {
+			return NAME;
+		}
+	}
+}
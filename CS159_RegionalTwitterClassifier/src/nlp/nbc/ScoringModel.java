@@ -0,0 +1,358 @@
+package nlp.nbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Read-only, precomputed version of a trained model for a given lambda.
+ * Holds the log10 theta of every (word, label) pair in a LogThetaTable so that
+ * scoring a tweet is only array additions, with no hash lookups or log calls
+ *
+ * The table is laid out one of several ways. The dense layout keeps a double
+ * for every word and label, see DenseLogThetaTable, and the sparse layout only
+ * the labels each word occurred with, see SparseLogThetaTable. The quantized
+ * layouts keep the full rows but store each log theta in one byte (int8) or
+ * two (int16) instead of eight, see QuantizedLogThetaTable.
+ * The layout is picked from the nlp.nbc.scoringLayout system property
+ * ("dense", "sparse", "int8" or "int16"), defaulting to dense
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class ScoringModel {
+
+	// System property which picks the layout
+	public static final String LAYOUT_PROPERTY = "nlp.nbc.scoringLayout";
+
+	// Layout used when none is asked for
+	private static final Layout DEFAULT_LAYOUT = parseLayout(System.getProperty(LAYOUT_PROPERTY, "dense"));
+
+	/**
+	 * How the log theta tables are stored
+	 */
+	public enum Layout {
+		// A double for every word and label
+		DENSE,
+		// A double for each label a word occurred with
+		SPARSE,
+		// A byte for every word and label
+		INT8,
+		// Two bytes for every word and label
+		INT16
+	}
+
+	// How the log theta tables are stored
+	private final Layout layout;
+
+	// Labels which can be predicted, indexed by label ID
+	private final String[] labels;
+
+	// Maps from label to its label ID
+	private final HashMap<String, Integer> labelIds = new HashMap<>();
+
+	// Maps from vocab word to its word ID
+	private final FeatureDictionary dictionary;
+
+	// Log10 theta of every word and label, laid out as the layout says
+	private final LogThetaTable table;
+
+	// Log10 theta of a vocab word that never occurred with each label
+	private final double[] unseenLogThetas;
+
+	// Log10 of the prior probability of each label
+	private final double[] logPriors;
+
+	// Lambda value used for smoothing
+	private final double lambda;
+
+	// Version of the trained model this was compiled from
+	private final long modelVersion;
+
+	// Adds up the rows of a tweet and finds the best label
+	private final ScoringKernel kernel;
+
+	/**
+	 * Constructor which compiles the counts of a trained model into log theta tables
+	 *
+	 * Note that a lambda value > 0 MUST be used to prevent log of 0 operations
+	 *
+	 * @param model The trained model whose counts are used
+	 * @param lambda The lambda value which is used to smooth the data
+	 */
+	public ScoringModel(ModelTrainer model, double lambda) {
+		this(model, lambda, ScoringKernel.getDefault());
+	}
+
+	/**
+	 * Constructor which compiles the counts of a trained model into
+	 * log theta tables, scoring with the given kernel
+	 *
+	 * @param model The trained model whose counts are used
+	 * @param lambda The lambda value which is used to smooth the data
+	 * @param kernel Adds up the rows of a tweet and finds the best label
+	 */
+	public ScoringModel(ModelTrainer model, double lambda, ScoringKernel kernel) {
+		this(model, lambda, kernel, DEFAULT_LAYOUT);
+	}
+
+	/**
+	 * Constructor which compiles the counts of a trained model into
+	 * log theta tables of the given layout
+	 *
+	 * @param model The trained model whose counts are used
+	 * @param lambda The lambda value which is used to smooth the data
+	 * @param kernel Adds up the rows of a tweet and finds the best label,
+	 * only its argmax is used with the sparse and quantized layouts
+	 * @param layout How the log theta tables are stored
+	 */
+	public ScoringModel(ModelTrainer model, double lambda, ScoringKernel kernel, Layout layout) {
+		this.lambda = lambda;
+		this.kernel = kernel;
+		this.layout = layout;
+
+		// The model can be updated while classifiers are running,
+		// so everything is copied out of it in one go
+		synchronized (model) {
+			modelVersion = model.getVersion();
+
+			// Sort labels so label IDs (and argmax ties) do not depend on hash order
+			List<String> sortedLabels = new ArrayList<>(model.getTrainingSetLabels());
+			Collections.sort(sortedLabels);
+			labels = sortedLabels.toArray(new String[0]);
+			for (int labelId = 0; labelId < labels.length; labelId++) {
+				labelIds.put(labels[labelId], labelId);
+			}
+
+			// Copy only the words still in the vocab, so words whose tweets
+			// were removed from the model go back to being unknown
+			FeatureDictionary modelDictionary = model.getDictionary();
+			dictionary = modelDictionary.emptyCopy();
+			int[] wordIds = new int[modelDictionary.size()];
+			for (int modelWordId = 0; modelWordId < wordIds.length; modelWordId++) {
+				wordIds[modelWordId] = model.isInVocab(modelWordId)
+						? dictionary.addFrom(modelDictionary, modelWordId) : -1;
+			}
+
+			int vocabSize = dictionary.size();
+			unseenLogThetas = new double[labels.length];
+			logPriors = new double[labels.length];
+			for (int labelId = 0; labelId < labels.length; labelId++) {
+				String label = labels[labelId];
+				double totalWordsInLabel = model.getLabelWordCounts().get(label) + (lambda * vocabSize);
+				unseenLogThetas[labelId] = Math.log10(lambda / totalWordsInLabel);
+				logPriors[labelId] = Math.log10(model.getLabelProbs().get(label));
+			}
+
+			// Maps the model's label IDs to the label IDs used here
+			int[] scoringLabelIds = new int[model.getLabelCount()];
+			double[] totalWordsInLabels = new double[model.getLabelCount()];
+			for (int modelLabelId = 0; modelLabelId < scoringLabelIds.length; modelLabelId++) {
+				String label = model.getLabel(modelLabelId);
+				scoringLabelIds[modelLabelId] = getLabelId(label);
+				Integer labelWordCount = model.getLabelWordCounts().get(label);
+				totalWordsInLabels[modelLabelId] = (labelWordCount == null ? 0 : labelWordCount) + (lambda * vocabSize);
+			}
+
+			// Log theta of the words still in the vocab with the labels which can be predicted
+			LogThetaTable.Entries entries = consumer -> model.getWordLabelCounts().forEach(
+					(modelWordId, modelLabelId, count) -> {
+						int labelId = scoringLabelIds[modelLabelId];
+						int wordId = wordIds[modelWordId];
+						if (labelId >= 0 && wordId >= 0) {
+							double wordCount = count + lambda;
+							consumer.accept(wordId, labelId, Math.log10(wordCount / totalWordsInLabels[modelLabelId]));
+						}
+					});
+			switch (layout) {
+			case SPARSE:
+				table = new SparseLogThetaTable(vocabSize, unseenLogThetas, entries);
+				break;
+			case INT8:
+				table = new QuantizedLogThetaTable.Int8(vocabSize, unseenLogThetas, entries);
+				break;
+			case INT16:
+				table = new QuantizedLogThetaTable.Int16(vocabSize, unseenLogThetas, entries);
+				break;
+			default:
+				table = new DenseLogThetaTable(vocabSize, unseenLogThetas, entries, kernel);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @param layout "dense", "sparse", "int8" or "int16"
+	 * @return The layout with that name
+	 * @throws IllegalArgumentException If there is no layout with that name
+	 */
+	private static Layout parseLayout(String layout) {
+		switch (layout) {
+		case "dense":
+			return Layout.DENSE;
+		case "sparse":
+			return Layout.SPARSE;
+		case "int8":
+			return Layout.INT8;
+		case "int16":
+			return Layout.INT16;
+		default:
+			throw new IllegalArgumentException("Unknown scoring layout: " + layout);
+		}
+	}
+
+	/**
+	 * Adds up the log probability of every label for a tweet
+	 *
+	 * @param tokenIds Word IDs of the tweet's tokens, repeated for repeated words
+	 * @param length How many entries of tokenIds to use
+	 * @return Log probability of each label, indexed by label ID
+	 */
+	public double[] score(int[] tokenIds, int length) {
+		return table.score(tokenIds, length, logPriors);
+	}
+
+	/**
+	 * Finds the label ID with the highest log probability
+	 *
+	 * @param logProbs Log probability of each label, indexed by label ID
+	 * @return The label ID with the maximum value
+	 */
+	public int argmax(double[] logProbs) {
+		return kernel.argmax(logProbs);
+	}
+
+	/**
+	 * @param word The word to look up
+	 * @return The word ID of the word, or -1 if it is not in the vocab
+	 */
+	public int getWordId(String word) {
+		return dictionary.getId(word);
+	}
+
+	/**
+	 * @param text Text holding the word
+	 * @param start Index of the first char of the word
+	 * @param end Index after the last char of the word
+	 * @return The word ID of the word, or -1 if it is not in the vocab
+	 */
+	public int getWordId(CharSequence text, int start, int end) {
+		return dictionary.getId(text, start, end);
+	}
+
+	/**
+	 * @param wordId ID of the word
+	 * @return The word with that ID, or null if the model was trained with the hashing trick
+	 */
+	public String getWord(int wordId) {
+		return dictionary.getWord(wordId);
+	}
+
+	/**
+	 * @param label The label to look up
+	 * @return The label ID of the label, or -1 if it can't be predicted
+	 */
+	public int getLabelId(String label) {
+		Integer labelId = labelIds.get(label);
+		return labelId == null ? -1 : labelId;
+	}
+
+	/**
+	 * @param labelId ID of the label
+	 * @return The label with that ID
+	 */
+	public String getLabel(int labelId) {
+		return labels[labelId];
+	}
+
+	/**
+	 * @return How many labels can be predicted
+	 */
+	public int getLabelCount() {
+		return labels.length;
+	}
+
+	/**
+	 * @return How many words are in the vocab
+	 */
+	public int getVocabSize() {
+		return dictionary.size();
+	}
+
+	/**
+	 * @param wordId ID of the word
+	 * @param labelId ID of the label
+	 * @return The log10 theta value for the given word and label
+	 */
+	public double getLogTheta(int wordId, int labelId) {
+		return table.getLogTheta(wordId, labelId);
+	}
+
+	/**
+	 * @return How the log theta tables are stored
+	 */
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return True if only the labels each word occurred with are kept
+	 */
+	public boolean isSparse() {
+		return layout == Layout.SPARSE;
+	}
+
+	/**
+	 * @return How many log theta values are stored, the vocab size times
+	 * the label count for all but the sparse layout
+	 */
+	public long getStoredValueCount() {
+		return table.getStoredValueCount();
+	}
+
+	/**
+	 * @return Rough bytes taken by the log theta tables, not counting the dictionary
+	 */
+	public long memoryBytes() {
+		return table.memoryBytes();
+	}
+
+	/**
+	 * @param labelId ID of the label
+	 * @return The log10 theta value of a vocab word that never occurred with the label
+	 */
+	public double getUnseenLogTheta(int labelId) {
+		return unseenLogThetas[labelId];
+	}
+
+	/**
+	 * @param labelId ID of the label
+	 * @return The log10 prior probability of the label
+	 */
+	public double getLogPrior(int labelId) {
+		return logPriors[labelId];
+	}
+
+	/**
+	 * @return The lambda value used for smoothing
+	 */
+	public double getLambda() {
+		return lambda;
+	}
+
+	/**
+	 * @return The kernel tweets are scored with
+	 */
+	public ScoringKernel getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * @return Version of the trained model when this was compiled, see ModelTrainer.getVersion
+	 */
+	public long getModelVersion() {
+		return modelVersion;
+	}
+}
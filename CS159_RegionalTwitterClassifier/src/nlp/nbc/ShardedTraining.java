@@ -0,0 +1,393 @@
+package nlp.nbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Trains a model on a tweets file split into shards, each trained on its own
+ * into a partial model file, possibly by separate processes or machines
+ * sharing a filesystem. The partial models are then added up by ModelMerger
+ * into the model trained on the whole file.
+ *
+ * Shards have a fixed size in bytes: shard i holds the lines starting from
+ * byte i * shardSize up to byte (i + 1) * shardSize, so the number of shards
+ * follows from the length of the file. Each partial model file is stamped with
+ * a fingerprint of the users and stoplist files, the tokenizer, the hashing
+ * trick, the shard's place in the file and a checksum of its bytes. Appending
+ * tweets to the file moves no boundary, so only the last shard and the new
+ * ones after it are trained again. A change in the middle of the file shifts
+ * the lines of every shard after it, so those are all trained again. Vocab
+ * pruning is done after the merge, since a word can be rare in every shard
+ * but not overall.
+ *
+ * Run from the command line as one of
+ *   shard users tweets stoplist shardDir shard shardSize [threads [tokenizer [hashBits]]]
+ *   merge users tweets stoplist shardDir shardSize modelFile [threads [tokenizer [hashBits]]]
+ *   run users tweets stoplist shardDir shardSize modelFile [processes [tokenizer [hashBits]]]
+ * where the shard size is in bytes, or with a k, m or g suffix, and run trains
+ * the stale shards in up to that many child processes and then merges. Merge
+ * and run must be given the tokenizer and hash bits the shards were trained
+ * with, which default to ptb and 0 in every mode
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class ShardedTraining {
+
+	// Size of the buffer the shards' bytes are read through
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final String usersFileName;
+	private final String stoplistFileName;
+
+	// Directory the partial model files are written to
+	private final String shardDirectory;
+
+	// How each shard is trained, and how the merged model is pruned
+	private final TrainingOptions options;
+
+	/**
+	 * Constructor which sets what the shards are trained with
+	 *
+	 * @param usersFileName Name of file containing twitter user IDs and locations
+	 * @param stoplistFileName Name of file containing words to exclude when processing
+	 * @param shardDirectory Directory the partial model files are written to
+	 * @param options How each shard is trained, and how the merged model is pruned
+	 */
+	public ShardedTraining(String usersFileName, String stoplistFileName, String shardDirectory,
+			TrainingOptions options) {
+		this.usersFileName = usersFileName;
+		this.stoplistFileName = stoplistFileName;
+		this.shardDirectory = shardDirectory;
+		this.options = options;
+	}
+
+	/**
+	 * Splits a file into shards of a fixed number of bytes, each moved on to
+	 * the next line start, so the boundaries don't depend on the file's length
+	 *
+	 * @param tweetsFileName Name of an uncompressed file containing tweets
+	 * @param shardSize Bytes of the file in each shard
+	 * @return Offset of the first line of each shard, and then the file length,
+	 * so shard i is from offsets[i] up to offsets[i + 1]. An empty file has one empty shard
+	 * @throws IOException If the file can't be read
+	 */
+	public static long[] shardOffsets(String tweetsFileName, long shardSize) throws IOException {
+		if (shardSize < 1) {
+			throw new IllegalArgumentException("Shards need at least 1 byte, not " + shardSize);
+		}
+		try (FileChannel file = FileChannel.open(Paths.get(tweetsFileName), StandardOpenOption.READ)) {
+			long length = file.size();
+			long count = Math.max(1, (length + shardSize - 1) / shardSize);
+			if (count > Integer.MAX_VALUE - 1) {
+				throw new IllegalArgumentException("Shards of " + shardSize + " bytes make too many shards");
+			}
+			int shardCount = (int) count;
+			long[] offsets = new long[shardCount + 1];
+			for (int shard = 1; shard < shardCount; shard++) {
+				offsets[shard] = Math.max(offsets[shard - 1], lineStartAtOrAfter(file, shard * shardSize));
+			}
+			offsets[shardCount] = length;
+			return offsets;
+		}
+	}
+
+	/**
+	 * Finds the first line starting at or after an offset, which is also where
+	 * TabRecordReader starts reading a range from that offset
+	 *
+	 * @param file The file
+	 * @param offset Offset in the file
+	 * @return Offset of the first line which starts at or after it, or the file length if there is none
+	 * @throws IOException If the file can't be read
+	 */
+	private static long lineStartAtOrAfter(FileChannel file, long offset) throws IOException {
+		if (offset == 0) {
+			return 0;
+		}
+
+		// A line starts after the first line break at or after the byte before
+		// the offset, counting \r\n as one line break
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+		long position = offset - 1;
+		boolean afterCarriageReturn = false;
+		while (true) {
+			buffer.clear();
+			int read = file.read(buffer, position);
+			if (read < 0) {
+				return file.size();
+			}
+			for (int i = 0; i < read; i++) {
+				byte b = buffer.get(i);
+				if (afterCarriageReturn) {
+					return b == '\n' ? position + i + 1 : position + i;
+				}
+				if (b == '\n') {
+					return position + i + 1;
+				}
+				afterCarriageReturn = b == '\r';
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * @param shard Number of the shard, from 0
+	 * @return Name of the partial model file of the shard, which doesn't depend
+	 * on how many shards there are, so appending to the file keeps it
+	 */
+	public String getShardFileName(int shard) {
+		return new File(shardDirectory, "shard-" + shard + ".model").getPath();
+	}
+
+	/**
+	 * Gives the fingerprint a shard's partial model file is stamped with, which
+	 * changes when the shard's bytes or anything else it is trained with change
+	 *
+	 * @param tweetsFileName Name of the tweets file
+	 * @param offsets Offsets of the shards, from shardOffsets
+	 * @param shard Number of the shard, from 0
+	 * @return The fingerprint
+	 * @throws IOException If the file can't be read
+	 */
+	public long shardFingerprint(String tweetsFileName, long[] offsets, int shard) throws IOException {
+		CRC32 checksum = new CRC32();
+		try (FileChannel file = FileChannel.open(Paths.get(tweetsFileName), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			long position = offsets[shard];
+			while (position < offsets[shard + 1]) {
+				buffer.clear();
+				buffer.limit((int) Math.min(BUFFER_SIZE, offsets[shard + 1] - position));
+				int read = file.read(buffer, position);
+				if (read < 0) {
+					throw new IOException(tweetsFileName + " changed while it was read");
+				}
+				buffer.flip();
+				checksum.update(buffer);
+				position += read;
+			}
+		}
+
+		long hash = ModelFile.fingerprint(usersFileName, stoplistFileName);
+		hash = 31 * hash + options.getTokenizer().getName().hashCode();
+		hash = 31 * hash + options.getHashBits();
+		hash = 31 * hash + offsets[shard];
+		hash = 31 * hash + (offsets[shard + 1] - offsets[shard]);
+		hash = 31 * hash + checksum.getValue();
+		return hash;
+	}
+
+	/**
+	 * @param tweetsFileName Name of the tweets file
+	 * @param offsets Offsets of the shards, from shardOffsets
+	 * @return Numbers of the shards whose partial model file is missing or was trained from something else
+	 * @throws IOException If the tweets file can't be read
+	 */
+	public List<Integer> staleShards(String tweetsFileName, long[] offsets) throws IOException {
+		int shardCount = offsets.length - 1;
+		List<Integer> stale = new ArrayList<>();
+		for (int shard = 0; shard < shardCount; shard++) {
+			long expected = shardFingerprint(tweetsFileName, offsets, shard);
+			try {
+				if (ModelFile.readFingerprint(getShardFileName(shard)) == expected) {
+					continue;
+				}
+			} catch (IOException e) {
+				// Missing or unreadable, so it is trained again
+			}
+			stale.add(shard);
+		}
+		return stale;
+	}
+
+	/**
+	 * Trains one shard of a tweets file and writes its partial model file
+	 *
+	 * @param tweetsFileName Name of an uncompressed file containing tweets
+	 * @param shard Number of the shard, from 0
+	 * @param shardSize Bytes of the file in each shard
+	 * @throws IOException If a file can't be read or written
+	 * @throws IllegalArgumentException If the file has no such shard
+	 */
+	public void trainShard(String tweetsFileName, int shard, long shardSize) throws IOException {
+		long[] offsets = shardOffsets(tweetsFileName, shardSize);
+		if (shard < 0 || shard >= offsets.length - 1) {
+			throw new IllegalArgumentException(tweetsFileName + " has " + (offsets.length - 1) + " shards, not shard " + shard);
+		}
+		long fingerprint = shardFingerprint(tweetsFileName, offsets, shard);
+
+		ModelTrainer model = new ModelTrainer();
+		model.setOptions(options);
+		model.readUsersAndStoplist(usersFileName, stoplistFileName);
+		model.addTweets(tweetsFileName, offsets[shard], offsets[shard + 1]);
+		new File(shardDirectory).mkdirs();
+		model.saveModel(getShardFileName(shard), fingerprint);
+	}
+
+	/**
+	 * Merges the partial model files of every shard into the model of the whole
+	 * file, prunes it as the options say and writes it to a model file
+	 *
+	 * @param tweetsFileName Name of the tweets file
+	 * @param shardSize Bytes of the file in each shard
+	 * @param modelFileName Name of the model file to write
+	 * @param numThreads How many partial models are loaded or merged at once
+	 * @return The merged model
+	 * @throws IOException If a shard is missing or stale, for example trained with a different
+	 * tokenizer or hash bits than the options, or a file can't be read or written
+	 */
+	public ModelTrainer merge(String tweetsFileName, long shardSize, String modelFileName, int numThreads)
+			throws IOException {
+		long[] offsets = shardOffsets(tweetsFileName, shardSize);
+		List<Integer> stale = staleShards(tweetsFileName, offsets);
+		if (!stale.isEmpty()) {
+			throw new IOException("Shards " + stale + " are missing or out of date, or were trained with a tokenizer"
+					+ " or hash bits other than " + options.getTokenizer().getName() + " and " + options.getHashBits());
+		}
+
+		List<String> shardFileNames = new ArrayList<>();
+		for (int shard = 0; shard < offsets.length - 1; shard++) {
+			shardFileNames.add(getShardFileName(shard));
+		}
+		ModelTrainer model = new ModelMerger(numThreads).merge(shardFileNames);
+		if (options.prunesVocab()) {
+			model.pruneVocab(options.getMinWordCount(), options.getMinDocumentFrequency(), options.getMaxVocabSize());
+		}
+		model.saveModel(modelFileName, ModelFile.fingerprint(usersFileName, tweetsFileName, stoplistFileName));
+		return model;
+	}
+
+	/**
+	 * Trains every stale shard in a child process of its own, running up to
+	 * the given number at once, then merges them in this process. The children
+	 * train with the tokenizer, hash bits and thread count of the options
+	 *
+	 * @param tweetsFileName Name of an uncompressed file containing tweets
+	 * @param shardSize Bytes of the file in each shard
+	 * @param modelFileName Name of the model file to write
+	 * @param processes How many child processes run at once, also how many threads merge
+	 * @return The merged model
+	 * @throws IOException If a child process fails, or a file can't be read or written
+	 */
+	public ModelTrainer run(String tweetsFileName, long shardSize, String modelFileName, int processes)
+			throws IOException {
+		long[] offsets = shardOffsets(tweetsFileName, shardSize);
+		int shardCount = offsets.length - 1;
+		List<Integer> stale = staleShards(tweetsFileName, offsets);
+		System.out.println("Training " + stale.size() + " of " + shardCount + " shards");
+
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(processes, stale.size())));
+		try {
+			List<Future<Integer>> exitCodes = new ArrayList<>();
+			for (int shard : stale) {
+				List<String> command = Arrays.asList(java, "-Dfile.encoding=" + Charset.defaultCharset().name(),
+						"-cp", System.getProperty("java.class.path"), ShardedTraining.class.getName(), "shard",
+						usersFileName, tweetsFileName, stoplistFileName, shardDirectory,
+						Integer.toString(shard), Long.toString(shardSize),
+						Integer.toString(options.getNumThreads()), options.getTokenizer().getName(),
+						Integer.toString(options.getHashBits()));
+				exitCodes.add(executor.submit(() -> new ProcessBuilder(command).inheritIO().start().waitFor()));
+			}
+			for (int i = 0; i < stale.size(); i++) {
+				int exitCode = exitCodes.get(i).get();
+				if (exitCode != 0) {
+					throw new IOException("Training shard " + stale.get(i) + " failed with exit code " + exitCode);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while training shards", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Couldn't start a process to train a shard", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+
+		return merge(tweetsFileName, shardSize, modelFileName, processes);
+	}
+
+	/**
+	 * @param size Number of bytes, optionally followed by k, m or g for KB, MB or GB
+	 * @return The number of bytes
+	 * @throws NumberFormatException If the size isn't a number with one of those suffixes
+	 */
+	static long parseSize(String size) {
+		String lower = size.toLowerCase();
+		int shift = lower.endsWith("k") ? 10 : lower.endsWith("m") ? 20 : lower.endsWith("g") ? 30 : 0;
+		String number = shift == 0 ? lower : lower.substring(0, lower.length() - 1);
+		return Long.parseLong(number) << shift;
+	}
+
+	/**
+	 * Main method for training a shard, merging shards, or doing both
+	 *
+	 * @param args See the class comment
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 6) {
+			System.err.println("Usage: ShardedTraining shard users tweets stoplist shardDir shard shardSize"
+					+ " [threads [tokenizer [hashBits]]]");
+			System.err.println("       ShardedTraining merge users tweets stoplist shardDir shardSize modelFile"
+					+ " [threads [tokenizer [hashBits]]]");
+			System.err.println("       ShardedTraining run users tweets stoplist shardDir shardSize modelFile"
+					+ " [processes [tokenizer [hashBits]]]");
+			System.exit(2);
+		}
+		String mode = args[0];
+		String usersFileName = args[1];
+		String tweetsFileName = args[2];
+		String stoplistFileName = args[3];
+		String shardDirectory = args[4];
+		int cores = Runtime.getRuntime().availableProcessors();
+		long start = System.nanoTime();
+
+		switch (mode) {
+		case "shard": {
+			int shard = Integer.parseInt(args[5]);
+			long shardSize = parseSize(args[6]);
+			TrainingOptions options = new TrainingOptions()
+					.setNumThreads(args.length > 7 ? Integer.parseInt(args[7]) : 1)
+					.setTokenizer(TweetTokenizer.forName(args.length > 8 ? args[8] : "ptb"))
+					.setHashBits(args.length > 9 ? Integer.parseInt(args[9]) : 0);
+			new ShardedTraining(usersFileName, stoplistFileName, shardDirectory, options)
+					.trainShard(tweetsFileName, shard, shardSize);
+			System.out.printf("Trained shard %d in %.1f s%n", shard, (System.nanoTime() - start) / 1e9);
+			break;
+		}
+		case "merge":
+		case "run": {
+			long shardSize = parseSize(args[5]);
+			String modelFileName = args[6];
+			int threads = args.length > 7 ? Integer.parseInt(args[7]) : cores;
+			TrainingOptions options = new TrainingOptions()
+					.setTokenizer(TweetTokenizer.forName(args.length > 8 ? args[8] : "ptb"))
+					.setHashBits(args.length > 9 ? Integer.parseInt(args[9]) : 0);
+			ShardedTraining training = new ShardedTraining(usersFileName, stoplistFileName, shardDirectory, options);
+			ModelTrainer model = mode.equals("run")
+					? training.run(tweetsFileName, shardSize, modelFileName, threads)
+					: training.merge(tweetsFileName, shardSize, modelFileName, threads);
+			System.out.printf("Wrote %s with %d words in %.1f s%n", modelFileName, model.getVocab().size(),
+					(System.nanoTime() - start) / 1e9);
+			break;
+		}
+		default:
+			throw new IllegalArgumentException("Unknown mode: " + mode);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package nlp.nbc;
+
+import java.util.Arrays;
+
+/**
+ * Log theta table keeping only the labels each word occurred with. Most
+ * words only occur with a few labels, and every other entry of their row is
+ * just the label's unseen value. Each entry is kept as its log theta minus
+ * the label's unseen log theta, so a tweet costs one unseen value per token
+ * and label added in one multiply, plus the entries of the labels its words
+ * occurred with.
+ *
+ * Summing in that order rounds differently than adding up the rows, so the
+ * labels within rounding distance of the best one are added up again the way
+ * DenseLogThetaTable does it. The best label and its log probability come out
+ * exactly the same as with the dense table, while the other labels may differ
+ * in the last few digits
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+class SparseLogThetaTable implements LogThetaTable {
+
+	// How far below the best sum, relative to its size, a label is added up again
+	// exactly. Rounding differences are around 1e-15 of the score, so this leaves a wide margin
+	private static final double RESCORE_TOLERANCE = 1e-9;
+
+	// Where each word's entries start, so the entries of a word
+	// are rowStarts[wordId] up to rowStarts[wordId + 1]
+	private final int[] rowStarts;
+
+	// Label ID of each entry, in increasing order within a word
+	private final int[] entryLabelIds;
+
+	// Log10 theta of each entry
+	private final double[] entryLogThetas;
+
+	// Log10 theta of each entry minus the unseen log10 theta of its label
+	private final double[] entryDeltas;
+
+	// Log10 theta of a word that never occurred with each label
+	private final double[] unseenLogThetas;
+
+	/**
+	 * Constructor which lays out the entries one word after another
+	 *
+	 * @param vocabSize How many words there are
+	 * @param unseenLogThetas Log10 theta of a word that never occurred with each label
+	 * @param entries Log theta of the words that occurred with each label
+	 */
+	SparseLogThetaTable(int vocabSize, double[] unseenLogThetas, Entries entries) {
+		this.unseenLogThetas = unseenLogThetas;
+
+		// Counts the entries of each word first, so they can be laid out one word after another
+		rowStarts = new int[vocabSize + 1];
+		entries.forEach((wordId, labelId, logTheta) -> rowStarts[wordId + 1]++);
+		for (int wordId = 0; wordId < vocabSize; wordId++) {
+			rowStarts[wordId + 1] += rowStarts[wordId];
+		}
+		entryLabelIds = new int[rowStarts[vocabSize]];
+		entryLogThetas = new double[entryLabelIds.length];
+		entryDeltas = new double[entryLabelIds.length];
+
+		int[] nextEntries = Arrays.copyOf(rowStarts, vocabSize);
+		entries.forEach((wordId, labelId, logTheta) -> {
+			int entry = nextEntries[wordId]++;
+			entryLabelIds[entry] = labelId;
+			entryLogThetas[entry] = logTheta;
+		});
+		for (int wordId = 0; wordId < vocabSize; wordId++) {
+			sortEntries(rowStarts[wordId], rowStarts[wordId + 1]);
+		}
+		for (int entry = 0; entry < entryLabelIds.length; entry++) {
+			entryDeltas[entry] = entryLogThetas[entry] - unseenLogThetas[entryLabelIds[entry]];
+		}
+	}
+
+	/**
+	 * Insertion sort of the entries of one word by label ID, since a word has few entries
+	 */
+	private void sortEntries(int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			int labelId = entryLabelIds[i];
+			double logTheta = entryLogThetas[i];
+			int j = i - 1;
+			for (; j >= from && entryLabelIds[j] > labelId; j--) {
+				entryLabelIds[j + 1] = entryLabelIds[j];
+				entryLogThetas[j + 1] = entryLogThetas[j];
+			}
+			entryLabelIds[j + 1] = labelId;
+			entryLogThetas[j + 1] = logTheta;
+		}
+	}
+
+	@Override
+	public double[] score(int[] tokenIds, int length, double[] logPriors) {
+		// Every token adds the unseen value of each label, and then
+		// the difference for the labels its word occurred with
+		double[] logProbSums = new double[unseenLogThetas.length];
+		for (int i = 0; i < length; i++) {
+			int wordId = tokenIds[i];
+			for (int entry = rowStarts[wordId]; entry < rowStarts[wordId + 1]; entry++) {
+				logProbSums[entryLabelIds[entry]] += entryDeltas[entry];
+			}
+		}
+		double max = Double.NEGATIVE_INFINITY;
+		for (int labelId = 0; labelId < logProbSums.length; labelId++) {
+			logProbSums[labelId] += length * unseenLogThetas[labelId] + logPriors[labelId];
+			max = Math.max(max, logProbSums[labelId]);
+		}
+		rescoreNearBest(tokenIds, length, logPriors, logProbSums, max);
+		return logProbSums;
+	}
+
+	/**
+	 * Adds up again, in token order as the dense kernels do, the labels close
+	 * enough to the best that rounding could change which one is best
+	 *
+	 * @param tokenIds Word IDs of the tweet's tokens
+	 * @param length How many entries of tokenIds to use
+	 * @param logPriors Log10 prior probability of each label
+	 * @param logProbSums Sums of each label, the close ones are replaced
+	 * @param max The best of the sums
+	 */
+	private void rescoreNearBest(int[] tokenIds, int length, double[] logPriors, double[] logProbSums, double max) {
+		double threshold = max - RESCORE_TOLERANCE * (1 + Math.abs(max));
+		for (int labelId = 0; labelId < logProbSums.length; labelId++) {
+			if (logProbSums[labelId] >= threshold) {
+				double logProbSum = 0;
+				for (int i = 0; i < length; i++) {
+					logProbSum += getLogTheta(tokenIds[i], labelId);
+				}
+				logProbSums[labelId] = logProbSum + logPriors[labelId];
+			}
+		}
+	}
+
+	@Override
+	public double getLogTheta(int wordId, int labelId) {
+		int entry = Arrays.binarySearch(entryLabelIds, rowStarts[wordId], rowStarts[wordId + 1], labelId);
+		return entry >= 0 ? entryLogThetas[entry] : unseenLogThetas[labelId];
+	}
+
+	@Override
+	public long getStoredValueCount() {
+		return entryLabelIds.length;
+	}
+
+	@Override
+	public long memoryBytes() {
+		return 4L * rowStarts.length + 20L * entryLabelIds.length;
+	}
+}
@@ -0,0 +1,127 @@
+package nlp.nbc;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Classifies an endless stream of tweets, such as a feed piped into stdin,
+ * writing the predictions out as they are made and printing the accuracy
+ * every few seconds, both overall and since the last report, so a long
+ * run can be watched as it goes. See Classifier.classifyStream for how the
+ * stream is batched and how a slow reader of the output holds up the input.
+ *
+ * For example
+ *   zcat feed.gz | java nlp.nbc.StreamingClassifier model 2> stats.log | downstream
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class StreamingClassifier {
+
+	// Counts the lines read, including ones with no prediction
+	private static final MetricsRegistry.Counter LINES = MetricsRegistry.getDefault().counter("classify.lines");
+
+	private final Classifier classifier;
+	private final long reportNanos;
+	private final PrintStream statsOut;
+	private final long startNanos = System.nanoTime();
+
+	// Counts at the last report, only used by the thread classifying
+	private long lastNanos = startNanos;
+	private long lastLines = LINES.get();
+	private long lastCorrect;
+	private long lastTotal;
+
+	/**
+	 * Constructor which sets how the accuracy is reported
+	 *
+	 * @param classifier Classifier used to predict the labels, whose accuracy counts go on from where they are
+	 * @param reportSeconds Seconds between reports
+	 * @param statsOut Where the reports are printed
+	 */
+	public StreamingClassifier(Classifier classifier, long reportSeconds, PrintStream statsOut) {
+		this.classifier = classifier;
+		this.reportNanos = reportSeconds * 1000000000L;
+		this.statsOut = statsOut;
+		this.lastCorrect = classifier.getAccuracy().getCorrectCount();
+		this.lastTotal = classifier.getAccuracy().getTotalPredictions();
+	}
+
+	/**
+	 * Classifies every tweet of a stream, printing a report every few
+	 * seconds while batches are being written and a last one at the end
+	 *
+	 * @param in Stream of test tweets, decompressed if it is gzipped
+	 * @param out Stream the predictions are written to
+	 * @param numThreads How many threads tokenize and score tweets
+	 * @param batchSize Most lines put in one batch
+	 * @throws IOException If the input can't be read or the output can't be written
+	 */
+	public void classify(InputStream in, OutputStream out, int numThreads, int batchSize) throws IOException {
+		classifier.classifyStream(in, out, numThreads, batchSize, () -> {
+			if (System.nanoTime() - lastNanos >= reportNanos) {
+				report();
+			}
+		});
+		report();
+	}
+
+	/**
+	 * Prints the lines read so far and their rate, and the accuracy overall and since the last report
+	 */
+	private void report() {
+		long now = System.nanoTime();
+		long lines = LINES.get();
+		AccuracyTracker accuracy = classifier.getAccuracy();
+		long correct = accuracy.getCorrectCount();
+		long total = accuracy.getTotalPredictions();
+		statsOut.printf("[%6.0fs] %,d lines  %,.0f lines/sec  accuracy %.4f, %.4f over the last %,d  majority %.4f%n",
+				(now - startNanos) / 1e9, lines, (lines - lastLines) / ((now - lastNanos) / 1e9),
+				ratio(correct, total), ratio(correct - lastCorrect, total - lastTotal), total - lastTotal,
+				ratio(accuracy.getCorrectMajorityCount(), total));
+		lastNanos = now;
+		lastLines = lines;
+		lastCorrect = correct;
+		lastTotal = total;
+	}
+
+	/**
+	 * @return The fraction, or 0 if there is nothing to divide by
+	 */
+	private static double ratio(long count, long total) {
+		return total == 0 ? 0 : (double) count / total;
+	}
+
+	/**
+	 * Main method which loads a saved model and classifies stdin to stdout
+	 * until stdin ends, printing reports to stderr
+	 *
+	 * @param args The model file, and optionally the lambda value, the number
+	 * of threads, the batch size and the seconds between reports
+	 * @throws IOException If the model can't be loaded
+	 */
+	public static void main(String[] args) throws IOException {
+		String modelFileName = args.length > 0 ? args[0] : "data/training_set_tweets_3mil.model";
+		double lambda = args.length > 1 ? Double.parseDouble(args[1]) : 0.01;
+		int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+		long reportSeconds = args.length > 4 ? Long.parseLong(args[4]) : 10;
+
+		Classifier classifier = new Classifier(ModelTrainer.loadModel(modelFileName), lambda);
+		StreamingClassifier streaming = new StreamingClassifier(classifier, reportSeconds, System.err);
+
+		// Written straight to the file descriptor, since System.out hides write errors
+		// and the run should stop when whatever reads the output goes away
+		try (OutputStream out = new FileOutputStream(FileDescriptor.out)) {
+			streaming.classify(System.in, out, numThreads, batchSize);
+		} catch (IOException e) {
+			System.err.println("Stopped: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
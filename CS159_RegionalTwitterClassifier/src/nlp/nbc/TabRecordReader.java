@@ -0,0 +1,424 @@
+package nlp.nbc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader for the tab separated data files (tweets and users).
+ * Reads the file through a large NIO buffer and finds the fields of each
+ * line as offsets into it, so only the fields asked for are turned into
+ * Strings and IDs are checked without regexes. Files starting with the
+ * gzip magic number are decompressed as they are read.
+ *
+ * Lines and fields come out the same as BufferedReader.readLine followed
+ * by split("\t"): lines end at \n, \r or \r\n, and empty fields at the
+ * end of a line are dropped. Fields are decoded with the platform's default
+ * charset, as FileReader does.
+ *
+ * A reader can also be limited to the lines which start in a byte range of
+ * an uncompressed file. Splitting a file at any byte offsets then gives
+ * every line to exactly one range, so ranges can be read by separate processes.
+ *
+ * A reader can read any InputStream too, such as stdin in a pipeline.
+ * Lines are handed out as soon as they have arrived in full, rather than
+ * once the buffer is full
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class TabRecordReader implements Closeable {
+
+	// Size of the read buffer, which grows if a single line is longer
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	// First two bytes of every gzip file
+	private static final int GZIP_MAGIC_0 = 0x1f;
+	private static final int GZIP_MAGIC_1 = 0x8b;
+
+	private final ReadableByteChannel channel;
+
+	// Charset fields are decoded with
+	private final Charset charset = Charset.defaultCharset();
+
+	// Bytes read from the file, valid from 0 up to limit
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int limit = 0;
+	private boolean endOfFile = false;
+
+	// Where the next line starts, and whether it has to skip
+	// the \n of a \r\n split across two reads
+	private int position = 0;
+	private boolean skipLineFeed = false;
+
+	// Offset in the file of buffer[0], and the offset lines have to start before
+	private long bufferOffset = 0;
+	private long endOffset = Long.MAX_VALUE;
+
+	// Offsets of the current line's fields, field i runs from
+	// fieldStarts[i] up to fieldEnds[i]
+	private int[] fieldStarts = new int[8];
+	private int[] fieldEnds = new int[8];
+	private int fieldCount = 0;
+
+	// Handed out by getFieldChars, pointed at a different field each call
+	private final ByteChars fieldChars = new ByteChars();
+
+	/**
+	 * Opens a data file, decompressing it if it is gzipped
+	 *
+	 * @param fileName Name of the file to read
+	 * @throws IOException If the file can't be opened
+	 */
+	public TabRecordReader(String fileName) throws IOException {
+		FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(2);
+			while (magic.hasRemaining() && file.read(magic) >= 0) {
+				// Keep reading until both bytes are in or the file ends
+			}
+			file.position(0);
+			if (magic.position() == 2 && (magic.get(0) & 0xff) == GZIP_MAGIC_0 && (magic.get(1) & 0xff) == GZIP_MAGIC_1) {
+				channel = Channels.newChannel(new GZIPInputStream(Channels.newInputStream(file), 1 << 16));
+			} else {
+				channel = file;
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads data from a stream, decompressing it if it is gzipped. Closing
+	 * the reader closes the stream
+	 *
+	 * @param in Stream to read
+	 * @throws IOException If the start of the stream can't be read
+	 */
+	public TabRecordReader(InputStream in) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		byte[] magic = new byte[2];
+		int read = 0;
+		while (read < magic.length) {
+			int count = pushback.read(magic, read, magic.length - read);
+			if (count < 0) {
+				break;
+			}
+			read += count;
+		}
+		pushback.unread(magic, 0, read);
+		if (read == 2 && (magic[0] & 0xff) == GZIP_MAGIC_0 && (magic[1] & 0xff) == GZIP_MAGIC_1) {
+			channel = Channels.newChannel(new GZIPInputStream(pushback, 1 << 16));
+		} else {
+			channel = Channels.newChannel(pushback);
+		}
+	}
+
+	/**
+	 * Opens an uncompressed data file for only the lines which start at
+	 * or after one byte offset and before another
+	 *
+	 * @param fileName Name of the file to read
+	 * @param startOffset Offset of the first byte of the range
+	 * @param endOffset Offset after the last byte of the range
+	 * @throws IOException If the file can't be opened or is gzipped
+	 */
+	public TabRecordReader(String fileName, long startOffset, long endOffset) throws IOException {
+		this(fileName);
+		if (startOffset > 0 || endOffset < Long.MAX_VALUE) {
+			if (!(channel instanceof FileChannel)) {
+				channel.close();
+				throw new IOException("Can't read a byte range of gzipped file " + fileName);
+			}
+		}
+		if (startOffset > 0) {
+			// Starts one byte early and drops everything up to the first line
+			// break, which leaves the reader at the first line starting in range
+			((FileChannel) channel).position(startOffset - 1);
+			bufferOffset = startOffset - 1;
+			next();
+		}
+		this.endOffset = endOffset;
+	}
+
+	/**
+	 * Moves to the next line of the file
+	 *
+	 * @return False if there are no more lines
+	 * @throws IOException If the file can't be read
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (skipLineFeed && position < limit) {
+				if (buffer[position] == '\n') {
+					position++;
+				}
+				skipLineFeed = false;
+			}
+			if (!skipLineFeed && bufferOffset + position >= endOffset) {
+				fieldCount = 0;
+				return false;
+			}
+
+			// Scan for the end of the line, noting where the tabs are
+			int lineStart = position;
+			int fieldStart = lineStart;
+			fieldCount = 0;
+			for (int i = lineStart; i < limit; i++) {
+				byte b = buffer[i];
+				if (b == '\t') {
+					addField(fieldStart, i);
+					fieldStart = i + 1;
+				} else if (b == '\n' || b == '\r') {
+					addField(fieldStart, i);
+					position = i + 1;
+					skipLineFeed = b == '\r';
+					trimFields();
+					return true;
+				}
+			}
+
+			if (endOfFile) {
+				if (lineStart == limit) {
+					return false;
+				}
+				// Last line of the file has no line break
+				addField(fieldStart, limit);
+				position = limit;
+				trimFields();
+				return true;
+			}
+			fill(lineStart);
+		}
+	}
+
+	/**
+	 * Says whether next can move on without waiting for more input, which
+	 * only matters when reading a stream that data trickles in on
+	 *
+	 * @return True if the next line has already been read in full, or the input has ended
+	 */
+	public boolean hasBufferedLine() {
+		if (endOfFile) {
+			return true;
+		}
+		int start = skipLineFeed && position < limit && buffer[position] == '\n' ? position + 1 : position;
+		for (int i = start; i < limit; i++) {
+			if (buffer[i] == '\n' || buffer[i] == '\r') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the unfinished line to the front of the buffer and reads more after it
+	 *
+	 * @param lineStart Where the unfinished line starts
+	 * @throws IOException If the file can't be read
+	 */
+	private void fill(int lineStart) throws IOException {
+		int kept = limit - lineStart;
+		if (lineStart == 0 && kept == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		} else {
+			System.arraycopy(buffer, lineStart, buffer, 0, kept);
+			bufferOffset += lineStart;
+		}
+		position = 0;
+		limit = kept;
+
+		ByteBuffer target = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+		int read = channel.read(target);
+		while (read == 0) {
+			read = channel.read(target);
+		}
+		if (read < 0) {
+			endOfFile = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	/**
+	 * Notes where a field of the current line is
+	 */
+	private void addField(int start, int end) {
+		if (fieldCount == fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+			fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldCount++;
+	}
+
+	/**
+	 * Drops empty fields from the end of the line, like split does.
+	 * A line with no tabs is always one field, even if empty
+	 */
+	private void trimFields() {
+		if (fieldCount > 1) {
+			while (fieldCount > 0 && fieldStarts[fieldCount - 1] == fieldEnds[fieldCount - 1]) {
+				fieldCount--;
+			}
+		}
+	}
+
+	/**
+	 * @return How many fields the current line has
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @param field Index of the field
+	 * @return The text of the field in the current line
+	 * @throws IndexOutOfBoundsException If the line doesn't have that many fields
+	 */
+	public String getField(int field) {
+		checkField(field);
+		return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], charset);
+	}
+
+	/**
+	 * Gives a field without decoding it or making a String, for matching
+	 * against ASCII text. Each byte is one char, so bytes outside ASCII come
+	 * out as Latin-1 chars whatever the file's charset
+	 * 
+	 * @param field Index of the field
+	 * @return The bytes of the field as chars, only valid until the next line is read
+	 * @throws IndexOutOfBoundsException If the line doesn't have that many fields
+	 */
+	public CharSequence getFieldChars(int field) {
+		checkField(field);
+		fieldChars.start = fieldStarts[field];
+		fieldChars.end = fieldEnds[field];
+		return fieldChars;
+	}
+
+	/**
+	 * Reusable view of a span of the read buffer as chars
+	 */
+	private class ByteChars implements CharSequence {
+		int start;
+		int end;
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer[start + index] & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().substring(from, to);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	/**
+	 * @param field Index of the field
+	 * @return True if the field is one or more ASCII digits
+	 * @throws IndexOutOfBoundsException If the line doesn't have that many fields
+	 */
+	public boolean isNumericField(int field) {
+		checkField(field);
+		int end = fieldEnds[field];
+		if (fieldStarts[field] == end) {
+			return false;
+		}
+		for (int i = fieldStarts[field]; i < end; i++) {
+			if (buffer[i] < '0' || buffer[i] > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void checkField(int field) {
+		if (field < 0 || field >= fieldCount) {
+			throw new IndexOutOfBoundsException("Line has " + fieldCount + " fields, no field " + field);
+		}
+	}
+
+	/**
+	 * @return True if the current line is a properly formatted tweet, with
+	 * four fields of which the first two (user ID and tweet ID) are numeric
+	 */
+	public boolean isTweetLine() {
+		return fieldCount == 4 && isNumericField(0) && isNumericField(1);
+	}
+
+	/**
+	 * @return The current line as a tweet, which is malformed if isTweetLine is false
+	 */
+	public TweetRecord getTweet() {
+		return isTweetLine() ? new TweetRecord(getField(0), getField(2)) : TweetRecord.MALFORMED;
+	}
+
+	/**
+	 * Gives the remaining lines as tweets, one record per line. Like
+	 * BufferedReader.lines, read errors are thrown as UncheckedIOException
+	 *
+	 * @return Iterator over the rest of the file's lines
+	 */
+	public Iterator<TweetRecord> tweets() {
+		return new Iterator<TweetRecord>() {
+			private boolean hasLine = false;
+			private boolean done = false;
+
+			@Override
+			public boolean hasNext() {
+				if (!hasLine && !done) {
+					try {
+						hasLine = TabRecordReader.this.next();
+						done = !hasLine;
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return hasLine;
+			}
+
+			@Override
+			public TweetRecord next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				hasLine = false;
+				return getTweet();
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
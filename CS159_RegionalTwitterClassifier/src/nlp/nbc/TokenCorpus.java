@@ -0,0 +1,638 @@
+package nlp.nbc;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A tweets file tokenized once and saved as word IDs, so training and
+ * classifying the same file again skips the tokenizer. Every line of the
+ * source file has a record, so output can still have one line per input line.
+ * A record holds the user, the word IDs of the lower-cased tweet that pass the
+ * stoplist and filter, as training counts them, and the word IDs of the tweet
+ * as it is, as classifying looks them up.
+ *
+ * The file starts with a header of the magic number, the version, a fingerprint
+ * of the source file, stoplist, tokenizer and charset, the offset of the string
+ * tables and the number of lines. The records follow as varints: user index + 1
+ * (0 for a malformed line, which has nothing else), stopped and filtered token
+ * counts, then the training word IDs and the tweet's word IDs, each prefixed by
+ * their count. The user and word string tables come last, as they are only
+ * complete once every line has been read. Records are read back in order through
+ * a small NIO buffer.
+ *
+ * open checks the fingerprint and rebuilds the file whenever it doesn't match,
+ * so a changed source file, stoplist or tokenizer never gives stale tokens
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class TokenCorpus implements Closeable {
+
+	// Marks a file as a token corpus, spells "NBCT"
+	private static final int MAGIC = 0x4E424354;
+
+	// Bump whenever the layout, the lower-casing or the filter changes
+	public static final int VERSION = 1;
+
+	// Bytes taken by the magic, version, fingerprint, string table offset and line count
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+	// Size of the read buffer
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// How many source lines each thread tokenizes at a time when building
+	private static final int BATCH_SIZE = 1000;
+
+	// Ending added to the source file's name to name its corpus
+	private static final String SUFFIX = ".tokens";
+
+	private static final MetricsRegistry.Counter CACHE_HITS = MetricsRegistry.getDefault().counter("tokenCache.hits");
+	private static final MetricsRegistry.Counter CACHE_BUILDS = MetricsRegistry.getDefault().counter("tokenCache.builds");
+
+	/**
+	 * One line of the source file as word IDs of the corpus
+	 */
+	public static final class Tweet {
+		// Twitter user ID of the tweet's author, null if malformed
+		private final String userID;
+
+		// Word IDs of the lower-cased tweet's tokens which training counts
+		private final int[] trainingTokens;
+
+		// Word IDs of the tweet's tokens as classifying sees them
+		private final int[] tokens;
+
+		// Tokens of the lower-cased tweet left out by the stoplist and the filter
+		private final int stoppedTokens;
+		private final int filteredTokens;
+
+		Tweet(String userID, int[] trainingTokens, int[] tokens, int stoppedTokens, int filteredTokens) {
+			this.userID = userID;
+			this.trainingTokens = trainingTokens;
+			this.tokens = tokens;
+			this.stoppedTokens = stoppedTokens;
+			this.filteredTokens = filteredTokens;
+		}
+
+		/**
+		 * @return True if the line was a properly formatted tweet
+		 */
+		public boolean isWellFormed() {
+			return userID != null;
+		}
+
+		/**
+		 * @return Twitter user ID of the tweet's author
+		 */
+		public String getUserID() {
+			return userID;
+		}
+
+		/**
+		 * @return Word IDs of the tokens training counts, in order
+		 */
+		public int[] getTrainingTokens() {
+			return trainingTokens;
+		}
+
+		/**
+		 * @return Word IDs of the tokens classifying looks up, in order
+		 */
+		public int[] getTokens() {
+			return tokens;
+		}
+
+		/**
+		 * @return How many tokens the stoplist left out of training
+		 */
+		public int getStoppedTokens() {
+			return stoppedTokens;
+		}
+
+		/**
+		 * @return How many tokens the filter left out of training
+		 */
+		public int getFilteredTokens() {
+			return filteredTokens;
+		}
+	}
+
+	// Shared by every malformed line, since it has nothing to hold
+	private static final Tweet MALFORMED = new Tweet(null, null, null, 0, 0);
+
+	private final FileChannel channel;
+	private final long fingerprint;
+	private final int lineCount;
+
+	// Where the records end and the string tables start
+	private final long recordsEnd;
+
+	// User IDs and words indexed by the IDs the records use
+	private final String[] users;
+	private final String[] words;
+
+	// Bytes read from the file, and the file offset the buffer is read up to
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long readPosition;
+	private long readLimit;
+
+	/**
+	 * Opens a corpus file, reading its string tables
+	 *
+	 * @param corpusFileName Name of the corpus file
+	 * @throws IOException If the file can't be read or isn't a corpus file
+	 */
+	public TokenCorpus(String corpusFileName) throws IOException {
+		channel = FileChannel.open(Paths.get(corpusFileName), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				// Keep reading until the whole header is in or the file ends
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+				throw new IOException(corpusFileName + " is not a token corpus file");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(corpusFileName + " has version " + version + ", expected " + VERSION);
+			}
+			fingerprint = header.getLong();
+			recordsEnd = header.getLong();
+			lineCount = header.getInt();
+
+			seek(recordsEnd, channel.size());
+			users = readStrings();
+			words = readStrings();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the corpus of a tweets file from a cache directory, first
+	 * tokenizing the file into it if it isn't there or is out of date
+	 *
+	 * @param cacheDirectory Directory holding corpus files, made if it doesn't exist
+	 * @param tweetsFileName Name of the tweets file
+	 * @param model Model whose stoplist and tokenizer the tweets are tokenized with
+	 * @param numThreads How many threads tokenize the file if it has to be built
+	 * @return The open corpus
+	 * @throws IOException If the corpus can't be built or read
+	 */
+	public static TokenCorpus open(String cacheDirectory, String tweetsFileName, ModelTrainer model, int numThreads)
+			throws IOException {
+		File directory = new File(cacheDirectory);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't make cache directory " + cacheDirectory);
+		}
+		// Named after the file and a hash of its canonical path, so tweets files
+		// with the same name in different directories don't share a corpus
+		File tweetsFile = new File(tweetsFileName).getCanonicalFile();
+		String corpusFileName = new File(directory, String.format("%s-%08x%s",
+				tweetsFile.getName(), tweetsFile.getPath().hashCode(), SUFFIX)).getPath();
+		long fingerprint = fingerprint(tweetsFileName, model);
+
+		if (readFingerprint(corpusFileName) == fingerprint) {
+			CACHE_HITS.increment();
+		} else {
+			// Built under a temporary name and moved into place, so a
+			// half-written corpus is never picked up
+			File temp = File.createTempFile(new File(tweetsFileName).getName(), ".tmp", directory);
+			try {
+				write(tweetsFileName, model, temp.getPath(), fingerprint, numThreads);
+				Files.move(temp.toPath(), Paths.get(corpusFileName), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				temp.delete();
+			}
+			CACHE_BUILDS.increment();
+		}
+		return new TokenCorpus(corpusFileName);
+	}
+
+	/**
+	 * Gives a fingerprint of everything the tokens of a tweets file depend on: the
+	 * file itself (as ModelFile.fingerprint sees it), the stoplist, the tokenizer,
+	 * the charset lines are decoded with and the version of the corpus layout
+	 *
+	 * @param tweetsFileName Name of the tweets file
+	 * @param model Model whose stoplist and tokenizer the tweets are tokenized with
+	 * @return The fingerprint
+	 */
+	public static long fingerprint(String tweetsFileName, ModelTrainer model) {
+		long hash = ModelFile.fingerprint(tweetsFileName);
+		hash = 31 * hash + VERSION;
+		hash = 31 * hash + model.getTokenizer().getName().hashCode();
+		hash = 31 * hash + Charset.defaultCharset().name().hashCode();
+
+		List<String> stoplist = new ArrayList<>(model.getStoplist());
+		Collections.sort(stoplist);
+		for (String stopWord : stoplist) {
+			hash = 31 * hash + stopWord.hashCode();
+		}
+		return hash;
+	}
+
+	/**
+	 * @return The fingerprint in a corpus file's header, or 0 if it is missing or not a current corpus file
+	 */
+	private static long readFingerprint(String corpusFileName) {
+		if (!new File(corpusFileName).isFile()) {
+			return 0;
+		}
+		// Only the header is read, the string tables aren't needed to tell
+		try (DataInputStream in = new DataInputStream(new FileInputStream(corpusFileName))) {
+			return in.readInt() == MAGIC && in.readInt() == VERSION ? in.readLong() : 0;
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Word IDs of the tokens of one batch of source lines, interned in
+	 * a dictionary of the batch's own so batches can be tokenized apart
+	 */
+	private static class TokenizedBatch {
+		final WordDictionary words = new WordDictionary();
+		final List<String> userIDs = new ArrayList<>();
+		final List<int[]> trainingTokens = new ArrayList<>();
+		final List<int[]> tokens = new ArrayList<>();
+		final List<int[]> leftOut = new ArrayList<>();
+	}
+
+	/**
+	 * Tokenizes a tweets file into a corpus file
+	 *
+	 * @param tweetsFileName Name of the tweets file
+	 * @param model Model whose stoplist and tokenizer the tweets are tokenized with
+	 * @param corpusFileName Name of the corpus file to write
+	 * @param fingerprint Fingerprint saved in the header, see fingerprint
+	 * @param numThreads How many threads tokenize the file
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static void write(String tweetsFileName, ModelTrainer model, String corpusFileName, long fingerprint,
+			int numThreads) throws IOException {
+		WordDictionary stopWords = new WordDictionary();
+		for (String stopWord : model.getStoplist()) {
+			stopWords.add(stopWord);
+		}
+		TweetTokenizer tokenizer = model.getTokenizer();
+
+		WordDictionary users = new WordDictionary();
+		WordDictionary words = new WordDictionary();
+		int[] lineCount = new int[1];
+		long recordsEnd;
+		try (TabRecordReader reader = new TabRecordReader(tweetsFileName);
+				FileOutputStream file = new FileOutputStream(corpusFileName);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE))) {
+			// The header is filled in once the records are written
+			out.write(new byte[HEADER_SIZE]);
+
+			BatchPipeline<TweetRecord, TokenizedBatch> pipeline = new BatchPipeline<>(numThreads, BATCH_SIZE);
+			pipeline.run(reader.tweets(), tweets -> {
+				TokenizedBatch batch = new TokenizedBatch();
+				for (TweetRecord tweet : tweets) {
+					if (!tweet.isWellFormed()) {
+						batch.userIDs.add(null);
+						continue;
+					}
+					// Split the same ways ModelTrainer.countTweet and Classifier.predictLabel do
+					IntList trainingTokens = new IntList();
+					int[] leftOut = new int[2];
+					tokenizer.tokenize(tweet.getText().toLowerCase(), (text, start, end) -> {
+						if (stopWords.getId(text, start, end) >= 0) {
+							leftOut[0]++;
+						} else if (!model.passesFilter(text, start, end)) {
+							leftOut[1]++;
+						} else {
+							trainingTokens.add(batch.words.add(text, start, end));
+						}
+					});
+					IntList tokens = new IntList();
+					tokenizer.tokenize(tweet.getText(), (text, start, end) -> tokens.add(batch.words.add(text, start, end)));
+
+					batch.userIDs.add(tweet.getUserID());
+					batch.trainingTokens.add(trainingTokens.toArray());
+					batch.tokens.add(tokens.toArray());
+					batch.leftOut.add(leftOut);
+				}
+				return batch;
+			}, batch -> {
+				try {
+					int[] wordIds = new int[batch.words.size()];
+					for (int localId = 0; localId < wordIds.length; localId++) {
+						wordIds[localId] = words.add(batch.words.getWord(localId));
+					}
+					int tokenized = 0;
+					for (String userID : batch.userIDs) {
+						lineCount[0]++;
+						if (userID == null) {
+							writeVarint(out, 0);
+							continue;
+						}
+						writeVarint(out, users.add(userID) + 1);
+						int[] leftOut = batch.leftOut.get(tokenized);
+						writeVarint(out, leftOut[0]);
+						writeVarint(out, leftOut[1]);
+						writeWordIds(out, batch.trainingTokens.get(tokenized), wordIds);
+						writeWordIds(out, batch.tokens.get(tokenized), wordIds);
+						tokenized++;
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+
+			out.flush();
+			recordsEnd = file.getChannel().position();
+			writeStrings(out, users);
+			writeStrings(out, words);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(corpusFileName, "rw")) {
+			file.writeInt(MAGIC);
+			file.writeInt(VERSION);
+			file.writeLong(fingerprint);
+			file.writeLong(recordsEnd);
+			file.writeInt(lineCount[0]);
+		}
+	}
+
+	/**
+	 * Gives the remaining records in file order, starting over from the
+	 * first line. Read errors are thrown as UncheckedIOException, and only
+	 * one iterator can be used at a time
+	 *
+	 * @return Iterator over every line of the source file
+	 */
+	public Iterator<Tweet> tweets() {
+		try {
+			seek(HEADER_SIZE, recordsEnd);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new Iterator<Tweet>() {
+			private int linesRead = 0;
+
+			@Override
+			public boolean hasNext() {
+				return linesRead < lineCount;
+			}
+
+			@Override
+			public Tweet next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				linesRead++;
+				try {
+					return readTweet();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return The next record
+	 */
+	private Tweet readTweet() throws IOException {
+		int user = readVarint() - 1;
+		if (user < 0) {
+			return MALFORMED;
+		}
+		int stoppedTokens = readVarint();
+		int filteredTokens = readVarint();
+		int[] trainingTokens = readWordIds();
+		int[] tokens = readWordIds();
+		return new Tweet(users[user], trainingTokens, tokens, stoppedTokens, filteredTokens);
+	}
+
+	/**
+	 * @param wordId ID of a word in the records
+	 * @return The word
+	 */
+	public String getWord(int wordId) {
+		return words[wordId];
+	}
+
+	/**
+	 * @return How many different words the records use
+	 */
+	public int getVocabSize() {
+		return words.length;
+	}
+
+	/**
+	 * @return How many lines the source file had
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return Fingerprint of the inputs the corpus was built from
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Moves reading to a part of the file
+	 *
+	 * @param position Offset to read from
+	 * @param limit Offset reading stops at
+	 */
+	private void seek(long position, long limit) throws IOException {
+		readPosition = position;
+		readLimit = limit;
+		buffer.clear().limit(0);
+	}
+
+	/**
+	 * Reads more of the file into the buffer, keeping what hasn't been used yet
+	 */
+	private void fill() throws IOException {
+		buffer.compact();
+		int wanted = (int) Math.min(buffer.remaining(), readLimit - readPosition);
+		if (wanted <= 0) {
+			buffer.flip();
+			throw new EOFException("Token corpus ends in the middle of a record");
+		}
+		buffer.limit(buffer.position() + wanted);
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, readPosition);
+			if (read < 0) {
+				throw new EOFException("Token corpus is shorter than its header says");
+			}
+			readPosition += read;
+		}
+		buffer.flip();
+	}
+
+	private int readVarint() throws IOException {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (!buffer.hasRemaining()) {
+				fill();
+			}
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	private int[] readWordIds() throws IOException {
+		int[] wordIds = new int[readVarint()];
+		for (int i = 0; i < wordIds.length; i++) {
+			wordIds[i] = readVarint();
+		}
+		return wordIds;
+	}
+
+	private String[] readStrings() throws IOException {
+		String[] strings = new String[readVarint()];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = new byte[readVarint()];
+			for (int read = 0; read < bytes.length; ) {
+				if (!buffer.hasRemaining()) {
+					fill();
+				}
+				int chunk = Math.min(buffer.remaining(), bytes.length - read);
+				buffer.get(bytes, read, chunk);
+				read += chunk;
+			}
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return strings;
+	}
+
+	/**
+	 * Writes an int 7 bits at a time, low bits first, with the top bit
+	 * of each byte set if more follow. Word IDs and counts are small, so
+	 * most take one or two bytes
+	 */
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static void writeWordIds(DataOutputStream out, int[] localIds, int[] wordIds) throws IOException {
+		writeVarint(out, localIds.length);
+		for (int localId : localIds) {
+			writeVarint(out, wordIds[localId]);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, WordDictionary strings) throws IOException {
+		writeVarint(out, strings.size());
+		for (int id = 0; id < strings.size(); id++) {
+			byte[] bytes = strings.getWord(id).getBytes(StandardCharsets.UTF_8);
+			writeVarint(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Growable array of ints, for the word IDs of one tweet
+	 */
+	static class IntList {
+		private int[] values = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Main method which tokenizes tweets files into the cache ahead of time
+	 *
+	 * @param args The cache directory, then the tweets files, optionally
+	 * ending with --stoplist and the stoplist file (data/smallStoplist by default)
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		String cacheDirectory = args.length > 0 ? args[0] : "cache";
+		String stoplistFileName = "data/smallStoplist";
+		List<String> tweetsFileNames = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("--stoplist") && i + 1 < args.length) {
+				stoplistFileName = args[++i];
+			} else {
+				tweetsFileNames.add(args[i]);
+			}
+		}
+		if (tweetsFileNames.isEmpty()) {
+			tweetsFileNames.add("data/training_set_tweets_3mil.txt");
+			tweetsFileNames.add("data/test_set_tweets_360k.txt");
+		}
+
+		// Only the stoplist and tokenizer matter for tokenizing, not the users
+		ModelTrainer model = new ModelTrainer();
+		try (BufferedReader stoplistReader = new BufferedReader(new FileReader(stoplistFileName))) {
+			for (String stopWord = stoplistReader.readLine(); stopWord != null; stopWord = stoplistReader.readLine()) {
+				model.addStopWord(stopWord);
+			}
+		}
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (String tweetsFileName : tweetsFileNames) {
+			long start = System.nanoTime();
+			long builds = CACHE_BUILDS.get();
+			try (TokenCorpus corpus = open(cacheDirectory, tweetsFileName, model, cores)) {
+				System.out.printf("%s: %s, %,d lines, %,d words, %,d bytes (source %,d bytes) in %.1f s%n",
+						tweetsFileName, CACHE_BUILDS.get() > builds ? "built" : "up to date",
+						corpus.getLineCount(), corpus.getVocabSize(), corpus.channel.size(),
+						new File(tweetsFileName).length(), (System.nanoTime() - start) / 1e9);
+			}
+		}
+	}
+}
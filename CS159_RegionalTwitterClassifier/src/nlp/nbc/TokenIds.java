@@ -0,0 +1,64 @@
+package nlp.nbc;
+
+import java.util.Arrays;
+
+/**
+ * Collects the word IDs of the tokens of a tweet that are in a model's vocab,
+ * dropping the rest since words outside the vocab don't affect the score
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+class TokenIds implements TweetTokenizer.TokenSink {
+
+	// Looks up the word ID of each token
+	private final ScoringModel scoringModel;
+
+	// Word IDs of the tokens so far, repeated for repeated words
+	private int[] ids = new int[16];
+	private int size = 0;
+
+	// How many tokens there were, including ones not in the vocab
+	private int tokenCount = 0;
+
+	/**
+	 * @param scoringModel Model whose vocab the tokens are looked up in
+	 */
+	TokenIds(ScoringModel scoringModel) {
+		this.scoringModel = scoringModel;
+	}
+
+	@Override
+	public void token(CharSequence text, int start, int end) {
+		tokenCount++;
+		int wordId = scoringModel.getWordId(text, start, end);
+		if (wordId >= 0) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = wordId;
+		}
+	}
+
+	/**
+	 * @return Word IDs of the tokens, only the first size() entries are used
+	 */
+	int[] getIds() {
+		return ids;
+	}
+
+	/**
+	 * @return How many tokens were in the vocab
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return How many tokens there were, including ones not in the vocab
+	 */
+	int tokenCount() {
+		return tokenCount;
+	}
+}
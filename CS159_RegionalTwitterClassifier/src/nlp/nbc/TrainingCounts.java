@@ -0,0 +1,141 @@
+package nlp.nbc;
+
+import java.util.Arrays;
+
+/**
+ * Counts from one batch of training tweets, kept apart from the model
+ * so batches can be counted on separate threads and merged afterwards.
+ * Words get batch-local word IDs which are mapped to the model's
+ * word IDs when the batch is merged
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+class TrainingCounts {
+
+	// Interns the words of the batch as batch-local word IDs
+	final WordDictionary words = new WordDictionary();
+
+	// Count of each batch-local word ID with each label ID
+	final WordLabelCounts wordLabelCounts = new WordLabelCounts();
+
+	// How many words the batch had with each label ID
+	final int[] labelWordCounts;
+
+	// How many tweets the batch had with each label ID
+	final int[] labelCounts;
+
+	// How many tweets of the batch each batch-local word ID occurred in
+	int[] documentCounts = new int[1024];
+
+	// Number of the last tweet each batch-local word ID was counted in, so a
+	// word repeated in a tweet only counts once toward its document count
+	private int[] lastTweets = new int[1024];
+
+	// How many tweets have been counted, all labels together
+	private int tweetCount = 0;
+
+	// What happened to the lines and tokens of the batch, for the metrics
+	int lines = 0;
+	int rejectedLines = 0;
+	int unknownUserTweets = 0;
+	int tokens = 0;
+	int stoppedTokens = 0;
+	int filteredTokens = 0;
+	long countNanos = 0;
+
+	/**
+	 * Constructor which starts every count at 0
+	 *
+	 * @param labelCount How many label IDs the model has
+	 */
+	TrainingCounts(int labelCount) {
+		labelWordCounts = new int[labelCount];
+		labelCounts = new int[labelCount];
+	}
+
+	/**
+	 * Counts one occurrence of a word with a label
+	 *
+	 * @param word The word that occurred
+	 * @param labelId ID of the label of the tweet it occurred in
+	 */
+	void addWord(String word, int labelId) {
+		addWord(word, 0, word.length(), labelId);
+	}
+
+	/**
+	 * Counts one occurrence of a word, given as a span of text, with a label
+	 *
+	 * @param text Text holding the word
+	 * @param start Index of the first char of the word
+	 * @param end Index after the last char of the word
+	 * @param labelId ID of the label of the tweet it occurred in
+	 */
+	void addWord(CharSequence text, int start, int end, int labelId) {
+		int wordId = words.add(text, start, end);
+		wordLabelCounts.add(wordId, labelId, 1);
+		labelWordCounts[labelId]++;
+
+		ensureCapacity(wordId);
+		// The tweet being counted is numbered one more than the tweets counted so far
+		if (lastTweets[wordId] != tweetCount + 1) {
+			lastTweets[wordId] = tweetCount + 1;
+			documentCounts[wordId]++;
+		}
+	}
+
+	/**
+	 * Adds to how many tweets a word occurred in, for counts
+	 * which are added up from other batches
+	 *
+	 * @param wordId Batch-local word ID of the word
+	 * @param count How many more tweets it occurred in
+	 */
+	void addDocumentCount(int wordId, int count) {
+		ensureCapacity(wordId);
+		documentCounts[wordId] += count;
+	}
+
+	/**
+	 * Adds the counts of another batch to these, mapping its
+	 * words to this batch's word IDs
+	 *
+	 * @param other The counts to add
+	 */
+	void add(TrainingCounts other) {
+		int[] wordIds = new int[other.words.size()];
+		for (int otherId = 0; otherId < wordIds.length; otherId++) {
+			wordIds[otherId] = words.add(other.words.getWord(otherId));
+			addDocumentCount(wordIds[otherId], other.documentCounts[otherId]);
+		}
+		other.wordLabelCounts.forEach((otherId, labelId, count) ->
+				wordLabelCounts.add(wordIds[otherId], labelId, count));
+		for (int labelId = 0; labelId < labelCounts.length; labelId++) {
+			labelWordCounts[labelId] += other.labelWordCounts[labelId];
+			labelCounts[labelId] += other.labelCounts[labelId];
+		}
+	}
+
+	/**
+	 * Grows the per word arrays to hold a word ID
+	 */
+	private void ensureCapacity(int wordId) {
+		if (wordId >= documentCounts.length) {
+			int length = Math.max(wordId + 1, documentCounts.length * 2);
+			documentCounts = Arrays.copyOf(documentCounts, length);
+			lastTweets = Arrays.copyOf(lastTweets, length);
+		}
+	}
+
+	/**
+	 * Counts one tweet with a label
+	 *
+	 * @param labelId ID of the label of the tweet
+	 */
+	void addTweet(int labelId) {
+		labelCounts[labelId]++;
+		tweetCount++;
+	}
+}
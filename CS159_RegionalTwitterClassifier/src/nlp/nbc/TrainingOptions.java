@@ -0,0 +1,239 @@
+package nlp.nbc;
+
+/**
+ * Settings for how ModelTrainer reads and counts the training data.
+ * The defaults train on a single thread, the same way the model has always been trained
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class TrainingOptions {
+
+	// How many threads tokenize and count tweets
+	private int numThreads = 1;
+
+	// How many tweet lines each thread counts at a time
+	private int batchSize = 10000;
+
+	// Splits tweets into words
+	private TweetTokenizer tokenizer = new PTBTweetTokenizer();
+
+	// Bytes of word/label counts OutOfCoreTrainer holds before writing them to disk
+	private long memoryBudgetBytes = 256L << 20;
+
+	// Fewest times a word must occur in total to be kept in the vocab
+	private int minWordCount = 1;
+
+	// Fewest tweets a word must occur in to be kept in the vocab
+	private int minDocumentFrequency = 1;
+
+	// Most words kept in the vocab, the most frequent ones, or 0 for no limit
+	private int maxVocabSize = 0;
+
+	// Bits of the hash picking a word's bucket for the hashing trick, or 0 to keep the words themselves
+	private int hashBits = 0;
+
+	// Directory tweets files are tokenized into once with TokenCorpus, or null to tokenize every time
+	private String tokenCacheDirectory = null;
+
+	// Directory OutOfCoreTrainer writes its run and merge files to, or null for the model file's directory
+	private String spillDirectory = null;
+
+	// Gives users' locations a state code, or null for LocationResolver.getDefault
+	private LocationResolver locationResolver = null;
+
+	/**
+	 * @param numThreads How many threads tokenize and count tweets
+	 * @return These options
+	 */
+	public TrainingOptions setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	/**
+	 * @param batchSize How many tweet lines each thread counts at a time
+	 * @return These options
+	 */
+	public TrainingOptions setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param tokenizer Splits tweets into words, also used when classifying with the model
+	 * @return These options
+	 */
+	public TrainingOptions setTokenizer(TweetTokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+		return this;
+	}
+
+	/**
+	 * @param memoryBudgetBytes Bytes of word/label counts OutOfCoreTrainer
+	 * holds in memory before writing them to a run file
+	 * @return These options
+	 */
+	public TrainingOptions setMemoryBudgetBytes(long memoryBudgetBytes) {
+		this.memoryBudgetBytes = memoryBudgetBytes;
+		return this;
+	}
+
+	/**
+	 * @param minWordCount Fewest times a word must occur across all labels
+	 * to be kept in the vocab, 1 keeps every word
+	 * @return These options
+	 */
+	public TrainingOptions setMinWordCount(int minWordCount) {
+		this.minWordCount = minWordCount;
+		return this;
+	}
+
+	/**
+	 * @param minDocumentFrequency Fewest tweets a word must occur in
+	 * to be kept in the vocab, 1 keeps every word
+	 * @return These options
+	 */
+	public TrainingOptions setMinDocumentFrequency(int minDocumentFrequency) {
+		this.minDocumentFrequency = minDocumentFrequency;
+		return this;
+	}
+
+	/**
+	 * @param maxVocabSize Most words kept in the vocab, the ones occurring the
+	 * most times, or 0 for no limit. Not supported by OutOfCoreTrainer
+	 * @return These options
+	 */
+	public TrainingOptions setMaxVocabSize(int maxVocabSize) {
+		this.maxVocabSize = maxVocabSize;
+		return this;
+	}
+
+	/**
+	 * @param hashBits Bits of the hash which pick a word's bucket, so the model
+	 * has at most 2^hashBits words and keeps no word strings, or 0 to keep
+	 * the words themselves. Not supported by OutOfCoreTrainer
+	 * @return These options
+	 */
+	public TrainingOptions setHashBits(int hashBits) {
+		this.hashBits = hashBits;
+		return this;
+	}
+
+	/**
+	 * @param tokenCacheDirectory Directory tweets files are tokenized into the first
+	 * time they are read, see TokenCorpus, or null to tokenize them every time.
+	 * Not used by OutOfCoreTrainer
+	 * @return These options
+	 */
+	public TrainingOptions setTokenCacheDirectory(String tokenCacheDirectory) {
+		this.tokenCacheDirectory = tokenCacheDirectory;
+		return this;
+	}
+
+	/**
+	 * @param spillDirectory Directory OutOfCoreTrainer writes its run files and
+	 * merge files to, made if it doesn't exist, or null to write them next to
+	 * the model file. Only used by OutOfCoreTrainer
+	 * @return These options
+	 */
+	public TrainingOptions setSpillDirectory(String spillDirectory) {
+		this.spillDirectory = spillDirectory;
+		return this;
+	}
+
+	/**
+	 * @param locationResolver Gives users' locations a state code when the
+	 * users file is read, or null for LocationResolver.getDefault
+	 * @return These options
+	 */
+	public TrainingOptions setLocationResolver(LocationResolver locationResolver) {
+		this.locationResolver = locationResolver;
+		return this;
+	}
+
+	/**
+	 * @return How many threads tokenize and count tweets
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * @return How many tweet lines each thread counts at a time
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return Splits tweets into words
+	 */
+	public TweetTokenizer getTokenizer() {
+		return tokenizer;
+	}
+
+	/**
+	 * @return Bytes of word/label counts OutOfCoreTrainer holds before writing them to disk
+	 */
+	public long getMemoryBudgetBytes() {
+		return memoryBudgetBytes;
+	}
+
+	/**
+	 * @return Fewest times a word must occur in total to be kept in the vocab
+	 */
+	public int getMinWordCount() {
+		return minWordCount;
+	}
+
+	/**
+	 * @return Fewest tweets a word must occur in to be kept in the vocab
+	 */
+	public int getMinDocumentFrequency() {
+		return minDocumentFrequency;
+	}
+
+	/**
+	 * @return Most words kept in the vocab, or 0 for no limit
+	 */
+	public int getMaxVocabSize() {
+		return maxVocabSize;
+	}
+
+	/**
+	 * @return Bits of the hash picking a word's bucket, or 0 if the words themselves are kept
+	 */
+	public int getHashBits() {
+		return hashBits;
+	}
+
+	/**
+	 * @return Directory tweets files are tokenized into, or null if they are tokenized every time
+	 */
+	public String getTokenCacheDirectory() {
+		return tokenCacheDirectory;
+	}
+
+	/**
+	 * @return Directory OutOfCoreTrainer writes its run and merge files to, or null for the model file's directory
+	 */
+	public String getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * @return Gives users' locations a state code, or null for LocationResolver.getDefault
+	 */
+	public LocationResolver getLocationResolver() {
+		return locationResolver;
+	}
+
+	/**
+	 * @return True if any of the settings drop words from the vocab after training
+	 */
+	public boolean prunesVocab() {
+		return minWordCount > 1 || minDocumentFrequency > 1 || maxVocabSize > 0;
+	}
+}
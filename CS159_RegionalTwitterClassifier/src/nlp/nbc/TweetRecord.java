@@ -0,0 +1,52 @@
+package nlp.nbc;
+
+/**
+ * One line of a tweets file. Lines which don't have the four tab separated
+ * columns with numeric user and tweet IDs are kept as malformed records,
+ * so that output can still have one line per input line
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public final class TweetRecord {
+
+	// Shared by every malformed line, since it has nothing to hold
+	static final TweetRecord MALFORMED = new TweetRecord(null, null);
+
+	// Twitter user ID of the tweet's author, null if malformed
+	private final String userID;
+
+	// Text of the tweet, null if malformed
+	private final String text;
+
+	/**
+	 * @param userID Twitter user ID of the tweet's author
+	 * @param text Text of the tweet
+	 */
+	public TweetRecord(String userID, String text) {
+		this.userID = userID;
+		this.text = text;
+	}
+
+	/**
+	 * @return True if the line was a properly formatted tweet
+	 */
+	public boolean isWellFormed() {
+		return userID != null;
+	}
+
+	/**
+	 * @return Twitter user ID of the tweet's author
+	 */
+	public String getUserID() {
+		return userID;
+	}
+
+	/**
+	 * @return Text of the tweet
+	 */
+	public String getText() {
+		return text;
+	}
+}
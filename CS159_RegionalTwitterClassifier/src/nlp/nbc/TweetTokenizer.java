@@ -0,0 +1,52 @@
+package nlp.nbc;
+
+/**
+ * Splits the text of a tweet into tokens. Tokens are handed to a sink as
+ * a span of the input text rather than as new objects, so a tokenizer that
+ * doesn't need to allocate per token can avoid it entirely
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public interface TweetTokenizer {
+
+	/**
+	 * Receives the tokens of a tweet one at a time
+	 */
+	interface TokenSink {
+		/**
+		 * @param text Text holding the token, only valid during the call
+		 * @param start Index of the first char of the token
+		 * @param end Index after the last char of the token
+		 */
+		void token(CharSequence text, int start, int end);
+	}
+
+	/**
+	 * Splits a tweet into tokens
+	 * 
+	 * @param tweet Text of the tweet
+	 * @param sink Receives each token in order
+	 */
+	void tokenize(CharSequence tweet, TokenSink sink);
+
+	/**
+	 * @return Name of the tokenizer, which is saved with a model so that
+	 * it is loaded with the tokenizer it was trained with
+	 */
+	String getName();
+
+	/**
+	 * @param name Name of a tokenizer, as given by getName
+	 * @return A tokenizer with that name
+	 */
+	static TweetTokenizer forName(String name) {
+		if (FastTweetTokenizer.NAME.equals(name)) {
+			return new FastTweetTokenizer();
+		} else if (PTBTweetTokenizer.NAME.equals(name)) {
+			return new PTBTweetTokenizer();
+		}
+		throw new IllegalArgumentException("Unknown tokenizer: " + name);
+	}
+}
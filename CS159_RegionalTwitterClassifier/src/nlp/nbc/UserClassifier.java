@@ -0,0 +1,447 @@
+package nlp.nbc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Predicts one location per user by combining all of the user's tweets,
+ * treating them as a single document: the word log thetas of every tweet are
+ * added up and the user's prior is counted once.
+ *
+ * When the test file is sorted by user ID, each user's prediction is written as
+ * soon as their last tweet has been read, so only one user is held at a time.
+ * Otherwise users are held in memory, and once there are more than the limit
+ * they are written to a sorted run file on disk. The runs are merged at the end,
+ * and the predictions come out sorted by user ID. At most
+ * OutOfCoreTrainer.MAX_MERGE_FAN_IN runs are merged at once, so if there are
+ * more, groups of them are first merged into bigger runs
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class UserClassifier {
+
+	// Scores the tweets
+	private final Classifier classifier;
+
+	// True if all the tweets of a user are next to each other in the test file
+	private final boolean sortedInput;
+
+	// Most users held in memory before they are spilled to disk
+	private final int maxUsersInMemory;
+
+	// Directory run files are written to, or null for the output file's directory
+	private final String spillDirectory;
+
+	// Correct counts and total counts of the user predictions made so far
+	private AccuracyTracker accuracy;
+
+	// Scoring tables of the current run, so every user is scored with the same ones
+	private ScoringModel scoringModel;
+
+	// Run files of spilled users
+	private final List<File> runs = new ArrayList<>();
+
+	// Directory the run files of the current run go in
+	private File runDirectory;
+
+	/**
+	 * Log probabilities of one user's tweets added up, without the prior
+	 */
+	private static class UserScores {
+		final String userID;
+		int tweetCount = 0;
+		final double[] logProbSums;
+
+		UserScores(String userID, int labelCount) {
+			this.userID = userID;
+			this.logProbSums = new double[labelCount];
+		}
+
+		void add(UserScores other) {
+			tweetCount += other.tweetCount;
+			for (int labelId = 0; labelId < logProbSums.length; labelId++) {
+				logProbSums[labelId] += other.logProbSums[labelId];
+			}
+		}
+	}
+
+	/**
+	 * Scores for a batch of tweets, in file order
+	 */
+	private static class ScoredBatch {
+		final List<String> userIDs;
+		final List<double[]> logProbs;
+
+		ScoredBatch(int size) {
+			userIDs = new ArrayList<>(size);
+			logProbs = new ArrayList<>(size);
+		}
+	}
+
+	/**
+	 * Constructor for predicting users with a classifier's model, writing
+	 * run files next to the output file
+	 *
+	 * @param classifier Classifier whose model scores the tweets
+	 * @param sortedInput True if the test file has all of a user's tweets next to each other
+	 * @param maxUsersInMemory Most users held in memory before they are
+	 * written to disk, only used if the input isn't sorted
+	 */
+	public UserClassifier(Classifier classifier, boolean sortedInput, int maxUsersInMemory) {
+		this(classifier, sortedInput, maxUsersInMemory, null);
+	}
+
+	/**
+	 * Constructor for predicting users with a classifier's model
+	 *
+	 * @param classifier Classifier whose model scores the tweets
+	 * @param sortedInput True if the test file has all of a user's tweets next to each other
+	 * @param maxUsersInMemory Most users held in memory before they are
+	 * written to disk, only used if the input isn't sorted
+	 * @param spillDirectory Directory run files are written to, made if it doesn't exist,
+	 * or null to write them next to the output file, as with TrainingOptions.getSpillDirectory
+	 */
+	public UserClassifier(Classifier classifier, boolean sortedInput, int maxUsersInMemory, String spillDirectory) {
+		this.classifier = classifier;
+		this.sortedInput = sortedInput;
+		this.maxUsersInMemory = maxUsersInMemory;
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Predicts the location of every user in a test file and writes one line per
+	 * user, with the user ID, the predicted label, its log-prob and the user's
+	 * tweet count. Users whose real location is known count toward the accuracy
+	 *
+	 * @param testSetFileName The name of the file that contains the test tweets
+	 * @param outputFileName The name of the file the predictions are written to
+	 * @param numThreads How many threads tokenize and score tweets
+	 * @throws IOException If a file can't be read or written
+	 */
+	public void classifyFile(String testSetFileName, String outputFileName, int numThreads) throws IOException {
+		scoringModel = classifier.getScoringModel();
+		accuracy = new AccuracyTracker(classifier.model.getTrainingSetLabels(), classifier.majorityState());
+		HashMap<String, UserScores> users = new HashMap<>();
+		UserScores[] current = new UserScores[1];
+		runDirectory = spillDirectory != null ? new File(spillDirectory)
+				: new File(outputFileName).getAbsoluteFile().getParentFile();
+		if (!sortedInput && !runDirectory.isDirectory() && !runDirectory.mkdirs()) {
+			throw new IOException("Can't make spill directory " + runDirectory);
+		}
+
+		try (TabRecordReader testDataReader = new TabRecordReader(testSetFileName);
+				PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(outputFileName)))) {
+
+			BatchPipeline<TweetRecord, ScoredBatch> pipeline = new BatchPipeline<>(numThreads, 1000);
+			pipeline.run(testDataReader.tweets(), this::scoreTweets, batch -> {
+				for (int i = 0; i < batch.userIDs.size(); i++) {
+					String userID = batch.userIDs.get(i);
+					UserScores scores;
+					if (sortedInput) {
+						// A new user ID means the last user has no more tweets
+						if (current[0] == null || !current[0].userID.equals(userID)) {
+							if (current[0] != null) {
+								predict(current[0], out);
+							}
+							current[0] = new UserScores(userID, scoringModel.getLabelCount());
+						}
+						scores = current[0];
+					} else {
+						scores = users.get(userID);
+						if (scores == null) {
+							if (users.size() >= maxUsersInMemory) {
+								spill(users);
+							}
+							scores = new UserScores(userID, scoringModel.getLabelCount());
+							users.put(userID, scores);
+						}
+					}
+					add(scores, batch.logProbs.get(i));
+				}
+			});
+
+			if (current[0] != null) {
+				predict(current[0], out);
+			}
+			if (!users.isEmpty() || !runs.isEmpty()) {
+				if (runs.isEmpty()) {
+					List<UserScores> sorted = new ArrayList<>(users.values());
+					sorted.sort(Comparator.comparing(scores -> scores.userID));
+					for (UserScores scores : sorted) {
+						predict(scores, out);
+					}
+				} else {
+					spill(users);
+					mergeRuns(out);
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+			runs.clear();
+		}
+	}
+
+	/**
+	 * Scores a batch of tweets on a worker thread
+	 *
+	 * @param tweets Lines of the test file
+	 * @return The user ID and label log probabilities of each well formed tweet
+	 */
+	private ScoredBatch scoreTweets(List<TweetRecord> tweets) {
+		ScoredBatch batch = new ScoredBatch(tweets.size());
+		for (TweetRecord tweet : tweets) {
+			if (tweet.isWellFormed()) {
+				batch.userIDs.add(tweet.getUserID());
+				batch.logProbs.add(classifier.score(scoringModel, tweet.getText()));
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Adds one tweet's log probabilities to a user's, taking the prior off
+	 * so that it is only counted once per user
+	 */
+	private void add(UserScores scores, double[] logProbs) {
+		scores.tweetCount++;
+		for (int labelId = 0; labelId < logProbs.length; labelId++) {
+			scores.logProbSums[labelId] += logProbs[labelId] - scoringModel.getLogPrior(labelId);
+		}
+	}
+
+	/**
+	 * Predicts the location of a user whose tweets have all been added,
+	 * writes it out and counts it toward the accuracy
+	 */
+	private void predict(UserScores scores, PrintWriter out) {
+		double[] finalLogProbs = new double[scores.logProbSums.length];
+		for (int labelId = 0; labelId < finalLogProbs.length; labelId++) {
+			finalLogProbs[labelId] = scores.logProbSums[labelId] + scoringModel.getLogPrior(labelId);
+		}
+		int maxLabelId = scoringModel.argmax(finalLogProbs);
+		String maxLabel = scoringModel.getLabel(maxLabelId);
+
+		String realLocation = classifier.model.getUserLocations().get(scores.userID);
+		if (realLocation != null) {
+			accuracy.track(maxLabel, realLocation);
+		}
+		out.println(scores.userID + "\t" + maxLabel + "\t" + finalLogProbs[maxLabelId] + "\t" + scores.tweetCount);
+	}
+
+	/**
+	 * Writes the users held in memory to a new run file, sorted by user ID, and forgets them
+	 *
+	 * @param users The users held in memory
+	 * @throws UncheckedIOException If the run file can't be written, since this is called from the pipeline
+	 */
+	private void spill(HashMap<String, UserScores> users) {
+		List<UserScores> sorted = new ArrayList<>(users.values());
+		sorted.sort(Comparator.comparing(scores -> scores.userID));
+		try {
+			File run = File.createTempFile("users", ".run", runDirectory);
+			runs.add(run);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+				out.writeInt(sorted.size());
+				for (UserScores scores : sorted) {
+					writeUser(out, scores);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		users.clear();
+	}
+
+	/**
+	 * Writes one user's scores to a run file
+	 */
+	private static void writeUser(DataOutputStream out, UserScores scores) throws IOException {
+		out.writeUTF(scores.userID);
+		out.writeInt(scores.tweetCount);
+		for (double logProbSum : scores.logProbSums) {
+			out.writeDouble(logProbSum);
+		}
+	}
+
+	/**
+	 * Takes the users merged from run files, in user ID order
+	 */
+	private interface UserSink {
+		void accept(UserScores scores) throws IOException;
+	}
+
+	/**
+	 * Reads the users of one run file in order
+	 */
+	private class RunReader {
+		private final DataInputStream in;
+		private int remaining;
+		UserScores head;
+
+		RunReader(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+			remaining = in.readInt();
+		}
+
+		/**
+		 * Moves to the next user of the run
+		 *
+		 * @return False if the run has no more users
+		 */
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				head = null;
+				in.close();
+				return false;
+			}
+			remaining--;
+			head = new UserScores(in.readUTF(), scoringModel.getLabelCount());
+			head.tweetCount = in.readInt();
+			for (int labelId = 0; labelId < head.logProbSums.length; labelId++) {
+				head.logProbSums[labelId] = in.readDouble();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Merges the run files by user ID and predicts each user, first merging groups
+	 * of OutOfCoreTrainer.MAX_MERGE_FAN_IN runs into one run per group while there
+	 * are more, so only that many runs are open at once
+	 */
+	private void mergeRuns(PrintWriter out) throws IOException {
+		while (runs.size() > OutOfCoreTrainer.MAX_MERGE_FAN_IN) {
+			List<File> mergedRuns = new ArrayList<>();
+			try {
+				for (int first = 0; first < runs.size(); first += OutOfCoreTrainer.MAX_MERGE_FAN_IN) {
+					List<File> group = runs.subList(first, Math.min(runs.size(), first + OutOfCoreTrainer.MAX_MERGE_FAN_IN));
+					File run = File.createTempFile("users", ".run", runDirectory);
+					mergedRuns.add(run);
+
+					// The user count is filled in once it is known
+					int[] userCount = new int[1];
+					try (DataOutputStream runOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+						runOut.writeInt(0);
+						mergeRuns(group, scores -> {
+							writeUser(runOut, scores);
+							userCount[0]++;
+						});
+					}
+					try (RandomAccessFile file = new RandomAccessFile(run, "rw")) {
+						file.writeInt(userCount[0]);
+					}
+				}
+			} catch (IOException e) {
+				for (File run : mergedRuns) {
+					run.delete();
+				}
+				throw e;
+			}
+			for (File run : runs) {
+				run.delete();
+			}
+			runs.clear();
+			runs.addAll(mergedRuns);
+		}
+		mergeRuns(runs, scores -> predict(scores, out));
+	}
+
+	/**
+	 * Merges run files by user ID, adding up a user's partial scores from every run
+	 *
+	 * @param runs The run files to merge
+	 * @param sink Takes each user once their scores from every run are added up
+	 */
+	private void mergeRuns(List<File> runs, UserSink sink) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.comparing((RunReader reader) -> reader.head.userID));
+		List<RunReader> readers = new ArrayList<>();
+		try {
+			for (File run : runs) {
+				RunReader reader = new RunReader(run);
+				readers.add(reader);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				UserScores scores = reader.head;
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+				while (!queue.isEmpty() && queue.peek().head.userID.equals(scores.userID)) {
+					RunReader same = queue.poll();
+					scores.add(same.head);
+					if (same.advance()) {
+						queue.add(same);
+					}
+				}
+				sink.accept(scores);
+			}
+		} catch (EOFException e) {
+			throw new IOException("User run file was cut short", e);
+		} finally {
+			for (RunReader reader : readers) {
+				reader.in.close();
+			}
+		}
+	}
+
+	/**
+	 * @return How many users with a known location were predicted
+	 */
+	public long getUserCount() {
+		return accuracy.getTotalPredictions();
+	}
+
+	/**
+	 * @return The correct and total counts of the user predictions
+	 */
+	public AccuracyTracker getAccuracy() {
+		return accuracy;
+	}
+
+	/**
+	 * Gives the accuracy over users, as the amount of correct user
+	 * predictions over the total amount of user predictions
+	 *
+	 * @return The accuracy as a decimal number
+	 */
+	public double userAccuracy() {
+		return (double) accuracy.getCorrectCount() / (double) accuracy.getTotalPredictions();
+	}
+
+	/**
+	 * Calculates the accuracy over users of just predicting
+	 * the state that occurs the most all the time
+	 *
+	 * @return The majority accuracy as a decimal proportion
+	 */
+	public double userMajorityAccuracy() {
+		return (double) accuracy.getCorrectMajorityCount() / (double) accuracy.getTotalPredictions();
+	}
+}
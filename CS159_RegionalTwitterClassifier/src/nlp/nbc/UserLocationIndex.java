@@ -0,0 +1,640 @@
+package nlp.nbc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Maps Twitter user IDs to their location label without an object per user.
+ * User IDs are stored as longs in increasing order next to a byte label ID
+ * each, so a user takes 9 bytes. A directory of where each range of IDs
+ * starts, half a byte per user, narrows the binary search for a user down
+ * to a few entries, which keeps lookups from missing the cache on every
+ * step once there are millions of users. IDs which
+ * aren't plain decimal numbers fitting a long, such as ones with leading
+ * zeros, are kept as Strings on the side so every ID reads back as it was
+ * added. Users can be added while the file is read, straight from its
+ * buffer, and are sorted in the first time one is looked up. Adding a user
+ * ID again replaces its label, as with a HashMap.
+ *
+ * The index can be written to a file of its own or inside a model file,
+ * and is read back by pointing at the mapped file instead of copying it
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class UserLocationIndex {
+
+	// Marks a file as a user location index file, spells "NBCU"
+	private static final int MAGIC = 0x4E424355;
+
+	// Bump whenever the layout of the index changes
+	public static final int VERSION = 1;
+
+	// Most labels a byte label ID can tell apart
+	private static final int MAX_LABELS = 256;
+
+	// Labels indexed by label ID, and the label ID of each label. Labels are
+	// read without locking, and there are few enough to copy on every add
+	private final List<String> labels = new CopyOnWriteArrayList<>();
+	private final HashMap<String, Integer> labelIds = new HashMap<>();
+
+	// Sorted users, replaced as a whole when pending users are merged in, so a
+	// lookup which reads it once sees the IDs and their directory from the same merge
+	private volatile SortedUsers sorted = new SortedUsers(LongBuffer.allocate(0), ByteBuffer.allocate(0), 0);
+
+	// Users added since the last lookup, in the order they were added
+	private long[] pendingIds = new long[1024];
+	private byte[] pendingLabelIds = new byte[1024];
+	private int pendingCount = 0;
+
+	// Whether there are pending users, read without locking on every lookup
+	private volatile boolean hasPending = false;
+
+	// Users whose IDs can't be stored as a long, looked up without locking
+	private final Map<String, Integer> otherUsers = new ConcurrentHashMap<>();
+
+	/**
+	 * User IDs in increasing order with the label ID of each and the directory of
+	 * where each range of IDs starts. It never changes once built, so it can be
+	 * read by any thread without locking
+	 */
+	private static final class SortedUsers {
+
+		// User IDs in increasing order and the label ID of each, either
+		// wrapping arrays on the heap or views of a mapped file
+		final LongBuffer ids;
+		final ByteBuffer labelIds;
+		final int count;
+
+		// Index of the first user in each range of IDs, with one more entry at
+		// the end, so the users of range r are bucketStarts[r] up to bucketStarts[r + 1]
+		final int[] bucketStarts;
+
+		// Smallest user ID, and how far IDs are shifted right to give their range
+		final long minId;
+		final int bucketShift;
+
+		/**
+		 * Constructor which splits the range of user IDs into a power of two
+		 * ranges, about one for every 8 users, and finds where each range starts
+		 *
+		 * @param ids User IDs in increasing order, read with absolute gets only
+		 * @param labelIds Label ID of each user
+		 * @param count How many users there are
+		 */
+		SortedUsers(LongBuffer ids, ByteBuffer labelIds, int count) {
+			this.ids = ids;
+			this.labelIds = labelIds;
+			this.count = count;
+			if (count == 0) {
+				bucketStarts = new int[] {0, 0};
+				minId = 0;
+				bucketShift = 0;
+				return;
+			}
+			minId = ids.get(0);
+			long span = ids.get(count - 1) - minId;
+			int maxBuckets = Math.max(1, Integer.highestOneBit(count / 8));
+			int shift = 0;
+			while ((span >>> shift) >= maxBuckets) {
+				shift++;
+			}
+			bucketShift = shift;
+			int bucketCount = (int) (span >>> bucketShift) + 1;
+			bucketStarts = new int[bucketCount + 1];
+			int bucket = 0;
+			for (int i = 0; i < count; i++) {
+				int userBucket = (int) ((ids.get(i) - minId) >>> bucketShift);
+				while (bucket < userBucket) {
+					bucketStarts[++bucket] = i;
+				}
+			}
+			while (bucket < bucketCount) {
+				bucketStarts[++bucket] = count;
+			}
+		}
+
+		/**
+		 * @param id Twitter user ID as a number
+		 * @return Label ID of the user's location, or -1 if the user has none
+		 */
+		int getLabelId(long id) {
+			long offset = id - minId;
+			if (offset < 0 || (offset >>> bucketShift) >= bucketStarts.length - 1) {
+				return -1;
+			}
+			int bucket = (int) (offset >>> bucketShift);
+			int low = bucketStarts[bucket];
+			int high = bucketStarts[bucket + 1] - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				long middleId = ids.get(middle);
+				if (middleId < id) {
+					low = middle + 1;
+				} else if (middleId > id) {
+					high = middle - 1;
+				} else {
+					return labelIds.get(middle) & 0xff;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Gives a user a location label, replacing any label the user already had
+	 *
+	 * @param userID Twitter user ID, which is only copied if it isn't a plain number
+	 * @param label Location label of the user
+	 * @throws IllegalStateException If the index would have more than 256 labels
+	 */
+	public synchronized void add(CharSequence userID, String label) {
+		int labelId = addLabel(label);
+		long id = parseId(userID);
+		if (id < 0) {
+			otherUsers.put(userID.toString(), labelId);
+			return;
+		}
+		if (pendingCount == pendingIds.length) {
+			pendingIds = Arrays.copyOf(pendingIds, pendingCount * 2);
+			pendingLabelIds = Arrays.copyOf(pendingLabelIds, pendingCount * 2);
+		}
+		pendingIds[pendingCount] = id;
+		pendingLabelIds[pendingCount] = (byte) labelId;
+		pendingCount++;
+		hasPending = true;
+	}
+
+	/**
+	 * @param label Location label to look up
+	 * @return The label ID of the label, assigning the next one if it is new
+	 */
+	private int addLabel(String label) {
+		Integer labelId = labelIds.get(label);
+		if (labelId == null) {
+			if (labels.size() == MAX_LABELS) {
+				throw new IllegalStateException("A user location index holds at most " + MAX_LABELS + " labels");
+			}
+			labelId = labels.size();
+			labels.add(label);
+			labelIds.put(label, labelId);
+		}
+		return labelId;
+	}
+
+	/**
+	 * @param userID Twitter user ID
+	 * @return Location label of the user, or null if the user has none
+	 */
+	public String get(CharSequence userID) {
+		int labelId = getLabelId(userID);
+		return labelId < 0 ? null : labels.get(labelId);
+	}
+
+	/**
+	 * @param userID Twitter user ID
+	 * @return Label ID of the user's location, or -1 if the user has none
+	 */
+	public int getLabelId(CharSequence userID) {
+		long id = parseId(userID);
+		if (id < 0) {
+			Integer labelId = otherUsers.get(userID.toString());
+			return labelId == null ? -1 : labelId;
+		}
+		return getLabelId(id);
+	}
+
+	/**
+	 * @param id Twitter user ID as a number
+	 * @return Label ID of the user's location, or -1 if the user has none
+	 */
+	public int getLabelId(long id) {
+		if (hasPending) {
+			mergePending();
+		}
+		return sorted.getLabelId(id);
+	}
+
+	/**
+	 * @param labelId ID of the label
+	 * @return The label with that ID
+	 */
+	public String getLabel(int labelId) {
+		return labels.get(labelId);
+	}
+
+	/**
+	 * @return The labels at least one user has, in the order they were first added
+	 */
+	public synchronized List<String> getUsedLabels() {
+		mergePending();
+		SortedUsers users = sorted;
+		boolean[] used = new boolean[labels.size()];
+		for (int i = 0; i < users.count; i++) {
+			used[users.labelIds.get(i) & 0xff] = true;
+		}
+		for (int labelId : otherUsers.values()) {
+			used[labelId] = true;
+		}
+		List<String> usedLabels = new ArrayList<>();
+		for (int labelId = 0; labelId < used.length; labelId++) {
+			if (used[labelId]) {
+				usedLabels.add(labels.get(labelId));
+			}
+		}
+		return usedLabels;
+	}
+
+	/**
+	 * @return How many users have a location
+	 */
+	public synchronized int size() {
+		mergePending();
+		return sorted.count + otherUsers.size();
+	}
+
+	/**
+	 * @return Rough bytes taken by the users, whether they are on the heap or in a mapped
+	 * file, counting 100 bytes for each user whose ID is kept as a String
+	 */
+	public synchronized long memoryBytes() {
+		SortedUsers users = sorted;
+		return 9L * (users.count + pendingIds.length) + 4L * users.bucketStarts.length + 100L * otherUsers.size();
+	}
+
+	/**
+	 * Sorts the pending users into the sorted ones. Users added later
+	 * win over earlier ones with the same ID
+	 */
+	private synchronized void mergePending() {
+		if (pendingCount == 0) {
+			return;
+		}
+		SortedUsers users = sorted;
+		int count = users.count + pendingCount;
+		long[] ids = new long[count];
+		byte[] userLabelIds = new byte[count];
+		users.ids.duplicate().get(ids, 0, users.count);
+		users.labelIds.duplicate().get(userLabelIds, 0, users.count);
+		System.arraycopy(pendingIds, 0, ids, users.count, pendingCount);
+		System.arraycopy(pendingLabelIds, 0, userLabelIds, users.count, pendingCount);
+		sortStable(ids, userLabelIds);
+
+		// Of several entries for a user the last one added is kept
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (kept > 0 && ids[kept - 1] == ids[i]) {
+				userLabelIds[kept - 1] = userLabelIds[i];
+			} else {
+				ids[kept] = ids[i];
+				userLabelIds[kept] = userLabelIds[i];
+				kept++;
+			}
+		}
+
+		sorted = new SortedUsers(LongBuffer.wrap(ids, 0, kept).slice(), ByteBuffer.wrap(userLabelIds, 0, kept).slice(), kept);
+		pendingIds = new long[1024];
+		pendingLabelIds = new byte[1024];
+		pendingCount = 0;
+		hasPending = false;
+	}
+
+	/**
+	 * Bottom up merge sort of user IDs along with their label IDs, which keeps
+	 * equal IDs in the order they were added. Runs already in order are left as
+	 * they are, so sorted users files and merges into sorted users are cheap
+	 */
+	private static void sortStable(long[] ids, byte[] userLabelIds) {
+		int count = ids.length;
+		boolean sorted = true;
+		for (int i = 1; i < count && sorted; i++) {
+			sorted = ids[i - 1] <= ids[i];
+		}
+		if (sorted) {
+			return;
+		}
+
+		long[] idsBuffer = new long[count];
+		byte[] labelIdsBuffer = new byte[count];
+		for (int width = 1; width < count; width *= 2) {
+			for (int from = 0; from < count; from += 2 * width) {
+				int middle = Math.min(from + width, count);
+				int to = Math.min(from + 2 * width, count);
+				int left = from;
+				int right = middle;
+				for (int out = from; out < to; out++) {
+					if (right >= to || (left < middle && ids[left] <= ids[right])) {
+						idsBuffer[out] = ids[left];
+						labelIdsBuffer[out] = userLabelIds[left++];
+					} else {
+						idsBuffer[out] = ids[right];
+						labelIdsBuffer[out] = userLabelIds[right++];
+					}
+				}
+			}
+			System.arraycopy(idsBuffer, 0, ids, 0, count);
+			System.arraycopy(labelIdsBuffer, 0, userLabelIds, 0, count);
+		}
+	}
+
+	/**
+	 * Reads a user ID as a number if it is written the way Long.toString would
+	 * write it, so that it reads back as the same ID
+	 *
+	 * @param userID Twitter user ID
+	 * @return The ID as a number, or -1 if it has anything but digits,
+	 * a leading zero or is too big for a long
+	 */
+	static long parseId(CharSequence userID) {
+		int length = userID.length();
+		if (length == 0 || length > 19 || (userID.charAt(0) == '0' && length > 1)) {
+			return -1;
+		}
+		long id = 0;
+		for (int i = 0; i < length; i++) {
+			char c = userID.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			id = id * 10 + (c - '0');
+		}
+		// Only 19 digit numbers can be past Long.MAX_VALUE, and those wrap around to negative
+		return id;
+	}
+
+	/**
+	 * Writes the index to a stream, as the label table, the user IDs,
+	 * their label IDs and then the users whose IDs are Strings
+	 *
+	 * @param out Stream to write to
+	 * @throws IOException If the stream can't be written
+	 */
+	public synchronized void write(DataOutputStream out) throws IOException {
+		mergePending();
+		out.writeInt(labels.size());
+		for (String label : labels) {
+			ModelFile.writeString(out, label);
+		}
+		SortedUsers users = sorted;
+		out.writeInt(users.count);
+		for (int i = 0; i < users.count; i++) {
+			out.writeLong(users.ids.get(i));
+		}
+		for (int i = 0; i < users.count; i++) {
+			out.writeByte(users.labelIds.get(i));
+		}
+		out.writeInt(otherUsers.size());
+		for (Map.Entry<String, Integer> entry : otherUsers.entrySet()) {
+			ModelFile.writeString(out, entry.getKey());
+			out.writeByte(entry.getValue());
+		}
+	}
+
+	/**
+	 * Reads an index written by write(DataOutputStream). The user IDs and
+	 * label IDs are used where they are in the buffer, so an index read from
+	 * a mapped file stays in the file until users are added to it
+	 *
+	 * @param buffer Buffer positioned at the index, which is moved past it
+	 * @return The index
+	 */
+	static UserLocationIndex read(ByteBuffer buffer) {
+		UserLocationIndex index = new UserLocationIndex();
+		int labelCount = buffer.getInt();
+		for (int labelId = 0; labelId < labelCount; labelId++) {
+			index.addLabel(ModelFile.readString(buffer));
+		}
+
+		int count = buffer.getInt();
+		ByteBuffer ids = buffer.slice().order(buffer.order());
+		ids.limit(count * 8);
+		buffer.position(buffer.position() + count * 8);
+		ByteBuffer userLabelIds = buffer.slice();
+		userLabelIds.limit(count);
+		buffer.position(buffer.position() + count);
+		index.sorted = new SortedUsers(ids.asLongBuffer(), userLabelIds, count);
+
+		int otherCount = buffer.getInt();
+		for (int i = 0; i < otherCount; i++) {
+			String userID = ModelFile.readString(buffer);
+			index.otherUsers.put(userID, buffer.get() & 0xff);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the index to a file of its own, behind a magic number and the format version
+	 *
+	 * @param fileName Name of the file to write
+	 * @throws IOException If the file can't be written
+	 */
+	public void write(String fileName) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			write(out);
+		}
+	}
+
+	/**
+	 * Maps an index file written by write(String) into memory, so the users
+	 * are read from the OS page cache and not copied onto the heap. Only the
+	 * directory of ID ranges is built on the heap
+	 *
+	 * @param fileName Name of the index file
+	 * @return The index
+	 * @throws IOException If the file can't be read or is not an index file of this version
+	 */
+	public static UserLocationIndex map(String fileName) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+				throw new IOException(fileName + " is not a user location index file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(fileName + " has format version " + version + ", expected " + VERSION);
+			}
+			return read(buffer);
+		}
+	}
+
+	/**
+	 * @return A map view of the index from user ID to label, for code written
+	 * against the old HashMap. Iterating it creates a String for every user
+	 */
+	public Map<String, String> asMap() {
+		return new MapView();
+	}
+
+	/**
+	 * Map view of the index. Lookups go straight to the index, and
+	 * putting a user adds it, returning the label it had before
+	 */
+	private class MapView extends AbstractMap<String, String> {
+
+		@Override
+		public String get(Object key) {
+			return key instanceof CharSequence ? UserLocationIndex.this.get((CharSequence) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public String put(String key, String value) {
+			String previous = get(key);
+			add(key, value);
+			return previous;
+		}
+
+		@Override
+		public int size() {
+			return UserLocationIndex.this.size();
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public int size() {
+					return UserLocationIndex.this.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					mergePending();
+					SortedUsers users = sorted;
+					Iterator<Map.Entry<String, Integer>> others = otherUsers.entrySet().iterator();
+					return new Iterator<Map.Entry<String, String>>() {
+						private int next = 0;
+
+						@Override
+						public boolean hasNext() {
+							return next < users.count || others.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, String> next() {
+							if (next < users.count) {
+								String label = labels.get(users.labelIds.get(next) & 0xff);
+								return new SimpleImmutableEntry<>(Long.toString(users.ids.get(next++)), label);
+							}
+							if (!others.hasNext()) {
+								throw new NoSuchElementException();
+							}
+							Map.Entry<String, Integer> other = others.next();
+							return new SimpleImmutableEntry<>(other.getKey(), labels.get(other.getValue()));
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * Builds the index for a users file and prints how much memory it takes next
+	 * to the HashMap of Strings used before, and how fast each looks users up
+	 *
+	 * @param args The users file, and optionally a number of made up users to add
+	 * so the sizes can be seen at the scale of tens of millions of users
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		String usersFileName = args.length > 0 ? args[0] : "data/training_set_users.txt";
+		int extraUsers = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+		ModelTrainer model = new ModelTrainer();
+		model.populateIDLocations(usersFileName);
+		UserLocationIndex index = model.getUserLocations();
+		Random random = new Random(42);
+		List<String> usedLabels = index.getUsedLabels();
+		for (int i = 0; i < extraUsers; i++) {
+			index.add(Long.toString(1000000000L + (random.nextLong() & 0xffffffffffL)),
+					usedLabels.get(random.nextInt(usedLabels.size())));
+		}
+
+		long heapBefore = usedHeap();
+		HashMap<String, String> hashMap = new HashMap<>(index.asMap());
+		long hashMapBytes = usedHeap() - heapBefore;
+		System.out.printf("%,d users%n", index.size());
+		System.out.printf("HashMap<String, String>:  %,14d bytes on the heap%n", hashMapBytes);
+		System.out.printf("UserLocationIndex:        %,14d bytes (%.1f%% of the HashMap)%n",
+				index.memoryBytes(), 100.0 * index.memoryBytes() / hashMapBytes);
+
+		File indexFile = File.createTempFile("users", ".index");
+		indexFile.deleteOnExit();
+		long start = System.nanoTime();
+		index.write(indexFile.getPath());
+		long written = System.nanoTime();
+		UserLocationIndex mapped = map(indexFile.getPath());
+		System.out.printf("Index file:               %,14d bytes, written in %.1f ms, mapped in %.1f ms%n",
+				indexFile.length(), (written - start) / 1e6, (System.nanoTime() - written) / 1e6);
+
+		// Looked up in random order, since the HashMap's own order would walk its table in sequence
+		List<String> shuffled = new ArrayList<>(hashMap.keySet());
+		Collections.shuffle(shuffled, random);
+		String[] userIDs = shuffled.toArray(new String[0]);
+		for (int round = 0; round < 3; round++) {
+			System.out.printf("Lookups: HashMap %.0f ns, index %.0f ns, mapped index %.0f ns per user%n",
+					lookupNanos(hashMap::get, userIDs), lookupNanos(index::get, userIDs),
+					lookupNanos(mapped::get, userIDs));
+		}
+	}
+
+	/**
+	 * @param lookup Gives the label of a user ID
+	 * @param userIDs User IDs to look up
+	 * @return Average nanoseconds per lookup
+	 */
+	private static double lookupNanos(Function<String, String> lookup, String[] userIDs) {
+		long start = System.nanoTime();
+		int found = 0;
+		for (String userID : userIDs) {
+			found += lookup.apply(userID) != null ? 1 : 0;
+		}
+		if (found != userIDs.length) {
+			throw new IllegalStateException("Only " + found + " of " + userIDs.length + " users were found");
+		}
+		return (double) (System.nanoTime() - start) / userIDs.length;
+	}
+
+	/**
+	 * @return Bytes of the heap in use after a garbage collection
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
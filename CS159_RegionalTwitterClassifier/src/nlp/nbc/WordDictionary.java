@@ -0,0 +1,394 @@
+package nlp.nbc;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Interns words as dense integer word IDs, assigned in the order the words
+ * are first added. Uses open addressing over an int array instead of a
+ * HashMap so that looking up a word doesn't allocate. Also used on its own
+ * for interning users and stop words.
+ *
+ * A dictionary read from a model file is used in place: its words, hashes
+ * and slots stay views of the mapped file, and are only copied to the heap
+ * the first time a new word is added
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class WordDictionary implements FeatureDictionary {
+
+	// Words indexed by word ID
+	private String[] words = new String[1024];
+
+	// Hash of each word indexed by word ID, so growing the table doesn't rehash strings
+	private int[] hashes = new int[1024];
+
+	// Open addressing table holding word ID + 1, or 0 for an empty slot
+	private int[] slots = new int[2048];
+
+	// How many words have been added
+	private int size = 0;
+
+	// While the dictionary is read in place from a model file, the chars of every
+	// word one after another and where each word's chars start, with one more
+	// entry at the end, and the hashes and slots as above, all views of the
+	// mapped file. Null once the words have been copied to the heap
+	private CharBuffer mappedChars;
+	private IntBuffer mappedStarts;
+	private IntBuffer mappedHashes;
+	private IntBuffer mappedSlots;
+
+	/**
+	 * Constructor for an empty dictionary
+	 */
+	public WordDictionary() {
+	}
+
+	/**
+	 * Constructor for a dictionary read in place from a model file
+	 *
+	 * @param size How many words there are
+	 * @param mappedChars Chars of every word one after another
+	 * @param mappedStarts Where each word's chars start, with one more entry at the end
+	 * @param mappedHashes Hash of each word
+	 * @param mappedSlots Open addressing table holding word ID + 1, or 0 for an empty slot
+	 */
+	private WordDictionary(int size, CharBuffer mappedChars, IntBuffer mappedStarts, IntBuffer mappedHashes,
+			IntBuffer mappedSlots) {
+		this.size = size;
+		this.mappedChars = mappedChars;
+		this.mappedStarts = mappedStarts;
+		this.mappedHashes = mappedHashes;
+		this.mappedSlots = mappedSlots;
+		words = null;
+		hashes = null;
+		slots = null;
+	}
+
+	/**
+	 * @param word The word to look up
+	 * @return The word ID of the word, or -1 if it hasn't been added
+	 */
+	@Override
+	public int getId(String word) {
+		int hash = word.hashCode();
+		if (mappedChars != null) {
+			return getMappedId(word, 0, word.length(), hash);
+		}
+		int mask = slots.length - 1;
+		for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int wordId = slots[slot] - 1;
+			if (hashes[wordId] == hash && words[wordId].equals(word)) {
+				return wordId;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks up a span of text without creating a String for it
+	 * 
+	 * @param text Text holding the word
+	 * @param start Index of the first char of the word
+	 * @param end Index after the last char of the word
+	 * @return The word ID of the word, or -1 if it hasn't been added
+	 */
+	@Override
+	public int getId(CharSequence text, int start, int end) {
+		int hash = hash(text, start, end);
+		if (mappedChars != null) {
+			return getMappedId(text, start, end, hash);
+		}
+		int mask = slots.length - 1;
+		for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int wordId = slots[slot] - 1;
+			if (hashes[wordId] == hash && matches(words[wordId], text, start, end)) {
+				return wordId;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a span of text as a word if it isn't in the dictionary yet,
+	 * only creating a String for it the first time it is seen
+	 * 
+	 * @param text Text holding the word
+	 * @param start Index of the first char of the word
+	 * @param end Index after the last char of the word
+	 * @return The word ID of the word
+	 */
+	@Override
+	public int add(CharSequence text, int start, int end) {
+		int wordId = getId(text, start, end);
+		return wordId >= 0 ? wordId : add(text.subSequence(start, end).toString());
+	}
+
+	/**
+	 * Adds a word if it isn't in the dictionary yet
+	 * 
+	 * @param word The word to add
+	 * @return The word ID of the word
+	 */
+	@Override
+	public int add(String word) {
+		int hash = word.hashCode();
+		if (mappedChars != null) {
+			int wordId = getMappedId(word, 0, word.length(), hash);
+			if (wordId >= 0) {
+				return wordId;
+			}
+			copyToHeap();
+		}
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int wordId = slots[slot] - 1;
+			if (hashes[wordId] == hash && words[wordId].equals(word)) {
+				return wordId;
+			}
+		}
+
+		int wordId = size++;
+		if (wordId == words.length) {
+			words = Arrays.copyOf(words, wordId * 2);
+			hashes = Arrays.copyOf(hashes, wordId * 2);
+		}
+		words[wordId] = word;
+		hashes[wordId] = hash;
+		slots[slot] = wordId + 1;
+
+		// Keep the table at most half full so probe chains stay short
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return wordId;
+	}
+
+	/**
+	 * @param wordId ID of the word
+	 * @return The word with that ID
+	 */
+	@Override
+	public String getWord(int wordId) {
+		if (mappedChars != null) {
+			return mappedChars.subSequence(mappedStarts.get(wordId), mappedStarts.get(wordId + 1)).toString();
+		}
+		return words[wordId];
+	}
+
+	/**
+	 * @return A new, empty dictionary which maps words to word IDs the same way as this one
+	 */
+	@Override
+	public WordDictionary emptyCopy() {
+		return new WordDictionary();
+	}
+
+	/**
+	 * Adds a word of another dictionary made by emptyCopy, or the one it was made from
+	 *
+	 * @param source The other dictionary
+	 * @param sourceWordId ID of the word in the other dictionary
+	 * @return The word ID of the word in this dictionary
+	 */
+	@Override
+	public int addFrom(FeatureDictionary source, int sourceWordId) {
+		return add(source.getWord(sourceWordId));
+	}
+
+	/**
+	 * @return How many words have been added
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return 0, since the words themselves are kept
+	 */
+	@Override
+	public int getHashBits() {
+		return 0;
+	}
+
+	/**
+	 * @return Approximate bytes used by the dictionary, including the word strings.
+	 * Words still read in place from a model file take no heap
+	 */
+	@Override
+	public long memoryBytes() {
+		if (mappedChars != null) {
+			return 0;
+		}
+		long bytes = (long) words.length * 8 + (long) hashes.length * 4 + (long) slots.length * 4;
+		for (int wordId = 0; wordId < size; wordId++) {
+			// String object plus its char array
+			bytes += 40 + 2L * words[wordId].length();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes the dictionary to a model file, as the hash of each word, where each
+	 * word's chars start, with one more entry at the end, the chars of every word
+	 * one after another, and the slot count and slots of the table
+	 *
+	 * @param out Stream to write to
+	 * @throws IOException If the stream can't be written
+	 */
+	@Override
+	public void write(DataOutputStream out) throws IOException {
+		for (int wordId = 0; wordId < size; wordId++) {
+			out.writeInt(mappedHashes != null ? mappedHashes.get(wordId) : hashes[wordId]);
+		}
+		int start = 0;
+		out.writeInt(start);
+		for (int wordId = 0; wordId < size; wordId++) {
+			start += getWord(wordId).length();
+			out.writeInt(start);
+		}
+		for (int wordId = 0; wordId < size; wordId++) {
+			out.writeChars(getWord(wordId));
+		}
+		int slotCount = mappedSlots != null ? mappedSlots.capacity() : slots.length;
+		out.writeInt(slotCount);
+		for (int slot = 0; slot < slotCount; slot++) {
+			out.writeInt(mappedSlots != null ? mappedSlots.get(slot) : slots[slot]);
+		}
+	}
+
+	/**
+	 * Reads a dictionary written by write, using the buffer in place, so
+	 * a dictionary read from a mapped file stays in the file until a word is added
+	 *
+	 * @param buffer Buffer positioned at the dictionary, which is moved past it
+	 * @param size How many words the dictionary has
+	 * @return The dictionary
+	 */
+	static WordDictionary read(ByteBuffer buffer, int size) {
+		IntBuffer hashes = ModelFile.readSection(buffer, 4 * size).asIntBuffer();
+		IntBuffer starts = ModelFile.readSection(buffer, 4 * (size + 1)).asIntBuffer();
+		CharBuffer chars = ModelFile.readSection(buffer, 2 * starts.get(size)).asCharBuffer();
+		IntBuffer slots = ModelFile.readSection(buffer, 4 * buffer.getInt()).asIntBuffer();
+		return new WordDictionary(size, chars, starts, hashes, slots);
+	}
+
+	/**
+	 * Looks up a word in the table of the mapped file
+	 *
+	 * @return The word ID of the word, or -1 if it isn't in the dictionary
+	 */
+	private int getMappedId(CharSequence text, int start, int end, int hash) {
+		int mask = mappedSlots.capacity() - 1;
+		for (int slot = mix(hash) & mask; mappedSlots.get(slot) != 0; slot = (slot + 1) & mask) {
+			int wordId = mappedSlots.get(slot) - 1;
+			if (mappedHashes.get(wordId) == hash && matchesMapped(wordId, text, start, end)) {
+				return wordId;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return True if the word with the ID in the mapped file has exactly the chars of the span of text
+	 */
+	private boolean matchesMapped(int wordId, CharSequence text, int start, int end) {
+		int wordStart = mappedStarts.get(wordId);
+		if (mappedStarts.get(wordId + 1) - wordStart != end - start) {
+			return false;
+		}
+		for (int i = 0; i < end - start; i++) {
+			if (mappedChars.get(wordStart + i) != text.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the words, hashes and slots of the mapped file to the
+	 * heap, so that words can be added
+	 */
+	private void copyToHeap() {
+		int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, size)) * 2);
+		String[] heapWords = new String[capacity];
+		int[] heapHashes = new int[capacity];
+		for (int wordId = 0; wordId < size; wordId++) {
+			heapWords[wordId] = getWord(wordId);
+			heapHashes[wordId] = mappedHashes.get(wordId);
+		}
+		int[] heapSlots = new int[mappedSlots.capacity()];
+		mappedSlots.duplicate().get(heapSlots);
+
+		words = heapWords;
+		hashes = heapHashes;
+		slots = heapSlots;
+		mappedChars = null;
+		mappedStarts = null;
+		mappedHashes = null;
+		mappedSlots = null;
+	}
+
+	/**
+	 * Rebuilds the open addressing table at a new size
+	 * 
+	 * @param tableSize New number of slots, a power of two
+	 */
+	private void rehash(int tableSize) {
+		slots = new int[tableSize];
+		int mask = tableSize - 1;
+		for (int wordId = 0; wordId < size; wordId++) {
+			int slot = mix(hashes[wordId]) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = wordId + 1;
+		}
+	}
+
+	/**
+	 * @return The same hash String.hashCode gives for the span of text
+	 */
+	static int hash(CharSequence text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return True if the word has exactly the chars of the span of text
+	 */
+	private static boolean matches(String word, CharSequence text, int start, int end) {
+		if (word.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (word.charAt(i) != text.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Spreads the bits of a string hash code, since String.hashCode
+	 * puts little variation in the low bits for short words
+	 * 
+	 * @param hash The hash code
+	 * @return The mixed hash
+	 */
+	static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,345 @@
+package nlp.nbc;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse table of how many times each word occurred with each label.
+ * Keys pack the word ID and label ID into one long and counts are stored
+ * as primitive ints in an open addressing table, so counting a word
+ * doesn't allocate and only (word, label) pairs that occurred take space.
+ *
+ * A table read from a model file is used in place, as the entries of each
+ * word one word after another in the mapped file, and is only copied into
+ * the hash table the first time a count is added
+ *
+ * @author Magali Ngouabou, Helen Paulini, Mercy Bickell
+ * CS159 - Final Project
+ *
+ */
+public class WordLabelCounts {
+
+	/**
+	 * Receives the entries of the table one at a time
+	 */
+	public interface EntryConsumer {
+		/**
+		 * @param wordId ID of the word
+		 * @param labelId ID of the label
+		 * @param count How many times the word occurred with the label
+		 */
+		void accept(int wordId, int labelId, int count);
+	}
+
+	// Marks an empty slot, no real key can be -1 since word IDs are never negative
+	private static final long EMPTY = -1L;
+
+	// Packed (word ID, label ID) keys, or EMPTY
+	private long[] keys;
+
+	// Count of the key in the same slot
+	private int[] counts;
+
+	// How many keys are in the table
+	private int size = 0;
+
+	// While the table is read in place from a model file, where each word's
+	// entries start, with one more entry at the end, and the label ID and count of
+	// each entry, in increasing label ID order within a word, all views of the
+	// mapped file. Null once the entries have been copied into the hash table
+	private IntBuffer mappedRowStarts;
+	private IntBuffer mappedLabelIds;
+	private IntBuffer mappedCounts;
+
+	/**
+	 * Constructor which creates an empty table
+	 */
+	public WordLabelCounts() {
+		keys = new long[1024];
+		counts = new int[1024];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Constructor for a table read in place from a model file
+	 *
+	 * @param mappedRowStarts Where each word's entries start, with one more entry at the end
+	 * @param mappedLabelIds Label ID of each entry
+	 * @param mappedCounts Count of each entry
+	 */
+	private WordLabelCounts(IntBuffer mappedRowStarts, IntBuffer mappedLabelIds, IntBuffer mappedCounts) {
+		this.mappedRowStarts = mappedRowStarts;
+		this.mappedLabelIds = mappedLabelIds;
+		this.mappedCounts = mappedCounts;
+		size = mappedLabelIds.capacity();
+	}
+
+	/**
+	 * @param wordId ID of the word
+	 * @param labelId ID of the label
+	 * @return How many times the word occurred with the label
+	 */
+	public int get(int wordId, int labelId) {
+		if (mappedRowStarts != null) {
+			return getMapped(wordId, labelId);
+		}
+		long key = key(wordId, labelId);
+		int mask = keys.length - 1;
+		for (int slot = mix(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				return counts[slot];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Adds to the count of a word with a label, removing the
+	 * entry if the count drops to 0
+	 * 
+	 * @param wordId ID of the word
+	 * @param labelId ID of the label
+	 * @param delta Amount to add, may be negative
+	 * @return The new count
+	 */
+	public int add(int wordId, int labelId, int delta) {
+		if (mappedRowStarts != null) {
+			copyToHeap();
+		}
+		long key = key(wordId, labelId);
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				counts[slot] += delta;
+				int count = counts[slot];
+				if (count == 0) {
+					remove(slot);
+				}
+				return count;
+			}
+		}
+
+		if (delta == 0) {
+			return 0;
+		}
+		keys[slot] = key;
+		counts[slot] = delta;
+		size++;
+
+		// Grow once the table is 70% full
+		if (size * 10 > keys.length * 7) {
+			rehash(keys.length * 2);
+		}
+		return delta;
+	}
+
+	/**
+	 * Passes every (word, label, count) entry to the consumer, in no particular order
+	 * 
+	 * @param consumer Receives the entries
+	 */
+	public void forEach(EntryConsumer consumer) {
+		if (mappedRowStarts != null) {
+			int wordCount = mappedRowStarts.capacity() - 1;
+			for (int wordId = 0; wordId < wordCount; wordId++) {
+				for (int entry = mappedRowStarts.get(wordId); entry < mappedRowStarts.get(wordId + 1); entry++) {
+					consumer.accept(wordId, mappedLabelIds.get(entry), mappedCounts.get(entry));
+				}
+			}
+			return;
+		}
+		for (int slot = 0; slot < keys.length; slot++) {
+			long key = keys[slot];
+			if (key != EMPTY) {
+				consumer.accept((int) (key >>> 32), (int) key, counts[slot]);
+			}
+		}
+	}
+
+	/**
+	 * @return How many (word, label) pairs have a non-zero count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Approximate bytes used by the table's arrays, none while it is read in place from a model file
+	 */
+	public long memoryBytes() {
+		if (mappedRowStarts != null) {
+			return 0;
+		}
+		return (long) keys.length * (Long.BYTES + Integer.BYTES);
+	}
+
+	/**
+	 * Writes the table to a model file, as where each word's entries start,
+	 * with one more entry at the end, and then the label ID and then the count
+	 * of each entry, the entries of each word in increasing label ID order
+	 *
+	 * @param out Stream to write to
+	 * @param wordCount How many words there are, every word ID in the table is below it
+	 * @throws IOException If the stream can't be written
+	 */
+	public void write(DataOutputStream out, int wordCount) throws IOException {
+		int[] rowStarts = new int[wordCount + 1];
+		forEach((wordId, labelId, count) -> rowStarts[wordId + 1]++);
+		for (int wordId = 0; wordId < wordCount; wordId++) {
+			rowStarts[wordId + 1] += rowStarts[wordId];
+		}
+
+		// Packs each entry's label ID above its count, so sorting a word's entries sorts them by label ID
+		long[] entries = new long[size];
+		int[] nextEntries = Arrays.copyOf(rowStarts, wordCount);
+		forEach((wordId, labelId, count) ->
+				entries[nextEntries[wordId]++] = ((long) labelId << 32) | (count & 0xFFFFFFFFL));
+		for (int wordId = 0; wordId < wordCount; wordId++) {
+			Arrays.sort(entries, rowStarts[wordId], rowStarts[wordId + 1]);
+		}
+
+		for (int rowStart : rowStarts) {
+			out.writeInt(rowStart);
+		}
+		for (long entry : entries) {
+			out.writeInt((int) (entry >>> 32));
+		}
+		for (long entry : entries) {
+			out.writeInt((int) entry);
+		}
+	}
+
+	/**
+	 * Reads a table written by write, using the buffer in place, so a
+	 * table read from a mapped file stays in the file until a count is added
+	 *
+	 * @param buffer Buffer positioned at the table, which is moved past it
+	 * @param wordCount How many words there are
+	 * @return The table
+	 */
+	static WordLabelCounts read(ByteBuffer buffer, int wordCount) {
+		IntBuffer rowStarts = ModelFile.readSection(buffer, 4 * (wordCount + 1)).asIntBuffer();
+		int entryCount = rowStarts.get(wordCount);
+		IntBuffer labelIds = ModelFile.readSection(buffer, 4 * entryCount).asIntBuffer();
+		IntBuffer entryCounts = ModelFile.readSection(buffer, 4 * entryCount).asIntBuffer();
+		return new WordLabelCounts(rowStarts, labelIds, entryCounts);
+	}
+
+	/**
+	 * Looks a count up in the entries of the mapped file
+	 *
+	 * @return How many times the word occurred with the label
+	 */
+	private int getMapped(int wordId, int labelId) {
+		if (wordId < 0 || wordId + 1 >= mappedRowStarts.capacity()) {
+			return 0;
+		}
+		for (int entry = mappedRowStarts.get(wordId); entry < mappedRowStarts.get(wordId + 1); entry++) {
+			int entryLabelId = mappedLabelIds.get(entry);
+			if (entryLabelId >= labelId) {
+				return entryLabelId == labelId ? mappedCounts.get(entry) : 0;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Copies the entries of the mapped file into the hash table, so that counts can be added
+	 */
+	private void copyToHeap() {
+		int tableSize = 1024;
+		while (size * 10 > tableSize * 7) {
+			tableSize *= 2;
+		}
+		long[] heapKeys = new long[tableSize];
+		int[] heapCounts = new int[tableSize];
+		Arrays.fill(heapKeys, EMPTY);
+		int mask = tableSize - 1;
+		forEach((wordId, labelId, count) -> {
+			long key = key(wordId, labelId);
+			int slot = mix(key) & mask;
+			while (heapKeys[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			heapKeys[slot] = key;
+			heapCounts[slot] = count;
+		});
+
+		keys = heapKeys;
+		counts = heapCounts;
+		mappedRowStarts = null;
+		mappedLabelIds = null;
+		mappedCounts = null;
+	}
+
+	/**
+	 * Empties a slot, shifting back any later entries of the same probe chain
+	 * so that lookups never stop early at the hole
+	 * 
+	 * @param slot The slot to empty
+	 */
+	private void remove(int slot) {
+		int mask = keys.length - 1;
+		int hole = slot;
+		for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+			int home = mix(keys[next]) & mask;
+
+			// Move the entry back if its home slot isn't between the hole and where it is now
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				counts[hole] = counts[next];
+				hole = next;
+			}
+		}
+		keys[hole] = EMPTY;
+		counts[hole] = 0;
+		size--;
+	}
+
+	/**
+	 * Rebuilds the table at a new size
+	 * 
+	 * @param tableSize New number of slots, a power of two
+	 */
+	private void rehash(int tableSize) {
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new long[tableSize];
+		counts = new int[tableSize];
+		Arrays.fill(keys, EMPTY);
+
+		int mask = tableSize - 1;
+		for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+			if (oldKeys[oldSlot] != EMPTY) {
+				int slot = mix(oldKeys[oldSlot]) & mask;
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[oldSlot];
+				counts[slot] = oldCounts[oldSlot];
+			}
+		}
+	}
+
+	/**
+	 * @param wordId ID of the word
+	 * @param labelId ID of the label
+	 * @return The word ID and label ID packed into one key
+	 */
+	private static long key(int wordId, int labelId) {
+		return ((long) wordId << 32) | (labelId & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param key A packed key
+	 * @return A well spread hash of the key
+	 */
+	private static int mix(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+}